@@ -0,0 +1,81 @@
+package com.bank.balancedispense.benchmark;
+
+import com.bank.balancedispense.dto.CurrencyBalanceResponseWrapper;
+import com.bank.balancedispense.dto.PortfolioRow;
+import com.bank.balancedispense.dto.TransactionalBalanceResponseWrapper;
+import com.bank.balancedispense.entities.AccountType;
+import com.bank.balancedispense.entities.Client;
+import com.bank.balancedispense.entities.ClientAccount;
+import com.bank.balancedispense.entities.CurrencyConversionRate;
+import com.bank.balancedispense.repository.ClientAccountRepository;
+import com.bank.balancedispense.repository.ClientRepository;
+import com.bank.balancedispense.repository.CurrencyConversionRateHistoryRepository;
+import com.bank.balancedispense.repository.CurrencyConversionRateRepository;
+import com.bank.balancedispense.services.impl.BalanceServiceImpl;
+import com.bank.balancedispense.services.impl.ClientPortfolioLoader;
+import com.bank.balancedispense.util.CurrencyConversionUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Projection-to-DTO mapping in BalanceServiceImpl and ClientPortfolioLoader (rate lookup and conversion) for a
+ * client with 1 to 10,000 accounts. Repositories are answered from memory, so database
+ * time, including the sort, is excluded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BalanceMappingBenchmark {
+
+    @Param({"1", "10", "100", "1000", "10000"})
+    public int accountCount;
+
+    private BalanceServiceImpl balanceService;
+
+    @Setup
+    public void setup() {
+        Client client = new Client(1L, "Mr", "Bench", "Mark");
+        List<PortfolioRow> transactional = rows(BenchmarkData.accounts(client,
+                new AccountType("CHQ", "Cheque Account", true), accountCount));
+        List<PortfolioRow> currency = rows(BenchmarkData.accounts(client,
+                new AccountType("CFCA", "Customer Foreign Currency Account", false), accountCount));
+        Map<String, CurrencyConversionRate> rates = BenchmarkData.rates();
+
+        ClientAccountRepository accountRepo = BenchmarkData.repository(ClientAccountRepository.class,
+                Map.of("findPortfolioRows", args -> (Boolean) args[1] ? transactional : currency));
+        CurrencyConversionRateRepository rateRepo = BenchmarkData.repository(CurrencyConversionRateRepository.class,
+                Map.of("findAll", args -> List.copyOf(rates.values())));
+        CurrencyConversionRateHistoryRepository historyRepo = BenchmarkData.repository(CurrencyConversionRateHistoryRepository.class,
+                Map.of("findAll", args -> List.of()));
+
+        balanceService = new BalanceServiceImpl(
+                new ClientPortfolioLoader(accountRepo, new CurrencyConversionUtil(rateRepo, historyRepo)),
+                accountRepo, BenchmarkData.repository(ClientRepository.class, Map.of()), new ObjectMapper(), 500);
+    }
+
+    private static List<PortfolioRow> rows(List<ClientAccount> accounts) {
+        return accounts.stream()
+                .map(a -> new PortfolioRow(a.getClient().getId(), a.getClient().getTitle(), a.getClient().getName(),
+                        a.getClient().getSurname(), a.getAccountNumber(), a.getAccountType().getCode(),
+                        a.getAccountType().getDescription(), a.getAccountType().isTransactional(),
+                        a.getCurrency().getCode(), a.getDisplayBalance()))
+                .toList();
+    }
+
+    @Benchmark
+    public TransactionalBalanceResponseWrapper transactionalBalances() {
+        return balanceService.getTransactionalBalances(1L);
+    }
+
+    @Benchmark
+    public CurrencyBalanceResponseWrapper currencyBalances() {
+        return balanceService.getCurrencyBalances(1L);
+    }
+}
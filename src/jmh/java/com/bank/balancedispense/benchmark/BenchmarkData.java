@@ -0,0 +1,93 @@
+package com.bank.balancedispense.benchmark;
+
+import com.bank.balancedispense.entities.*;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Shared fixtures for the benchmarks: cassette mixes, client accounts and in-memory repositories.
+ */
+final class BenchmarkData {
+
+    private static final String[] CURRENCIES = {"ZAR", "USD", "EUR", "GBP"};
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Returns the ATM allocations for a named cassette mix.
+     *
+     * @param mix One of balanced, large-heavy, small-heavy, sparse
+     */
+    static List<ATMAllocation> cassettes(String mix) {
+        return switch (mix) {
+            case "balanced" -> List.of(
+                    allocation(1L, 200, 50), allocation(2L, 100, 50), allocation(3L, 50, 50),
+                    allocation(4L, 20, 50), allocation(5L, 10, 50));
+            case "large-heavy" -> List.of(
+                    allocation(1L, 200, 200), allocation(2L, 100, 100), allocation(3L, 50, 5),
+                    allocation(4L, 20, 2), allocation(5L, 10, 1));
+            case "small-heavy" -> List.of(
+                    allocation(1L, 200, 2), allocation(2L, 100, 5), allocation(3L, 50, 20),
+                    allocation(4L, 20, 200), allocation(5L, 10, 300));
+            case "sparse" -> List.of(
+                    allocation(1L, 200, 3), allocation(3L, 50, 1), allocation(4L, 20, 7));
+            default -> throw new IllegalArgumentException("Unknown cassette mix: " + mix);
+        };
+    }
+
+    static ATMAllocation allocation(long id, int value, int quantity) {
+        ATMAllocation allocation = new ATMAllocation();
+        allocation.setDenomination(new Denomination(id, BigDecimal.valueOf(value)));
+        allocation.setQuantity(quantity);
+        return allocation;
+    }
+
+    /**
+     * Builds {@code count} accounts of one type for a client, cycling through the stocked currencies.
+     */
+    static List<ClientAccount> accounts(Client client, AccountType type, int count) {
+        List<ClientAccount> accounts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Currency currency = new Currency(CURRENCIES[i % CURRENCIES.length], 2, CURRENCIES[i % CURRENCIES.length]);
+            BigDecimal balance = BigDecimal.valueOf((i * 7919L) % 100_000, 2);
+            accounts.add(new ClientAccount(String.format("%010d", i), client, type, currency, balance, 0L));
+        }
+        return accounts;
+    }
+
+    /**
+     * Conversion rates for every currency in {@link #accounts}, mixing both indicators.
+     */
+    static Map<String, CurrencyConversionRate> rates() {
+        return Map.of(
+                "USD", new CurrencyConversionRate("USD", "*", new BigDecimal("18.50000000"), null),
+                "EUR", new CurrencyConversionRate("EUR", "*", new BigDecimal("20.00000000"), null),
+                "GBP", new CurrencyConversionRate("GBP", "/", new BigDecimal("0.04260000"), null));
+    }
+
+    /**
+     * Creates an in-memory implementation of a repository interface. Calls are answered by the
+     * handler registered for the method name; any other repository method fails.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T repository(Class<T> type, Map<String, Function<Object[], Object>> handlers) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Function<Object[], Object> handler = handlers.get(method.getName());
+            if (handler != null) {
+                return handler.apply(args);
+            }
+            return switch (method.getName()) {
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                case "toString" -> type.getSimpleName() + " (benchmark)";
+                default -> throw new UnsupportedOperationException(method.getName());
+            };
+        });
+    }
+}
@@ -0,0 +1,53 @@
+package com.bank.balancedispense.benchmark;
+
+import com.bank.balancedispense.entities.CurrencyConversionRate;
+import com.bank.balancedispense.repository.CurrencyConversionRateHistoryRepository;
+import com.bank.balancedispense.repository.CurrencyConversionRateRepository;
+import com.bank.balancedispense.util.CurrencyConversionUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate lookup and conversion to ZAR for each conversion indicator, with the repository
+ * answered from memory so only the conversion itself is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CurrencyConversionBenchmark {
+
+    /** ZAR short-circuits, USD multiplies, GBP divides. */
+    @Param({"ZAR", "USD", "GBP"})
+    public String currency;
+
+    private CurrencyConversionUtil currencyUtil;
+    private final BigDecimal balance = new BigDecimal("12345.678");
+
+    @Setup
+    public void setup() {
+        Map<String, CurrencyConversionRate> rates = BenchmarkData.rates();
+        CurrencyConversionRateRepository rateRepo = BenchmarkData.repository(CurrencyConversionRateRepository.class,
+                Map.of("findAll", args -> List.copyOf(rates.values())));
+        CurrencyConversionRateHistoryRepository historyRepo = BenchmarkData.repository(CurrencyConversionRateHistoryRepository.class,
+                Map.of("findAll", args -> List.of()));
+        currencyUtil = new CurrencyConversionUtil(rateRepo, historyRepo);
+        currencyUtil.refresh();
+    }
+
+    @Benchmark
+    public BigDecimal conversionRate() {
+        return currencyUtil.getConversionRate(currency);
+    }
+
+    @Benchmark
+    public BigDecimal convertBalance() {
+        return balance.multiply(currencyUtil.getConversionRate(currency));
+    }
+}
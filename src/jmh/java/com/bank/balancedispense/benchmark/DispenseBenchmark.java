@@ -0,0 +1,71 @@
+package com.bank.balancedispense.benchmark;
+
+import com.bank.balancedispense.dto.DispenseAlternative;
+import com.bank.balancedispense.entities.ATMAllocation;
+import com.bank.balancedispense.exceptions.NoteCalculationException;
+import com.bank.balancedispense.util.DispenseEngine;
+import com.bank.balancedispense.util.GreedyDispenseEngine;
+import com.bank.balancedispense.util.KnapsackDispenseEngine;
+import com.bank.balancedispense.util.NoteCalculator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Note selection and fallback suggestion across cassette mixes and requested amounts.
+ * Some combinations are not payable by design, so the failure path (exception plus
+ * alternatives) is measured alongside the happy path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispenseBenchmark {
+
+    @Param({"balanced", "large-heavy", "small-heavy", "sparse"})
+    public String cassetteMix;
+
+    @Param({"130", "1850", "9990"})
+    public int amount;
+
+    private List<ATMAllocation> allocations;
+    private final DispenseEngine greedy = new GreedyDispenseEngine();
+    private final DispenseEngine knapsack = new KnapsackDispenseEngine();
+
+    @Setup
+    public void setup() {
+        allocations = BenchmarkData.cassettes(cassetteMix);
+    }
+
+    @Benchmark
+    public Object greedyCalculate() {
+        return calculate(greedy);
+    }
+
+    @Benchmark
+    public Object knapsackCalculate() {
+        return calculate(knapsack);
+    }
+
+    @Benchmark
+    public Optional<Integer> suggestFallbackAmount() {
+        return NoteCalculator.suggestFallbackAmount(amount, allocations);
+    }
+
+    @Benchmark
+    public List<DispenseAlternative> suggestAlternatives() {
+        return knapsack.suggestAlternatives(amount, allocations);
+    }
+
+    private Object calculate(DispenseEngine engine) {
+        try {
+            return engine.calculate(amount, allocations);
+        } catch (NoteCalculationException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.bank.balancedispense.benchmark;
+
+import com.bank.balancedispense.entities.ATMAllocation;
+import com.bank.balancedispense.util.NoteCalculator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.bank.balancedispense.benchmark.BenchmarkData.allocation;
+
+/**
+ * Compares the Map-based and primitive-array NoteCalculator APIs.
+ * Run with {@code -prof gc}: the primitive API should report a gc.alloc.rate.norm of ~0 B/op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NoteCalculatorBenchmark {
+
+    @Param({"300", "1850", "9990"})
+    public int amount;
+
+    private List<ATMAllocation> allocations;
+    private final int[] denominations = {200, 100, 50, 20, 10};
+    private final int[] counts = {50, 50, 50, 50, 50};
+    private final int[] result = new int[5];
+
+    @Setup
+    public void setup() {
+        allocations = List.of(
+                allocation(1L, 200, 50),
+                allocation(2L, 100, 50),
+                allocation(3L, 50, 50),
+                allocation(4L, 20, 50),
+                allocation(5L, 10, 50)
+        );
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> mapApi() {
+        return NoteCalculator.calculate(amount, allocations);
+    }
+
+    @Benchmark
+    public int primitiveApi() {
+        return NoteCalculator.calculate(amount, denominations, counts, result);
+    }
+}
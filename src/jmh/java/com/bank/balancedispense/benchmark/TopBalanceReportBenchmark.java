@@ -0,0 +1,142 @@
+package com.bank.balancedispense.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares ways of producing the highest-transactional-balance report on an in-memory H2 database:
+ * the shipped correlated-subquery SQL, its window-function variant, and reading the CLIENT_POSITION
+ * index in keyset pages as {@code /topTransactionalBalances} does. Each client has three transactional
+ * and two currency accounts; {@code accounts=1000000} is 200,000 clients.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class TopBalanceReportBenchmark {
+
+    private static final int ACCOUNTS_PER_CLIENT = 5;
+    private static final int PAGE_SIZE = 1000;
+
+    @Param({"100000", "1000000"})
+    public int accounts;
+
+    private Connection connection;
+    private String correlatedSql;
+    private String windowSql;
+    private PreparedStatement indexPage;
+    private int clients;
+
+    @Setup
+    public void setup() throws Exception {
+        connection = DriverManager.getConnection("jdbc:h2:mem:topbalance" + accounts + ";DB_CLOSE_DELAY=-1", "sa", "");
+        clients = accounts / ACCOUNTS_PER_CLIENT;
+        try (Statement ddl = connection.createStatement()) {
+            ddl.execute("CREATE TABLE CLIENT (ID BIGINT PRIMARY KEY, TITLE VARCHAR(10), NAME VARCHAR(255), SURNAME VARCHAR(255))");
+            ddl.execute("CREATE TABLE ACCOUNT_TYPE (ACCOUNT_TYPE_CODE VARCHAR(10) PRIMARY KEY, DESCRIPTION VARCHAR(255), "
+                    + "TRANSACTIONAL BOOLEAN)");
+            ddl.execute("CREATE TABLE CLIENT_ACCOUNT (CLIENT_ACCOUNT_NUMBER VARCHAR(10) PRIMARY KEY, "
+                    + "CLIENT_ID BIGINT REFERENCES CLIENT(ID), ACCOUNT_TYPE_CODE VARCHAR(10) REFERENCES ACCOUNT_TYPE(ACCOUNT_TYPE_CODE), "
+                    + "CURRENCY_CODE VARCHAR(3), DISPLAY_BALANCE NUMERIC(18, 3))");
+            ddl.execute("CREATE TABLE CLIENT_POSITION (CLIENT_ID BIGINT PRIMARY KEY, TOP_ACCOUNT_NUMBER VARCHAR(10), "
+                    + "TOP_TRANSACTIONAL_BALANCE NUMERIC(18, 3))");
+
+            ddl.execute("INSERT INTO ACCOUNT_TYPE VALUES ('CHQ', 'Cheque Account', TRUE), ('SVGS', 'Savings Account', TRUE), "
+                    + "('CCY', 'Currency Account', FALSE)");
+            ddl.execute("INSERT INTO CLIENT SELECT X, 'Mr', 'Client', 'Surname' || X FROM SYSTEM_RANGE(1, " + clients + ")");
+            ddl.execute("INSERT INTO CLIENT_ACCOUNT SELECT LPAD(X, 10, '0'), (X - 1) / " + ACCOUNTS_PER_CLIENT + " + 1, "
+                    + "CASE MOD(X, " + ACCOUNTS_PER_CLIENT + ") WHEN 0 THEN 'CHQ' WHEN 1 THEN 'SVGS' WHEN 2 THEN 'SVGS' "
+                    + "ELSE 'CCY' END, 'ZAR', MOD(X * 7919, 100000) / 100.0 FROM SYSTEM_RANGE(1, " + accounts + ")");
+
+            // What the position rebuild stores for the top account
+            ddl.execute("INSERT INTO CLIENT_POSITION SELECT CLIENT_ID, CLIENT_ACCOUNT_NUMBER, DISPLAY_BALANCE FROM ("
+                    + "SELECT A.CLIENT_ID, A.CLIENT_ACCOUNT_NUMBER, A.DISPLAY_BALANCE, ROW_NUMBER() OVER ("
+                    + "PARTITION BY A.CLIENT_ID ORDER BY A.DISPLAY_BALANCE DESC NULLS LAST, A.CLIENT_ACCOUNT_NUMBER) AS RN "
+                    + "FROM CLIENT_ACCOUNT A JOIN ACCOUNT_TYPE T ON A.ACCOUNT_TYPE_CODE = T.ACCOUNT_TYPE_CODE "
+                    + "WHERE T.TRANSACTIONAL = TRUE) R WHERE RN = 1");
+        }
+
+        correlatedSql = sql("/sql/highest_transactional_balance.sql");
+        windowSql = sql("/sql/highest_transactional_balance_window.sql");
+        indexPage = connection.prepareStatement("SELECT p.CLIENT_ID, c.SURNAME, p.TOP_ACCOUNT_NUMBER, p.TOP_TRANSACTIONAL_BALANCE "
+                + "FROM CLIENT_POSITION p JOIN CLIENT c ON c.ID = p.CLIENT_ID "
+                + "WHERE p.CLIENT_ID > ? AND p.TOP_ACCOUNT_NUMBER IS NOT NULL ORDER BY p.CLIENT_ID FETCH FIRST ? ROWS ONLY");
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        try (Statement drop = connection.createStatement()) {
+            drop.execute("DROP ALL OBJECTS");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public int correlatedSubquery() throws SQLException {
+        return count(correlatedSql);
+    }
+
+    @Benchmark
+    public int windowFunction() throws SQLException {
+        return count(windowSql);
+    }
+
+    /** The whole report, read from the index one keyset page at a time. */
+    @Benchmark
+    public int indexAllPages() throws SQLException {
+        int rows = 0;
+        long after = Long.MIN_VALUE;
+        while (true) {
+            int page = 0;
+            indexPage.setLong(1, after);
+            indexPage.setInt(2, PAGE_SIZE);
+            try (ResultSet rs = indexPage.executeQuery()) {
+                while (rs.next()) {
+                    after = rs.getLong(1);
+                    page++;
+                }
+            }
+            rows += page;
+            if (page < PAGE_SIZE) {
+                return rows;
+            }
+        }
+    }
+
+    /** One page from the middle of the client range, as a dashboard request reads it. */
+    @Benchmark
+    public int indexOnePage() throws SQLException {
+        indexPage.setLong(1, clients / 2);
+        indexPage.setInt(2, 100);
+        int rows = 0;
+        try (ResultSet rs = indexPage.executeQuery()) {
+            while (rs.next()) {
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    private int count(String sql) throws SQLException {
+        int rows = 0;
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            while (rs.next()) {
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    private static String sql(String resource) throws IOException {
+        try (InputStream in = TopBalanceReportBenchmark.class.getResourceAsStream(resource)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).trim().replaceAll(";$", "");
+        }
+    }
+}
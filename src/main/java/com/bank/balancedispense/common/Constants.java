@@ -1,9 +1,14 @@
 package com.bank.balancedispense.common;
 
+import java.util.List;
+
 /**
  * Contains application-wide constant values.
  */
 public class Constants {
     // Allowed overdraft limit for eligible account type
     public static final double OVERDRAFT_LIMIT = -10000.0;
+
+    // Account types counted as loans in the financial position
+    public static final List<String> LOAN_ACCOUNT_TYPES = List.of("PLOAN", "HLOAN");
 }
@@ -7,6 +7,8 @@ public enum ErrorMessage {
     ACCOUNT_NOT_FOUND("Account not found"),
     ATM_NOT_FOUND("ATM not registered or not active"),
     INSUFFICIENT_FUNDS("Insufficient funds"),
+    CONCURRENT_UPDATE("The ATM or account was changed by another transaction. Please retry."),
+    IDEMPOTENCY_KEY_REUSED("Idempotency key was already used for a different withdrawal."),
     NOTE_CALCULATION_FAILED("Amount cannot be dispensed. Try a different amount.");
 
     private final String message;
@@ -0,0 +1,12 @@
+package com.bank.balancedispense.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables {@code @Scheduled} background jobs, such as the in-memory inventory write-behind.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
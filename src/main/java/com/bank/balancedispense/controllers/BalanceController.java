@@ -1,11 +1,14 @@
 package com.bank.balancedispense.controllers;
 
+import com.bank.balancedispense.dto.BulkBalanceResponse;
 import com.bank.balancedispense.dto.CurrencyBalanceResponseWrapper;
 import com.bank.balancedispense.dto.ErrorResponse;
+import com.bank.balancedispense.dto.PortfolioResponseWrapper;
 import com.bank.balancedispense.dto.ResultDto;
 import com.bank.balancedispense.dto.TransactionalBalanceResponseWrapper;
 import com.bank.balancedispense.exceptions.NoAccountsFoundException;
 import com.bank.balancedispense.services.BalanceService;
+import com.bank.balancedispense.util.ClientBalanceVersions;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -15,14 +18,24 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.constraints.Min;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * REST controller for retrieving client account balances.
- * Provides transactional and currency balance lookups.
+ * Provides transactional, currency and combined portfolio balance lookups.
+ * The JSON lookups carry the client's balance version as ETag and answer a matching
+ * If-None-Match with 304 without loading anything.
  */
 @RestController
 @RequestMapping("/discovery-atm")
@@ -33,13 +46,27 @@ public class BalanceController {
     @Autowired
     private BalanceService balanceService;
 
+    @Autowired
+    private ClientBalanceVersions balanceVersions;
+
+    @Value("${atm.balance.page.default-size:100}")
+    private int defaultPageSize;
+
+    @Value("${atm.balance.page.max-size:1000}")
+    private int maxPageSize;
+
+    @Value("${atm.balance.bulk.max-clients:500}")
+    private int maxBulkClients;
+
     @Operation(
             summary = "Get all transactional balances for a client",
-            description = "Returns all transactional accounts with available balances, sorted in descending order by balance."
+            description = "Returns all transactional accounts with available balances, sorted in descending order by balance. "
+                    + "Pass limit (and then nextCursor as cursor) to page through the accounts instead."
     )
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Successful retrieval",
                     content = @Content(schema = @Schema(implementation = TransactionalBalanceResponseWrapper.class))),
+            @ApiResponse(responseCode = "304", description = "Balances unchanged since the ETag in If-None-Match"),
             @ApiResponse(responseCode = "400", description = "Invalid client ID",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "404", description = "No accounts found",
@@ -47,18 +74,43 @@ public class BalanceController {
     })
     @GetMapping(value = "/queryTransactionalBalances", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<TransactionalBalanceResponseWrapper> getTransactionalBalances(
+            @Parameter(description = "Client ID", required = true, example = "12345")
+            @RequestParam @Min(1) Long clientId,
+            @Parameter(description = "Page size; enables keyset pagination")
+            @RequestParam(required = false) Integer limit,
+            @Parameter(description = "nextCursor of the previous page")
+            @RequestParam(required = false) String cursor,
+            WebRequest request) {
+        if (limit == null && cursor == null) {
+            return conditional(clientId, request, () -> balanceService.getTransactionalBalances(clientId));
+        }
+        int size = pageSize(limit);
+        return conditional(clientId, request, () -> balanceService.getTransactionalBalances(clientId, cursor, size));
+    }
+
+    @Operation(
+            summary = "Stream all transactional balances for a client",
+            description = "Writes the transactional accounts as newline-delimited JSON, in the same order as /queryTransactionalBalances, "
+                    + "while they are read from the database."
+    )
+    @GetMapping(value = "/queryTransactionalBalances/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamTransactionalBalances(
             @Parameter(description = "Client ID", required = true, example = "12345")
             @RequestParam @Min(1) Long clientId) {
-        return ResponseEntity.ok(balanceService.getTransactionalBalances(clientId));
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> balanceService.streamBalances(clientId, true, out));
     }
 
     @Operation(
             summary = "Get all currency balances for a client with converted Rand values",
-            description = "Returns all currency accounts with original and ZAR-converted balances, sorted by ZAR amount."
+            description = "Returns all currency accounts with original and ZAR-converted balances, sorted by ZAR amount. "
+                    + "Pass limit (and then nextCursor as cursor) to page through the accounts by account number instead."
     )
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Successful retrieval",
                     content = @Content(schema = @Schema(implementation = CurrencyBalanceResponseWrapper.class))),
+            @ApiResponse(responseCode = "304", description = "Balances unchanged since the ETag in If-None-Match"),
             @ApiResponse(responseCode = "400", description = "Invalid client ID",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "404", description = "No accounts found",
@@ -66,9 +118,100 @@ public class BalanceController {
     })
     @GetMapping(value = "/queryCcyBalances", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<CurrencyBalanceResponseWrapper> getCurrencyBalances(
+            @Parameter(description = "Client ID", required = true, example = "12345")
+            @RequestParam @Min(1) Long clientId,
+            @Parameter(description = "Page size; enables keyset pagination")
+            @RequestParam(required = false) Integer limit,
+            @Parameter(description = "nextCursor of the previous page")
+            @RequestParam(required = false) String cursor,
+            WebRequest request) {
+        if (limit == null && cursor == null) {
+            return conditional(clientId, request, () -> balanceService.getCurrencyBalances(clientId));
+        }
+        int size = pageSize(limit);
+        return conditional(clientId, request, () -> balanceService.getCurrencyBalances(clientId, cursor, size));
+    }
+
+    @Operation(
+            summary = "Stream all currency balances for a client",
+            description = "Writes the currency accounts as newline-delimited JSON, ordered by account number, "
+                    + "while they are read from the database."
+    )
+    @GetMapping(value = "/queryCcyBalances/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamCurrencyBalances(
             @Parameter(description = "Client ID", required = true, example = "12345")
             @RequestParam @Min(1) Long clientId) {
-        return ResponseEntity.ok(balanceService.getCurrencyBalances(clientId));
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> balanceService.streamBalances(clientId, false, out));
+    }
+
+    @Operation(
+            summary = "Get a client's full portfolio",
+            description = "Returns client details with transactional accounts (descending by balance) and currency accounts "
+                    + "(ascending by ZAR amount) in one response, loaded with a single query."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Successful retrieval",
+                    content = @Content(schema = @Schema(implementation = PortfolioResponseWrapper.class))),
+            @ApiResponse(responseCode = "304", description = "Portfolio unchanged since the ETag in If-None-Match"),
+            @ApiResponse(responseCode = "400", description = "Invalid or unknown client ID",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping(value = "/portfolio", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<PortfolioResponseWrapper> getPortfolio(
+            @Parameter(description = "Client ID", required = true, example = "12345")
+            @RequestParam @Min(1) Long clientId,
+            WebRequest request) {
+        return conditional(clientId, request, () -> balanceService.getPortfolio(clientId));
+    }
+
+    @Operation(
+            summary = "Get the balances of several clients",
+            description = "Returns both account groups for each client, loaded with a single query and converted with one "
+                    + "rate snapshot. Unknown clients and clients without accounts get their own failed result."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Clients processed; see the result of each client",
+                    content = @Content(schema = @Schema(implementation = BulkBalanceResponse.class))),
+            @ApiResponse(responseCode = "400", description = "No client IDs or too many",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @PostMapping(value = "/balances/bulk", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BulkBalanceResponse> getBulkBalances(
+            @Parameter(description = "Client IDs; results are returned in the same order", required = true)
+            @RequestBody List<Long> clientIds) {
+
+        if (clientIds.isEmpty() || clientIds.size() > maxBulkClients) {
+            throw new IllegalArgumentException("A bulk lookup must contain 1 to " + maxBulkClients + " client IDs");
+        }
+        return ResponseEntity.ok(balanceService.getBulkBalances(clientIds));
+    }
+
+    /**
+     * Answers 304 if the client's current ETag matches If-None-Match, without calling the service.
+     * Otherwise loads the body and returns it with that ETag. The tag is taken before the load, so a
+     * withdrawal committing in between can only make it outdated, never leave it on older data.
+     */
+    private <T> ResponseEntity<T> conditional(Long clientId, WebRequest request, Supplier<T> body) {
+        String etag = balanceVersions.etag(clientId);
+        if (request.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(body.get());
+    }
+
+    private int pageSize(Integer limit) {
+        if (limit == null) {
+            return defaultPageSize;
+        }
+        if (limit < 1 || limit > maxPageSize) {
+            throw new IllegalArgumentException("limit must be between 1 and " + maxPageSize);
+        }
+        return limit;
     }
 
     /**
@@ -0,0 +1,95 @@
+package com.bank.balancedispense.controllers;
+
+import com.bank.balancedispense.dto.ClientPositionResponse;
+import com.bank.balancedispense.dto.ErrorResponse;
+import com.bank.balancedispense.dto.PositionRebuildReport;
+import com.bank.balancedispense.dto.TopBalancePageResponse;
+import com.bank.balancedispense.services.ClientPositionService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.constraints.Min;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * REST controller for the per-client financial position summary and the top transactional balances it indexes.
+ */
+@RestController
+@RequestMapping("/discovery-atm")
+@Validated
+@Tag(name = "Client Position API", description = "Endpoints for client financial positions")
+public class ClientPositionController {
+
+    @Autowired
+    private ClientPositionService positionService;
+
+    @Value("${atm.balance.page.default-size:100}")
+    private int defaultPageSize;
+
+    @Value("${atm.balance.page.max-size:1000}")
+    private int maxPageSize;
+
+    @Operation(
+            summary = "Get a client's financial position",
+            description = "Returns the client's loan, transactional and net balances from the CLIENT_POSITION summary, "
+                    + "read by primary key."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Successful retrieval",
+                    content = @Content(schema = @Schema(implementation = ClientPositionResponse.class))),
+            @ApiResponse(responseCode = "404", description = "Client not found",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping(value = "/clientPosition", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ClientPositionResponse> getPosition(
+            @Parameter(description = "Client ID", required = true, example = "12345")
+            @RequestParam @Min(1) Long clientId) {
+        return ResponseEntity.ok(positionService.getPosition(clientId));
+    }
+
+    @Operation(
+            summary = "List each client's highest transactional balance",
+            description = "Returns one page of clients in ascending ID order with their transactional account holding the "
+                    + "highest balance, read from the CLIENT_POSITION index. Pass nextAfterClientId as afterClientId "
+                    + "to read the next page."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Successful retrieval",
+                    content = @Content(schema = @Schema(implementation = TopBalancePageResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid page size",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping(value = "/topTransactionalBalances", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<TopBalancePageResponse> getTopTransactionalBalances(
+            @Parameter(description = "nextAfterClientId of the previous page")
+            @RequestParam(required = false) Long afterClientId,
+            @Parameter(description = "Page size")
+            @RequestParam(required = false) Integer limit) {
+        int size = limit == null ? defaultPageSize : limit;
+        if (size < 1 || size > maxPageSize) {
+            throw new IllegalArgumentException("limit must be between 1 and " + maxPageSize);
+        }
+        return ResponseEntity.ok(positionService.getTopTransactionalBalances(afterClientId, size));
+    }
+
+    @Operation(
+            summary = "Rebuild and verify all client positions",
+            description = "Recomputes every position from the client accounts in parallel client-ID ranges, "
+                    + "and repairs and counts positions that were missing or wrong."
+    )
+    @ApiResponse(responseCode = "200", description = "Rebuild finished",
+            content = @Content(schema = @Schema(implementation = PositionRebuildReport.class)))
+    @PostMapping(value = "/admin/positions/rebuild", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<PositionRebuildReport> rebuildPositions() {
+        return ResponseEntity.ok(positionService.rebuildAll());
+    }
+}
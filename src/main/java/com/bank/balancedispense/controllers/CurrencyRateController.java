@@ -0,0 +1,64 @@
+package com.bank.balancedispense.controllers;
+
+import com.bank.balancedispense.dto.CurrencyRateDto;
+import com.bank.balancedispense.dto.CurrencyRateUpdateRequest;
+import com.bank.balancedispense.dto.ErrorResponse;
+import com.bank.balancedispense.services.CurrencyRateService;
+import com.bank.balancedispense.services.ReferenceDataCacheService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * REST controller for maintaining currency conversion rates and the cached reference data.
+ */
+@RestController
+@RequestMapping("/discovery-atm/admin")
+@Tag(name = "Currency Rate Admin API", description = "Endpoints for maintaining currency conversion rates")
+public class CurrencyRateController {
+
+    @Autowired
+    private CurrencyRateService currencyRateService;
+
+    @Autowired
+    private ReferenceDataCacheService referenceDataCacheService;
+
+    @Operation(
+            summary = "Set the conversion rate of a currency",
+            description = "Creates or replaces the currency's rate to ZAR. Balances and withdrawals use the new rate once it is saved."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Rate updated",
+                    content = @Content(schema = @Schema(implementation = CurrencyRateDto.class))),
+            @ApiResponse(responseCode = "400", description = "Validation failed or unsupported currency",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @PutMapping(value = "/rates/{currencyCode}", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CurrencyRateDto> updateRate(
+            @Parameter(description = "ISO currency code", required = true, example = "USD")
+            @PathVariable String currencyCode,
+            @RequestBody @Valid CurrencyRateUpdateRequest request) {
+        return ResponseEntity.ok(currencyRateService.updateRate(currencyCode, request));
+    }
+
+    @Operation(
+            summary = "Evict cached reference data",
+            description = "Drops cached currencies, account types, denominations and rates so they are reloaded from the database. "
+                    + "Only needed after those tables were changed outside this API."
+    )
+    @ApiResponse(responseCode = "204", description = "Cache evicted")
+    @DeleteMapping("/cache")
+    public ResponseEntity<Void> evictReferenceData() {
+        referenceDataCacheService.evictAll();
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,73 @@
+package com.bank.balancedispense.controllers;
+
+import com.bank.balancedispense.dto.ErrorResponse;
+import com.bank.balancedispense.dto.MonthEndReportStatus;
+import com.bank.balancedispense.services.MonthEndReportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+/**
+ * REST controller for starting the month-end report and following its progress.
+ * The finished report is downloaded through {@link ReportExportController}.
+ */
+@RestController
+@RequestMapping("/discovery-atm/admin/reports")
+@Tag(name = "Month-End Report API", description = "Endpoints for the month-end ZAR position report")
+public class MonthEndReportController {
+
+    @Autowired
+    private MonthEndReportService monthEndReportService;
+
+    @Operation(
+            summary = "Start the month-end report",
+            description = "Computes every client's loan, transactional and other balances converted to ZAR in parallel "
+                    + "client-ID ranges. Runs in the background; poll GET /admin/reports/month-end for progress."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "202", description = "Report started",
+                    content = @Content(schema = @Schema(implementation = MonthEndReportStatus.class))),
+            @ApiResponse(responseCode = "409", description = "A report is already running",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @PostMapping(value = "/month-end", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<MonthEndReportStatus> startMonthEndReport(
+            @Parameter(description = "Instant whose conversion rates apply; defaults to the end of the previous month (UTC)",
+                    example = "2026-09-30T23:59:59Z")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant asOf) {
+        Instant rateInstant = asOf != null ? asOf : LocalDate.now(ZoneOffset.UTC).withDayOfMonth(1)
+                .atStartOfDay(ZoneOffset.UTC).toInstant().minusNanos(1);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(monthEndReportService.start(rateInstant));
+    }
+
+    @Operation(
+            summary = "Get the month-end report progress",
+            description = "Returns the running or most recent run: ranges completed, clients processed, the timing of "
+                    + "each finished range and, once completed, the ZAR totals."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Run status",
+                    content = @Content(schema = @Schema(implementation = MonthEndReportStatus.class))),
+            @ApiResponse(responseCode = "404", description = "No report has been started")
+    })
+    @GetMapping(value = "/month-end", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<MonthEndReportStatus> getMonthEndReportStatus() {
+        return monthEndReportService.status()
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
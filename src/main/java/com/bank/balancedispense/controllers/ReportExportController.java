@@ -0,0 +1,160 @@
+package com.bank.balancedispense.controllers;
+
+import com.bank.balancedispense.dto.ErrorResponse;
+import com.bank.balancedispense.services.MonthEndReportService;
+import com.bank.balancedispense.services.ReportExportService;
+import com.bank.balancedispense.services.ReportExportService.Format;
+import com.bank.balancedispense.services.ReportExportService.Report;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * REST controller that streams the SQL reports as CSV or newline-delimited JSON downloads,
+ * and the latest month-end report file.
+ * Responses are gzip-compressed while they are written when the client accepts it.
+ */
+@RestController
+@RequestMapping("/discovery-atm/reports")
+@Tag(name = "Report Export API", description = "Endpoints for downloading the SQL reports")
+public class ReportExportController {
+
+    private static final MediaType TEXT_CSV = new MediaType("text", "csv", StandardCharsets.UTF_8);
+
+    @Autowired
+    private ReportExportService reportExportService;
+
+    @Autowired
+    private MonthEndReportService monthEndReportService;
+
+    @Operation(
+            summary = "Export the financial position of every client",
+            description = "Streams each client's loan, transactional and net balances from the CLIENT_POSITION summary "
+                    + "in client-ID order, as CSV or newline-delimited JSON."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Report streamed"),
+            @ApiResponse(responseCode = "400", description = "Unknown format",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping("/financial-position")
+    public ResponseEntity<StreamingResponseBody> exportFinancialPosition(
+            @Parameter(description = "csv or ndjson", example = "csv")
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return export(Report.FINANCIAL_POSITION, "financial-position", format, acceptEncoding);
+    }
+
+    @Operation(
+            summary = "Export every client's highest transactional balance",
+            description = "Streams each client's transactional account holding the highest balance from the "
+                    + "CLIENT_POSITION index in client-ID order, as CSV or newline-delimited JSON."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Report streamed"),
+            @ApiResponse(responseCode = "400", description = "Unknown format",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping("/top-transactional-balances")
+    public ResponseEntity<StreamingResponseBody> exportTopTransactionalBalances(
+            @Parameter(description = "csv or ndjson", example = "csv")
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return export(Report.TOP_TRANSACTIONAL_BALANCES, "top-transactional-balances", format, acceptEncoding);
+    }
+
+    @Operation(
+            summary = "Download the latest month-end report",
+            description = "Streams the CSV file of the most recent completed month-end run, with every client's "
+                    + "balances converted to ZAR in client-ID order."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Report streamed"),
+            @ApiResponse(responseCode = "404", description = "No month-end report has completed")
+    })
+    @GetMapping("/month-end")
+    public ResponseEntity<StreamingResponseBody> downloadMonthEndReport(
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return monthEndReportService.latestReport()
+                .map(report -> download(report.getFileName().toString(), TEXT_CSV, acceptEncoding,
+                        out -> Files.copy(report, out)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    private ResponseEntity<StreamingResponseBody> export(Report report, String fileName, String format, String acceptEncoding) {
+        Format exportFormat = parseFormat(format);
+        return download(fileName + (exportFormat == Format.CSV ? ".csv" : ".ndjson"),
+                exportFormat == Format.CSV ? TEXT_CSV : MediaType.APPLICATION_NDJSON, acceptEncoding,
+                out -> reportExportService.export(report, exportFormat, out));
+    }
+
+    /**
+     * Sends the body as an attachment, gzip-compressed while it is written if the client accepts it.
+     */
+    private static ResponseEntity<StreamingResponseBody> download(String fileName, MediaType contentType,
+                                                                  String acceptEncoding, StreamingResponseBody body) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(contentType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(fileName).build().toString())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (!acceptsGzip(acceptEncoding)) {
+            return response.body(body);
+        }
+        return response.header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .body(out -> {
+                    GZIPOutputStream compressed = new GZIPOutputStream(out, 8192);
+                    body.writeTo(compressed);
+                    compressed.finish();
+                });
+    }
+
+    private static Format parseFormat(String format) {
+        return switch (format.toLowerCase()) {
+            case "csv" -> Format.CSV;
+            case "ndjson" -> Format.NDJSON;
+            default -> throw new IllegalArgumentException("format must be csv or ndjson");
+        };
+    }
+
+    /**
+     * True if the Accept-Encoding header lists gzip (or *) without q=0.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            String coding = tokens[0].trim();
+            if (!coding.equalsIgnoreCase("gzip") && !coding.equals("*")) {
+                continue;
+            }
+            boolean refused = false;
+            for (int i = 1; i < tokens.length; i++) {
+                String param = tokens[i].trim().replace(" ", "");
+                if (param.startsWith("q=")) {
+                    refused = param.substring(2).matches("0(\\.0*)?");
+                }
+            }
+            if (!refused) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,12 +1,15 @@
 package com.bank.balancedispense.controllers;
 
+import com.bank.balancedispense.dto.BatchWithdrawResponse;
 import com.bank.balancedispense.dto.ErrorResponse;
 import com.bank.balancedispense.dto.ResultDto;
 import com.bank.balancedispense.dto.WithdrawRequest;
 import com.bank.balancedispense.dto.WithdrawResponseWrapper;
 import com.bank.balancedispense.exceptions.InsufficientFundsException;
 import com.bank.balancedispense.exceptions.NoteCalculationException;
+import com.bank.balancedispense.services.BatchWithdrawService;
 import com.bank.balancedispense.services.WithdrawService;
+import com.bank.balancedispense.services.impl.IdempotentWithdrawService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -16,11 +19,13 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
 import java.util.stream.Collectors;
 
 /**
@@ -32,12 +37,24 @@ import java.util.stream.Collectors;
 @Tag(name = "Withdrawal API", description = "Endpoint for ATM cash withdrawal operations")
 public class WithdrawController {
 
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 100;
+
     @Autowired
     private WithdrawService withdrawService;
 
+    @Autowired
+    private IdempotentWithdrawService idempotentWithdrawService;
+
+    @Autowired
+    private BatchWithdrawService batchWithdrawService;
+
+    @Value("${atm.withdraw.batch.max-size:1000}")
+    private int maxBatchSize;
+
     @Operation(
             summary = "Withdraw amount from transactional account",
-            description = "Processes a cash withdrawal request by validating funds, calculating denominations, and updating account balance."
+            description = "Processes a cash withdrawal request by validating funds, calculating denominations, and updating account balance. "
+                    + "Requests sent with an Idempotency-Key header are executed once; replays return the original response."
     )
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Withdrawal successful",
@@ -45,13 +62,19 @@ public class WithdrawController {
             @ApiResponse(responseCode = "400", description = "Validation failed or insufficient funds",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "404", description = "ATM, client, or account not found",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "409", description = "ATM inventory changed concurrently; retry the request",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "422", description = "Idempotency key already used for a different request",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     })
     @PostMapping(value = "/withdraw", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<?> withdraw(
             @Parameter(description = "Withdrawal request details", required = true)
             @RequestBody @Valid WithdrawRequest request,
-            BindingResult result) {
+            BindingResult result,
+            @Parameter(description = "Client-generated key that makes retries of this withdrawal safe")
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
 
         if (result.hasErrors()) {
             String errors = result.getFieldErrors().stream()
@@ -62,10 +85,38 @@ public class WithdrawController {
             );
         }
 
-        WithdrawResponseWrapper response = withdrawService.withdraw(request);
+        if (idempotencyKey != null && (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH)) {
+            throw new IllegalArgumentException("Idempotency-Key must be 1 to " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters");
+        }
+
+        WithdrawResponseWrapper response = idempotencyKey == null
+                ? withdrawService.withdraw(request)
+                : idempotentWithdrawService.withdraw(idempotencyKey, request);
         return ResponseEntity.ok(response);
     }
 
+    @Operation(
+            summary = "Replay a batch of withdrawals",
+            description = "Processes queued withdrawals grouped by ATM and account. Each withdrawal gets its own result; "
+                    + "a failed withdrawal does not affect the others."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Batch processed; see the result of each withdrawal",
+                    content = @Content(schema = @Schema(implementation = BatchWithdrawResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Batch is empty or too large",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @PostMapping(value = "/withdraw/batch", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BatchWithdrawResponse> withdrawBatch(
+            @Parameter(description = "Withdrawals in the order they were taken", required = true)
+            @RequestBody List<WithdrawRequest> requests) {
+
+        if (requests.isEmpty() || requests.size() > maxBatchSize) {
+            throw new IllegalArgumentException("A batch must contain 1 to " + maxBatchSize + " withdrawals");
+        }
+        return ResponseEntity.ok(batchWithdrawService.withdrawAll(requests));
+    }
+
     /**
      * Handles cases where withdrawal fails due to insufficient funds.
      */
@@ -77,12 +128,12 @@ public class WithdrawController {
     }
 
     /**
-     * Handles note calculation failures and returns a fallback suggestion if available.
+     * Handles note calculation failures and returns the dispensable alternatives if available.
      */
     @ExceptionHandler(NoteCalculationException.class)
     public ResponseEntity<ResultDto> handleNoteCalculation(NoteCalculationException ex) {
         return ResponseEntity.badRequest().body(
-                new ResultDto(false, 400, ex.getMessage(), ex.getFallbackAmount())
+                new ResultDto(false, 400, ex.getMessage(), ex.getFallbackAmount(), ex.getAlternatives())
         );
     }
 }
@@ -0,0 +1,16 @@
+package com.bank.balancedispense.dto;
+
+import java.util.List;
+
+/**
+ * Response DTO for a batch of withdrawals.
+ *
+ * @param succeeded Number of withdrawals that completed
+ * @param failed    Number of withdrawals that were rejected
+ * @param results   One entry per request, in request order. Failed entries only carry their {@code result}.
+ */
+public record BatchWithdrawResponse(
+        int succeeded,
+        int failed,
+        List<WithdrawResponseWrapper> results
+) {}
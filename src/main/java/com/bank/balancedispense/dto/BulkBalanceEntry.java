@@ -0,0 +1,19 @@
+package com.bank.balancedispense.dto;
+
+import java.util.List;
+
+/**
+ * One client's entry in a bulk balance response.
+ * Entries for unknown clients or clients without accounts only carry the client ID and their {@code result}.
+ *
+ * @param clientId              Client ID as requested
+ * @param transactionalAccounts Transactional accounts, sorted descending by balance
+ * @param currencyAccounts      Currency accounts, sorted ascending by ZAR value
+ */
+public record BulkBalanceEntry(
+        Long clientId,
+        ClientDto client,
+        List<TransactionalAccountDto> transactionalAccounts,
+        List<CurrencyBalanceResponse> currencyAccounts,
+        ResultDto result
+) {}
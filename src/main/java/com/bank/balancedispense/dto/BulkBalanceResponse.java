@@ -0,0 +1,16 @@
+package com.bank.balancedispense.dto;
+
+import java.util.List;
+
+/**
+ * Response DTO for a bulk balance lookup.
+ *
+ * @param found    Number of clients whose accounts were returned
+ * @param notFound Number of clients that are unknown or have no accounts
+ * @param results  One entry per requested client ID, in request order
+ */
+public record BulkBalanceResponse(
+        int found,
+        int notFound,
+        List<BulkBalanceEntry> results
+) {}
@@ -0,0 +1,19 @@
+package com.bank.balancedispense.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Response DTO for a client's financial position. Balances are summed as stored, without currency conversion,
+ * like {@code sql/aggregate_financial_position.sql}.
+ *
+ * @param loanBalance          Sum of the personal and home loan balances
+ * @param transactionalBalance Sum of the transactional account balances
+ * @param netPosition          Sum of the loan and transactional balances
+ */
+public record ClientPositionResponse(
+        ClientDto client,
+        BigDecimal loanBalance,
+        BigDecimal transactionalBalance,
+        BigDecimal netPosition,
+        ResultDto result
+) {}
@@ -14,5 +14,14 @@ public record CurrencyBalanceResponse(
         BigDecimal conversionRate,
         BigDecimal balance,
         BigDecimal zarBalance,
-        BigDecimal accountLimit
-) {}
+        BigDecimal accountLimit,
+        Long rateVersion // Version of the conversion rate used for zarBalance (0 = base rate without history)
+) {
+    /**
+     * Convenience constructor for accounts whose conversion rate version is not tracked.
+     */
+    public CurrencyBalanceResponse(String accountNumber, String typeCode, String accountTypeDescription, String currencyCode,
+                                   BigDecimal conversionRate, BigDecimal balance, BigDecimal zarBalance, BigDecimal accountLimit) {
+        this(accountNumber, typeCode, accountTypeDescription, currencyCode, conversionRate, balance, zarBalance, accountLimit, null);
+    }
+}
@@ -4,9 +4,19 @@ import java.util.List;
 
 /**
  * Wrapper for currency balance API response including client info and result metadata.
+ *
+ * @param nextCursor Cursor for the next page when the listing is paginated and more accounts follow, otherwise null
  */
 public record CurrencyBalanceResponseWrapper(
         ClientDto client,
         List<CurrencyBalanceResponse> accounts,
-        ResultDto result
-) {}
+        ResultDto result,
+        String nextCursor
+) {
+    /**
+     * Convenience constructor for a complete (unpaginated) listing.
+     */
+    public CurrencyBalanceResponseWrapper(ClientDto client, List<CurrencyBalanceResponse> accounts, ResultDto result) {
+        this(client, accounts, result, null);
+    }
+}
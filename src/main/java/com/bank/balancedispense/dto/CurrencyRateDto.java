@@ -0,0 +1,23 @@
+package com.bank.balancedispense.dto;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Response DTO for a stored currency conversion rate.
+ *
+ * @param currencyCode        ISO currency code
+ * @param conversionIndicator {@code *} or {@code /}
+ * @param rate                Rate as stored
+ * @param zarMultiplier       Effective multiplier to ZAR
+ * @param rateVersion         Version of the rate in the rate history
+ * @param effectiveFrom       Time from which the rate applies
+ */
+public record CurrencyRateDto(
+        String currencyCode,
+        String conversionIndicator,
+        BigDecimal rate,
+        BigDecimal zarMultiplier,
+        Long rateVersion,
+        Instant effectiveFrom
+) {}
@@ -0,0 +1,24 @@
+package com.bank.balancedispense.dto;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Positive;
+
+import java.math.BigDecimal;
+
+/**
+ * Request DTO for setting a currency's conversion rate to ZAR.
+ *
+ * @param conversionIndicator {@code *} to multiply by the rate, {@code /} to divide by it
+ * @param rate                Positive conversion rate
+ */
+public record CurrencyRateUpdateRequest(
+
+        @NotNull(message = "Conversion indicator is required")
+        @Pattern(regexp = "[*/]", message = "Conversion indicator must be * or /")
+        String conversionIndicator,
+
+        @NotNull(message = "Rate is required")
+        @Positive(message = "Rate must be greater than 0")
+        BigDecimal rate
+) {}
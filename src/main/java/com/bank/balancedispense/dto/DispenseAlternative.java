@@ -0,0 +1,17 @@
+package com.bank.balancedispense.dto;
+
+/**
+ * An amount the ATM can pay out instead of the one requested.
+ *
+ * @param amount    Dispensable amount
+ * @param direction Whether the amount is below or above the requested amount
+ */
+public record DispenseAlternative(
+        int amount,
+        Direction direction
+) {
+    public enum Direction {
+        LOWER,
+        HIGHER
+    }
+}
@@ -0,0 +1,49 @@
+package com.bank.balancedispense.dto;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Progress of a month-end report run, with the report totals once it has completed.
+ *
+ * @param state                RUNNING, COMPLETED or FAILED
+ * @param asOf                 Instant whose conversion rates were applied
+ * @param startedAt            Start of the run
+ * @param elapsedMillis        Wall-clock time so far, or of the whole run once finished
+ * @param partitions           Number of client-ID ranges
+ * @param completedPartitions  Ranges processed so far
+ * @param clients              Clients processed so far
+ * @param loanBalance          Total loan balance in ZAR, once completed
+ * @param transactionalBalance Total transactional balance in ZAR, once completed
+ * @param otherBalance         Total of all other account types in ZAR, once completed
+ * @param netPosition          Loan plus transactional balance in ZAR, once completed
+ * @param totalBalance         Total over all account types in ZAR, once completed
+ * @param fileName             Name of the report file, once completed
+ * @param partitionTimings     Timings of the ranges processed so far, by client ID
+ * @param error                Cause of a failed run
+ */
+public record MonthEndReportStatus(
+        State state,
+        Instant asOf,
+        Instant startedAt,
+        long elapsedMillis,
+        int partitions,
+        int completedPartitions,
+        long clients,
+        BigDecimal loanBalance,
+        BigDecimal transactionalBalance,
+        BigDecimal otherBalance,
+        BigDecimal netPosition,
+        BigDecimal totalBalance,
+        String fileName,
+        List<PartitionTiming> partitionTimings,
+        String error
+) {
+
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+}
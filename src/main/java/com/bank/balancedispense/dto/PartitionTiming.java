@@ -0,0 +1,16 @@
+package com.bank.balancedispense.dto;
+
+/**
+ * Time taken by one client-ID range of a report run.
+ *
+ * @param fromClientId  First client ID of the range
+ * @param toClientId    Last client ID of the range
+ * @param clients       Clients with accounts in the range
+ * @param elapsedMillis Time to read, convert and write the range
+ */
+public record PartitionTiming(
+        long fromClientId,
+        long toClientId,
+        int clients,
+        long elapsedMillis
+) {}
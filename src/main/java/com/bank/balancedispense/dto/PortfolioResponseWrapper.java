@@ -0,0 +1,16 @@
+package com.bank.balancedispense.dto;
+
+import java.util.List;
+
+/**
+ * Wrapper for the portfolio API response: client info, both account groups and the status result.
+ *
+ * @param transactionalAccounts Transactional accounts, sorted descending by balance
+ * @param currencyAccounts      Currency accounts, sorted ascending by ZAR value
+ */
+public record PortfolioResponseWrapper(
+        ClientDto client,
+        List<TransactionalAccountDto> transactionalAccounts,
+        List<CurrencyBalanceResponse> currencyAccounts,
+        ResultDto result
+) {}
@@ -0,0 +1,33 @@
+package com.bank.balancedispense.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Read-only projection of one client account together with its client, as returned by the
+ * portfolio query in ClientAccountRepository. No entity is loaded to build it.
+ * A client without accounts yields a single row whose account columns are null.
+ *
+ * @param clientId               Client ID
+ * @param title                  Client title
+ * @param name                   Client first name
+ * @param surname                Client surname
+ * @param accountNumber          Client account number, null if the client has no accounts
+ * @param typeCode               Account type code
+ * @param accountTypeDescription Account type description
+ * @param transactional          Whether the account type is transactional
+ * @param currencyCode           ISO currency code of the account
+ * @param balance                Balance in the account currency
+ */
+public record PortfolioRow(
+        Long clientId,
+        String title,
+        String name,
+        String surname,
+        String accountNumber,
+        String typeCode,
+        String accountTypeDescription,
+        Boolean transactional,
+        String currencyCode,
+        BigDecimal balance
+) {
+}
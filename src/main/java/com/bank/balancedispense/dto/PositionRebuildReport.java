@@ -0,0 +1,20 @@
+package com.bank.balancedispense.dto;
+
+/**
+ * Outcome of a CLIENT_POSITION rebuild.
+ *
+ * @param partitions    Number of client-ID ranges processed
+ * @param verified      Clients with accounts whose position was checked
+ * @param inserted      Positions that were missing and have been stored
+ * @param corrected     Stored positions that differed from the accounts and have been replaced
+ * @param removed       Stored positions of clients without accounts that have been deleted
+ * @param elapsedMillis Wall-clock time of the rebuild
+ */
+public record PositionRebuildReport(
+        int partitions,
+        int verified,
+        int inserted,
+        int corrected,
+        int removed,
+        long elapsedMillis
+) {}
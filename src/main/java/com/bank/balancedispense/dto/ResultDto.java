@@ -1,5 +1,7 @@
 package com.bank.balancedispense.dto;
 
+import java.util.List;
+
 /**
  * Represents a standard metadata response block included in all successful and failed API responses.
  * Contains outcome status, HTTP code, and optional fallback data (e.g., for note dispensing).
@@ -8,12 +10,20 @@ public record ResultDto(
         boolean success,
         int statusCode,
         String statusReason,
-        Integer fallbackAmount // Nullable: used only when fallback suggestions apply (e.g., withdrawals)
+        Integer fallbackAmount, // Nullable: used only when fallback suggestions apply (e.g., withdrawals)
+        List<DispenseAlternative> alternatives // Nullable: nearest dispensable amounts below/above the request
 ) {
     /**
      * Convenience constructor without fallback value for general success/failure responses.
      */
     public ResultDto(boolean success, int statusCode, String statusReason) {
-        this(success, statusCode, statusReason, null);
+        this(success, statusCode, statusReason, null, null);
+    }
+
+    /**
+     * Convenience constructor with a single fallback amount and no further alternatives.
+     */
+    public ResultDto(boolean success, int statusCode, String statusReason, Integer fallbackAmount) {
+        this(success, statusCode, statusReason, fallbackAmount, null);
     }
 }
@@ -0,0 +1,13 @@
+package com.bank.balancedispense.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * A client's transactional account with the highest balance.
+ */
+public record TopBalanceDto(
+        Long clientId,
+        String surname,
+        String accountNumber,
+        BigDecimal balance
+) {}
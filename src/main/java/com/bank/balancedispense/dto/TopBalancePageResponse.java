@@ -0,0 +1,15 @@
+package com.bank.balancedispense.dto;
+
+import java.util.List;
+
+/**
+ * One page of the top transactional balance listing.
+ *
+ * @param clients           Clients in ascending ID order
+ * @param nextAfterClientId Pass as {@code afterClientId} to read the next page; null on the last page
+ */
+public record TopBalancePageResponse(
+        List<TopBalanceDto> clients,
+        Long nextAfterClientId,
+        ResultDto result
+) {}
@@ -14,5 +14,14 @@ public record TransactionalAccountDto(
         BigDecimal conversionRate,
         BigDecimal balance,
         BigDecimal zarBalance,
-        BigDecimal accountLimit
-) {}
\ No newline at end of file
+        BigDecimal accountLimit,
+        Long rateVersion // Version of the conversion rate used for zarBalance (0 = base rate without history)
+) {
+    /**
+     * Convenience constructor for accounts whose conversion rate version is not tracked.
+     */
+    public TransactionalAccountDto(String accountNumber, String typeCode, String accountTypeDescription, String currencyCode,
+                                   BigDecimal conversionRate, BigDecimal balance, BigDecimal zarBalance, BigDecimal accountLimit) {
+        this(accountNumber, typeCode, accountTypeDescription, currencyCode, conversionRate, balance, zarBalance, accountLimit, null);
+    }
+}
\ No newline at end of file
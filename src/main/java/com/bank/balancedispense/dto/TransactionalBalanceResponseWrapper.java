@@ -4,9 +4,19 @@ import java.util.List;
 
 /**
  * Wrapper for transactional balance API response including client info and status result.
+ *
+ * @param nextCursor Cursor for the next page when the listing is paginated and more accounts follow, otherwise null
  */
 public record TransactionalBalanceResponseWrapper(
         ClientDto client,
         List<TransactionalAccountDto> accounts,
-        ResultDto result
-) {}
+        ResultDto result,
+        String nextCursor
+) {
+    /**
+     * Convenience constructor for a complete (unpaginated) listing.
+     */
+    public TransactionalBalanceResponseWrapper(ClientDto client, List<TransactionalAccountDto> accounts, ResultDto result) {
+        this(client, accounts, result, null);
+    }
+}
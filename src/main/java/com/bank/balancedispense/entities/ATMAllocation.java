@@ -5,31 +5,52 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
 
 /**
  * JPA entity that maps the relationship between an ATM and available denominations.
  * Captures how many notes of each denomination are stocked in a given ATM.
+ * Associations are lazy; repository methods pick one of the named entity graphs.
  */
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@NamedEntityGraphs({
+        @NamedEntityGraph(name = ATMAllocation.WITHDRAWAL_GRAPH, attributeNodes = @NamedAttributeNode("atm")),
+        @NamedEntityGraph(name = ATMAllocation.REPORTING_GRAPH, attributeNodes = {
+                @NamedAttributeNode("atm"),
+                @NamedAttributeNode("denomination")
+        })
+})
 @Table(name = "ATM_ALLOCATION")
 public class ATMAllocation {
+
+    /** Withdrawals: the ATM for the active check; denominations come from the cache inside the transaction. */
+    public static final String WITHDRAWAL_GRAPH = "ATMAllocation.withdrawal";
+    /** Reporting: the ATM and denomination, so detached results can be read in full. */
+    public static final String REPORTING_GRAPH = "ATMAllocation.reporting";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @Column(name = "ATM_ALLOCATION_ID")
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "ATM_ID")
     private ATM atm;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "DENOMINATION_ID")
     private Denomination denomination;
 
     @Column(name = "COUNT")
     private Integer quantity;
+
+    // Optimistic lock; also bumped by the conditional SQL decrement
+    @Version
+    @ColumnDefault("0")
+    @Column(name = "VERSION", nullable = false)
+    private Long version;
 }
@@ -37,12 +37,12 @@ public class Account {
     private Double balance;
 
     //referencedColumnName must match the DB column
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "account_type_code", referencedColumnName = "ACCOUNT_TYPE_CODE")
     private AccountType accountType;
 
     // referencedColumnName must match the DB column
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "currency_code", referencedColumnName = "CURRENCY_CODE")
     private Currency currency;
 
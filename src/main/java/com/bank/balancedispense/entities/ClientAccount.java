@@ -5,36 +5,60 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.math.BigDecimal;
 
 /**
  * JPA entity representing a client account.
  * This is the normalized version that ties clients to accounts with specific currencies and types.
+ * <p>
+ * All associations are lazy; repository methods select one of the named entity graphs below.
+ * Reference data outside the graph is resolved from the second-level cache, inside a transaction.
  */
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@NamedEntityGraphs({
+        @NamedEntityGraph(name = ClientAccount.WITHDRAWAL_GRAPH, attributeNodes = @NamedAttributeNode("client")),
+        @NamedEntityGraph(name = ClientAccount.REPORTING_GRAPH, attributeNodes = {
+                @NamedAttributeNode("client"),
+                @NamedAttributeNode("accountType"),
+                @NamedAttributeNode("currency")
+        })
+})
 @Table(name = "CLIENT_ACCOUNT")
 public class ClientAccount {
+
+    /** Withdrawals: the client for the response; type and currency come from the cache. */
+    public static final String WITHDRAWAL_GRAPH = "ClientAccount.withdrawal";
+    /** Reporting: every association, so detached results can be read in full. */
+    public static final String REPORTING_GRAPH = "ClientAccount.reporting";
+
     @Id
     @Column(name = "CLIENT_ACCOUNT_NUMBER", length = 10)
     private String accountNumber;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "CLIENT_ID")
     private Client client;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "ACCOUNT_TYPE_CODE")
     private AccountType accountType;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "CURRENCY_CODE")
     private Currency currency;
 
     @Column(name = "DISPLAY_BALANCE", precision = 18, scale = 3)
     private BigDecimal displayBalance;
+
+    // Optimistic lock; also bumped by the conditional SQL debit
+    @Version
+    @ColumnDefault("0")
+    @Column(name = "VERSION", nullable = false)
+    private Long version;
 }
@@ -0,0 +1,46 @@
+package com.bank.balancedispense.entities;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+/**
+ * Per-client financial position, the same totals as {@code sql/aggregate_financial_position.sql},
+ * and the client's highest-balance transactional account ({@code sql/highest_transactional_balance.sql}).
+ * Kept current by deltas written in the same transaction as each balance change, and
+ * rebuilt from CLIENT_ACCOUNT by the position rebuild job.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "CLIENT_POSITION")
+public class ClientPosition {
+    @Id
+    @Column(name = "CLIENT_ID")
+    private Long clientId;
+
+    @Column(name = "LOAN_BALANCE", precision = 18, scale = 3, nullable = false)
+    private BigDecimal loanBalance;
+
+    @Column(name = "TRANSACTIONAL_BALANCE", precision = 18, scale = 3, nullable = false)
+    private BigDecimal transactionalBalance;
+
+    @Column(name = "NET_POSITION", precision = 18, scale = 3, nullable = false)
+    private BigDecimal netPosition;
+
+    // Null if the client has no transactional account; ties go to the lowest account number
+    @Column(name = "TOP_ACCOUNT_NUMBER", length = 10)
+    private String topAccountNumber;
+
+    @Column(name = "TOP_TRANSACTIONAL_BALANCE", precision = 18, scale = 3)
+    private BigDecimal topTransactionalBalance;
+}
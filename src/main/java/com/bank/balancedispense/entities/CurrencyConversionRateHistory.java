@@ -0,0 +1,40 @@
+package com.bank.balancedispense.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * One version of a currency's conversion rate, in force from {@code effectiveFrom} until the
+ * next version of the same currency. Rows are only ever appended.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "CURRENCY_CONVERSION_RATE_HISTORY",
+        indexes = @Index(name = "IDX_RATE_HISTORY_CCY_FROM", columnList = "CURRENCY_CODE, EFFECTIVE_FROM"))
+public class CurrencyConversionRateHistory {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "RATE_VERSION")
+    private Long version;
+
+    @Column(name = "CURRENCY_CODE", length = 3, nullable = false)
+    private String currencyCode;
+
+    @Column(name = "CONVERSION_INDICATOR", nullable = false)
+    private String conversionIndicator;
+
+    @Column(name = "RATE", precision = 18, scale = 8, nullable = false)
+    private BigDecimal rate;
+
+    @Column(name = "EFFECTIVE_FROM", nullable = false)
+    private Instant effectiveFrom;
+}
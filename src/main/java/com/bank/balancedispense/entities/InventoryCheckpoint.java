@@ -0,0 +1,29 @@
+package com.bank.balancedispense.entities;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Last inventory journal sequence whose cassette changes are persisted in ATM_ALLOCATION.
+ * Written in the same transaction as the write-behind decrements of the in-memory inventory.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "ATM_INVENTORY_CHECKPOINT")
+public class InventoryCheckpoint {
+    @Id
+    @Column(name = "CHECKPOINT_ID")
+    private Long id;
+
+    @Column(name = "LAST_SEQUENCE", nullable = false)
+    private long lastSequence;
+}
@@ -0,0 +1,62 @@
+package com.bank.balancedispense.entities;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+
+/**
+ * Completed withdrawal stored under its client-supplied idempotency key.
+ * Written in the withdrawal's own transaction, so a committed withdrawal always has its record.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "WITHDRAWAL_IDEMPOTENCY")
+public class WithdrawalIdempotencyRecord implements Persistable<String> {
+    @Id
+    @Column(name = "IDEMPOTENCY_KEY", length = 100)
+    private String idempotencyKey;
+
+    // SHA-256 of the request, to detect a key reused for a different withdrawal
+    @Column(name = "REQUEST_FINGERPRINT", length = 64, nullable = false)
+    private String requestFingerprint;
+
+    @Lob
+    @Column(name = "RESPONSE_JSON", nullable = false)
+    private String responseJson;
+
+    @Column(name = "CREATED_AT", nullable = false)
+    private Instant createdAt;
+
+    // Always inserted, never merged: a duplicate key must fail instead of overwriting
+    @Transient
+    private boolean fresh = true;
+
+    public WithdrawalIdempotencyRecord(String idempotencyKey, String requestFingerprint, String responseJson, Instant createdAt) {
+        this.idempotencyKey = idempotencyKey;
+        this.requestFingerprint = requestFingerprint;
+        this.responseJson = responseJson;
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public String getId() {
+        return idempotencyKey;
+    }
+
+    @Override
+    public boolean isNew() {
+        return fresh;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markPersisted() {
+        fresh = false;
+    }
+}
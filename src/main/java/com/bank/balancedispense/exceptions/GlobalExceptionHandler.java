@@ -1,8 +1,10 @@
 package com.bank.balancedispense.exceptions;
 
 import com.bank.balancedispense.dto.ErrorResponse;
+import com.bank.balancedispense.common.ErrorMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -62,6 +64,18 @@ public class GlobalExceptionHandler {
         return buildErrorResponse("Missing required parameter: " + ex.getParameterName(), HttpStatus.BAD_REQUEST);
     }
 
+    /** Handles an idempotency key replayed with a different request. */
+    @ExceptionHandler(IdempotencyKeyReuseException.class)
+    public ResponseEntity<ErrorResponse> handleIdempotencyKeyReuse(IdempotencyKeyReuseException ex) {
+        return buildErrorResponse(ex.getMessage(), HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    /** Handles a report run requested while another one is in progress. */
+    @ExceptionHandler(ReportAlreadyRunningException.class)
+    public ResponseEntity<ErrorResponse> handleReportAlreadyRunning(ReportAlreadyRunningException ex) {
+        return buildErrorResponse(ex.getMessage(), HttpStatus.CONFLICT);
+    }
+
     /** Handles illegal arguments (e.g., unsupported currency code). */
     @ExceptionHandler(IllegalArgumentException.class)
     public ResponseEntity<ErrorResponse> handleIllegalArgument(IllegalArgumentException ex) {
@@ -72,13 +86,22 @@ public class GlobalExceptionHandler {
     @ExceptionHandler(NoteCalculationException.class)
     public ResponseEntity<ErrorResponse> handleNoteCalculation(NoteCalculationException ex) {
         String message = ex.getMessage();
-        if (ex.getFallbackAmount() != null) {
-            message += " Would you like to draw " + ex.getFallbackAmount() + "?";
+        if (!ex.getAlternatives().isEmpty()) {
+            message += " Would you like to draw " + ex.getAlternatives().stream()
+                    .map(a -> String.valueOf(a.amount()))
+                    .collect(Collectors.joining(" or ")) + "?";
         }
-        log.warn("Note calculation failed. Fallback: {}", ex.getFallbackAmount());
+        log.warn("Note calculation failed. Alternatives: {}", ex.getAlternatives());
         return buildErrorResponse(message, HttpStatus.BAD_REQUEST);
     }
 
+    /** Handles a withdrawal that lost a race for the same notes or balance. */
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<ErrorResponse> handleConcurrentUpdate(OptimisticLockingFailureException ex) {
+        log.warn("Concurrent update rejected: {}", ex.getMessage());
+        return buildErrorResponse(ErrorMessage.CONCURRENT_UPDATE.get(), HttpStatus.CONFLICT);
+    }
+
     /** Fallback handler for all unhandled exceptions. */
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ErrorResponse> handleOtherExceptions(Exception ex) {
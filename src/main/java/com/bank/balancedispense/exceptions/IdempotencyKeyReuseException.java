@@ -0,0 +1,10 @@
+package com.bank.balancedispense.exceptions;
+
+/**
+ * Thrown when an idempotency key is sent again with a different withdrawal request.
+ */
+public class IdempotencyKeyReuseException extends RuntimeException {
+    public IdempotencyKeyReuseException(String message) {
+        super(message);
+    }
+}
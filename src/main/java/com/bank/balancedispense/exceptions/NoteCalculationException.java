@@ -1,12 +1,15 @@
 package com.bank.balancedispense.exceptions;
 
+import com.bank.balancedispense.dto.DispenseAlternative;
 import lombok.Getter;
 
+import java.util.List;
+
 /**
  * Thrown when a requested withdrawal amount cannot be dispensed
  * using the available notes in the ATM.
  *
- * Optionally includes a fallback amount that could be dispensed instead.
+ * Optionally includes the nearest lower and higher amounts that could be dispensed instead.
  */
 @Getter
 public class NoteCalculationException extends RuntimeException {
@@ -14,6 +17,9 @@ public class NoteCalculationException extends RuntimeException {
     /** Suggested fallback amount if the requested amount can't be dispensed. */
     private final Integer fallbackAmount;
 
+    /** Dispensable alternatives to the requested amount, lower first. */
+    private final List<DispenseAlternative> alternatives;
+
     /**
      * Constructor for standard message-only exception.
      *
@@ -22,6 +28,7 @@ public class NoteCalculationException extends RuntimeException {
     public NoteCalculationException(String message) {
         super(message);
         this.fallbackAmount = null;
+        this.alternatives = List.of();
     }
 
     /**
@@ -33,5 +40,25 @@ public class NoteCalculationException extends RuntimeException {
     public NoteCalculationException(String message, Integer fallbackAmount) {
         super(message);
         this.fallbackAmount = fallbackAmount;
+        this.alternatives = fallbackAmount == null
+                ? List.of()
+                : List.of(new DispenseAlternative(fallbackAmount, DispenseAlternative.Direction.LOWER));
+    }
+
+    /**
+     * Constructor with message and dispensable alternatives.
+     * The fallback amount is the nearest lower alternative, if any.
+     *
+     * @param message      Error message
+     * @param alternatives Nearest dispensable amounts below and/or above the requested amount
+     */
+    public NoteCalculationException(String message, List<DispenseAlternative> alternatives) {
+        super(message);
+        this.alternatives = List.copyOf(alternatives);
+        this.fallbackAmount = alternatives.stream()
+                .filter(a -> a.direction() == DispenseAlternative.Direction.LOWER)
+                .map(DispenseAlternative::amount)
+                .findFirst()
+                .orElse(null);
     }
 }
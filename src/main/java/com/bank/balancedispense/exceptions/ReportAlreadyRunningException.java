@@ -0,0 +1,10 @@
+package com.bank.balancedispense.exceptions;
+
+/**
+ * Thrown when a report run is requested while the previous one is still running.
+ */
+public class ReportAlreadyRunningException extends RuntimeException {
+    public ReportAlreadyRunningException(String message) {
+        super(message);
+    }
+}
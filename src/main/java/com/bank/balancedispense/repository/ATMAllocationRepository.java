@@ -1,7 +1,10 @@
 package com.bank.balancedispense.repository;
 
 import com.bank.balancedispense.entities.ATMAllocation;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -10,9 +13,19 @@ import java.util.List;
  * Repository interface for ATM note inventory operations.
  */
 @Repository
-public interface ATMAllocationRepository extends JpaRepository<ATMAllocation, Long> {
+public interface ATMAllocationRepository extends JpaRepository<ATMAllocation, Long>, ATMAllocationRepositoryCustom {
 
     // Retrieves all notes available in a specific ATM
+    @EntityGraph(ATMAllocation.REPORTING_GRAPH)
     List<ATMAllocation> findByAtm_Id(Long atmId);
 
+    /**
+     * Loads an ATM's allocations together with the ATM in a single statement. Denominations are
+     * reference data served from the second-level cache.
+     * Returns an empty list if the ATM does not exist or has no allocations.
+     */
+    @EntityGraph(ATMAllocation.WITHDRAWAL_GRAPH)
+    @Query("select a from ATMAllocation a where a.atm.id = :atmId")
+    List<ATMAllocation> findWithAtmAndDenominationByAtmId(@Param("atmId") Long atmId);
+
 }
\ No newline at end of file
@@ -0,0 +1,21 @@
+package com.bank.balancedispense.repository;
+
+import java.util.Map;
+
+/**
+ * Inventory writes that bypass entity dirty checking.
+ */
+public interface ATMAllocationRepositoryCustom {
+
+    /**
+     * Removes dispensed notes from an ATM's cassettes in one JDBC batch. Each cassette row is
+     * decremented by a single conditional UPDATE that only matches while it still holds enough
+     * notes, so concurrent withdrawals can never take the same notes twice.
+     *
+     * @param atmId                 ATM whose cassettes are updated
+     * @param notesByDenominationId Notes dispensed per denomination id
+     * @throws org.springframework.dao.OptimisticLockingFailureException if a cassette no longer
+     *         holds enough notes; the surrounding transaction must be rolled back
+     */
+    void decrementCounts(Long atmId, Map<Long, Integer> notesByDenominationId);
+}
@@ -0,0 +1,46 @@
+package com.bank.balancedispense.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * JDBC implementation of {@link ATMAllocationRepositoryCustom}.
+ * Runs on the connection of the current JPA transaction.
+ */
+@RequiredArgsConstructor
+public class ATMAllocationRepositoryCustomImpl implements ATMAllocationRepositoryCustom {
+
+    private static final String DECREMENT_SQL =
+            "UPDATE ATM_ALLOCATION SET COUNT = COUNT - ?, VERSION = VERSION + 1 "
+                    + "WHERE ATM_ID = ? AND DENOMINATION_ID = ? AND COUNT >= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void decrementCounts(Long atmId, Map<Long, Integer> notesByDenominationId) {
+        // Fixed row order keeps concurrent batches from deadlocking on each other
+        List<Object[]> batch = new ArrayList<>();
+        new TreeMap<>(notesByDenominationId).forEach((denominationId, notes) -> {
+            if (notes > 0) {
+                batch.add(new Object[]{notes, atmId, denominationId, notes});
+            }
+        });
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        int[] updated = jdbcTemplate.batchUpdate(DECREMENT_SQL, batch);
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                throw new OptimisticLockingFailureException("ATM " + atmId + " no longer holds "
+                        + batch.get(i)[0] + " notes of denomination " + batch.get(i)[2]);
+            }
+        }
+    }
+}
@@ -1,23 +1,62 @@
 package com.bank.balancedispense.repository;
 
+import com.bank.balancedispense.dto.PortfolioRow;
 import com.bank.balancedispense.entities.ClientAccount;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
-public interface ClientAccountRepository extends JpaRepository<ClientAccount, String> {
+public interface ClientAccountRepository extends JpaRepository<ClientAccount, String>, ClientAccountRepositoryCustom {
 
-    List<ClientAccount> findByClientId(Long clientId);
+    String PORTFOLIO_SELECT = "select new com.bank.balancedispense.dto.PortfolioRow(c.id, c.title, c.name, c.surname, "
+            + "acc.accountNumber, t.code, t.description, t.transactional, acc.currency.code, acc.displayBalance) "
+            + "from Client c left join ClientAccount acc on acc.client = c left join acc.accountType t ";
 
-    List<ClientAccount> findByClientIdAndAccountType_Code(Long clientId, String accountTypeCode);
+    // Currency accounts are ranked by ZAR value in memory, against the rates actually used for display
+    String PORTFOLIO_ORDER = "t.transactional desc, "
+            + "case when t.transactional = true then acc.displayBalance end desc, "
+            + "acc.accountNumber";
 
     /**
      * Finds a specific client account using the client's ID and account number.
      * Aligns with the normalized schema where client is an object in ClientAccount.
      */
+    @EntityGraph(ClientAccount.REPORTING_GRAPH)
     Optional<ClientAccount> findByClient_IdAndAccountNumber(Long clientId, String accountNumber);
-    List<ClientAccount> findByClientIdAndAccountTypeTransactional(Long clientId, boolean transactional);
+
+    /**
+     * Same lookup as {@link #findByClient_IdAndAccountNumber}, but fetches only the client in the same statement.
+     * The account type and currency are reference data served from the second-level cache.
+     */
+    @EntityGraph(ClientAccount.WITHDRAWAL_GRAPH)
+    @Query("select acc from ClientAccount acc where acc.client.id = :clientId and acc.accountNumber = :accountNumber")
+    Optional<ClientAccount> findWithDetailsByClientIdAndAccountNumber(@Param("clientId") Long clientId,
+                                                                     @Param("accountNumber") String accountNumber);
+
+    /**
+     * Client details and account columns in one statement joining CLIENT, CLIENT_ACCOUNT and ACCOUNT_TYPE.
+     * Transactional accounts come first, highest balance first; currency accounts follow by account number,
+     * for {@link com.bank.balancedispense.services.impl.ClientPortfolioLoader} to rank by ZAR value.
+     * A client without matching accounts yields no rows, or a single client-only row when {@code transactional} is null.
+     *
+     * @param transactional Only accounts of transactional (true) or currency (false) types; null for both
+     */
+    @Query(PORTFOLIO_SELECT + "where c.id = :clientId and (:transactional is null or t.transactional = :transactional) "
+            + "order by " + PORTFOLIO_ORDER)
+    List<PortfolioRow> findPortfolioRows(@Param("clientId") Long clientId, @Param("transactional") Boolean transactional);
+
+    /**
+     * Same rows as {@link #findPortfolioRows} for all accounts of several clients, in one statement with an
+     * IN list. Rows are grouped by client in ascending client ID, each group in the same order as for a single
+     * client. Clients without accounts yield a single client-only row; unknown IDs yield none.
+     */
+    @Query(PORTFOLIO_SELECT + "where c.id in :clientIds order by c.id, " + PORTFOLIO_ORDER)
+    List<PortfolioRow> findPortfolioRowsByClientIds(@Param("clientIds") Collection<Long> clientIds);
 
 
 }
@@ -0,0 +1,85 @@
+package com.bank.balancedispense.repository;
+
+import com.bank.balancedispense.dto.ClientDto;
+import com.bank.balancedispense.util.BalanceCursor;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Account writes that bypass entity dirty checking, and balance reads that bypass the persistence context.
+ */
+public interface ClientAccountRepositoryCustom {
+
+    /**
+     * Amount to take from an account, and the lowest balance the account may reach.
+     */
+    record Debit(String accountNumber, BigDecimal amount, BigDecimal limit) {}
+
+    /**
+     * Debits the account only if the resulting balance stays at or above the limit.
+     * The funds check and the write happen in one statement, without a row lock held across the request,
+     * and the statement also returns the balance it wrote.
+     *
+     * @return Balance after the debit, or empty if funds were insufficient (or the account is gone)
+     */
+    Optional<BigDecimal> debit(String accountNumber, BigDecimal amount, BigDecimal limit);
+
+    /**
+     * Applies the debits in one statement. Each account is debited under the same condition as
+     * {@link #debit}, so the limit still holds under concurrent withdrawals, and the statement returns
+     * the balances it wrote.
+     *
+     * @return Balance after the debit, by account number
+     * @throws org.springframework.dao.OptimisticLockingFailureException if an account no longer has
+     *         the funds; the surrounding transaction must be rolled back
+     */
+    Map<String, BigDecimal> debitAll(List<Debit> debits);
+
+    /**
+     * Balance columns of one account.
+     *
+     * @param balance Display balance, zero if the account has none
+     */
+    record BalanceRow(String accountNumber, String typeCode, String accountTypeDescription,
+                      String currencyCode, BigDecimal balance) {}
+
+    /**
+     * One page of balance rows with the client they belong to, read by the same statement.
+     *
+     * @param client Null if the page has no rows
+     */
+    record BalancePage(ClientDto client, List<BalanceRow> rows) {}
+
+    /**
+     * Reads one page of the client's transactional accounts (highest balance first) or currency accounts
+     * (by account number), ordered and limited in SQL, joined with the client's details.
+     * Currency accounts are not ranked by ZAR value here: that value comes from the in-memory rate snapshot,
+     * and a keyset on it would skip or repeat accounts whenever the snapshot and the table disagree.
+     *
+     * @param after Position of the last account of the previous page, or null for the first page;
+     *              only its account number is used for currency accounts
+     */
+    BalancePage findBalancePage(Long clientId, boolean transactional, BalanceCursor after, int limit);
+
+    /**
+     * Passes every account of the listing to the action as it is read from a forward-only cursor,
+     * in the same order as {@link #findBalancePage}. Rows are never collected in memory.
+     */
+    void streamBalances(Long clientId, boolean transactional, int fetchSize, Consumer<BalanceRow> action);
+
+    /**
+     * Sum of a client's balances in one account type and currency.
+     */
+    record BalanceTotal(Long clientId, String accountTypeCode, boolean transactional, String currencyCode,
+                        BigDecimal balance) {}
+
+    /**
+     * Sums the balances of the client-ID range per client, account type and currency, ordered by client ID.
+     * Clients without accounts are absent.
+     */
+    List<BalanceTotal> findBalanceTotals(long fromClientId, long toClientId);
+}
@@ -0,0 +1,144 @@
+package com.bank.balancedispense.repository;
+
+import com.bank.balancedispense.dto.ClientDto;
+import com.bank.balancedispense.util.BalanceCursor;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * JDBC implementation of {@link ClientAccountRepositoryCustom}.
+ * Runs on the connection of the current JPA transaction, or on its own connection outside of one.
+ */
+@RequiredArgsConstructor
+public class ClientAccountRepositoryCustomImpl implements ClientAccountRepositoryCustom {
+
+    private static final String DEBIT_SQL =
+            "UPDATE CLIENT_ACCOUNT SET DISPLAY_BALANCE = DISPLAY_BALANCE - ?, VERSION = VERSION + 1 "
+                    + "WHERE CLIENT_ACCOUNT_NUMBER = ? AND DISPLAY_BALANCE - ? >= ?";
+
+    // H2 data change delta table: the row as the UPDATE left it
+    private static final String DEBIT_RETURNING_SQL = "SELECT DISPLAY_BALANCE FROM FINAL TABLE (" + DEBIT_SQL + ")";
+
+    // The same conditional debit for many accounts in one statement; the debits are passed as three arrays
+    private static final String DEBIT_ALL_SQL = "SELECT CLIENT_ACCOUNT_NUMBER, DISPLAY_BALANCE FROM FINAL TABLE ("
+            + "MERGE INTO CLIENT_ACCOUNT acc USING (SELECT * FROM TABLE(ACCOUNT_NUMBER VARCHAR = ?, "
+            + "AMOUNT DECIMAL(18, 3) = ?, MIN_BALANCE DECIMAL(18, 3) = ?)) d "
+            + "ON acc.CLIENT_ACCOUNT_NUMBER = d.ACCOUNT_NUMBER AND acc.DISPLAY_BALANCE - d.AMOUNT >= d.MIN_BALANCE "
+            + "WHEN MATCHED THEN UPDATE SET DISPLAY_BALANCE = acc.DISPLAY_BALANCE - d.AMOUNT, VERSION = acc.VERSION + 1)";
+
+    // A missing balance is listed as zero, so the keyset comparison never meets a NULL
+    private static final String BALANCE = "COALESCE(acc.DISPLAY_BALANCE, 0)";
+
+    private static final String BALANCE_SQL =
+            "SELECT acc.CLIENT_ACCOUNT_NUMBER, t.ACCOUNT_TYPE_CODE, t.DESCRIPTION, acc.CURRENCY_CODE, "
+                    + BALANCE + "%3$s "
+                    + "FROM CLIENT_ACCOUNT acc "
+                    + "JOIN ACCOUNT_TYPE t ON t.ACCOUNT_TYPE_CODE = acc.ACCOUNT_TYPE_CODE %4$s"
+                    + "WHERE acc.CLIENT_ID = ? AND t.TRANSACTIONAL = ? %1$s"
+                    + "ORDER BY %2$s";
+
+    // Currency accounts are ordered independently of the rates: their ZAR value comes from the in-memory
+    // rate snapshot, which SQL cannot see, and a key that moves with the rates would skip or repeat rows
+    private static final String TRANSACTIONAL_ORDER = BALANCE + " DESC, acc.CLIENT_ACCOUNT_NUMBER";
+    private static final String CURRENCY_ORDER = "acc.CLIENT_ACCOUNT_NUMBER";
+
+    // Pages also carry the client, so a page needs no second lookup
+    private static final String CLIENT_COLUMNS = ", c.ID, c.TITLE, c.NAME, c.SURNAME";
+    private static final String CLIENT_JOIN = "JOIN CLIENT c ON c.ID = acc.CLIENT_ID ";
+
+    // Grouped like sql/aggregate_financial_position.sql, but kept per currency so each sum can be converted
+    private static final String TOTALS_SQL = "SELECT A.CLIENT_ID, A.ACCOUNT_TYPE_CODE, T.TRANSACTIONAL, A.CURRENCY_CODE, "
+            + "SUM(A.DISPLAY_BALANCE) FROM CLIENT_ACCOUNT A "
+            + "JOIN ACCOUNT_TYPE T ON A.ACCOUNT_TYPE_CODE = T.ACCOUNT_TYPE_CODE "
+            + "WHERE A.CLIENT_ID BETWEEN ? AND ? AND A.DISPLAY_BALANCE IS NOT NULL "
+            + "GROUP BY A.CLIENT_ID, A.ACCOUNT_TYPE_CODE, T.TRANSACTIONAL, A.CURRENCY_CODE ORDER BY A.CLIENT_ID";
+
+    private static final RowMapper<BalanceRow> BALANCE_ROW = (rs, rowNum) -> new BalanceRow(
+            rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getBigDecimal(5));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public Optional<BigDecimal> debit(String accountNumber, BigDecimal amount, BigDecimal limit) {
+        List<BigDecimal> balances = jdbcTemplate.queryForList(DEBIT_RETURNING_SQL, BigDecimal.class,
+                amount, accountNumber, amount, limit);
+        return balances.stream().findFirst();
+    }
+
+    @Override
+    public Map<String, BigDecimal> debitAll(List<Debit> debits) {
+        if (debits.isEmpty()) {
+            return Map.of();
+        }
+
+        // Fixed row order keeps concurrent batches from deadlocking on each other
+        List<Debit> sorted = debits.stream().sorted(Comparator.comparing(Debit::accountNumber)).toList();
+        Map<String, BigDecimal> balances = new HashMap<>();
+        jdbcTemplate.query(DEBIT_ALL_SQL, (RowCallbackHandler) rs -> balances.put(rs.getString(1), rs.getBigDecimal(2)),
+                sorted.stream().map(Debit::accountNumber).toArray(String[]::new),
+                sorted.stream().map(Debit::amount).toArray(BigDecimal[]::new),
+                sorted.stream().map(Debit::limit).toArray(BigDecimal[]::new));
+
+        for (Debit debit : sorted) {
+            if (!balances.containsKey(debit.accountNumber())) {
+                throw new OptimisticLockingFailureException("Account " + debit.accountNumber()
+                        + " no longer has funds for a debit of " + debit.amount());
+            }
+        }
+        return balances;
+    }
+
+    @Override
+    public BalancePage findBalancePage(Long clientId, boolean transactional, BalanceCursor after, int limit) {
+        String keyset = "";
+        List<Object> args = new ArrayList<>(List.of(clientId, transactional));
+        if (after != null && transactional) {
+            // Rows strictly after the cursor in (balance descending, account number) order
+            keyset = String.format("AND (%1$s < ? OR (%1$s = ? AND acc.CLIENT_ACCOUNT_NUMBER > ?)) ", BALANCE);
+            args.addAll(List.of(after.sortKey(), after.sortKey(), after.accountNumber()));
+        } else if (after != null) {
+            keyset = "AND acc.CLIENT_ACCOUNT_NUMBER > ? ";
+            args.add(after.accountNumber());
+        }
+        args.add(limit);
+        String sql = String.format(BALANCE_SQL, keyset, order(transactional), CLIENT_COLUMNS, CLIENT_JOIN) + " LIMIT ?";
+
+        ClientDto[] client = new ClientDto[1];
+        List<BalanceRow> rows = jdbcTemplate.query(sql, (rs, rowNum) -> {
+            if (client[0] == null) {
+                client[0] = new ClientDto(rs.getLong("ID"), rs.getString("TITLE"), rs.getString("NAME"), rs.getString("SURNAME"));
+            }
+            return BALANCE_ROW.mapRow(rs, rowNum);
+        }, args.toArray());
+        return new BalancePage(client[0], rows);
+    }
+
+    @Override
+    public void streamBalances(Long clientId, boolean transactional, int fetchSize, Consumer<BalanceRow> action) {
+        String sql = String.format(BALANCE_SQL, "", order(transactional), "", "");
+        JdbcStreaming.stream(jdbcTemplate, sql, fetchSize, BALANCE_ROW, action, clientId, transactional);
+    }
+
+    @Override
+    public List<BalanceTotal> findBalanceTotals(long fromClientId, long toClientId) {
+        return jdbcTemplate.query(TOTALS_SQL, (rs, rowNum) -> new BalanceTotal(
+                rs.getLong(1), rs.getString(2), rs.getBoolean(3), rs.getString(4), rs.getBigDecimal(5)),
+                fromClientId, toClientId);
+    }
+
+    private static String order(boolean transactional) {
+        return transactional ? TRANSACTIONAL_ORDER : CURRENCY_ORDER;
+    }
+}
@@ -0,0 +1,10 @@
+package com.bank.balancedispense.repository;
+
+import com.bank.balancedispense.entities.ClientPosition;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+/**
+ * Repository for the CLIENT_POSITION summary.
+ */
+public interface ClientPositionRepository extends JpaRepository<ClientPosition, Long>, ClientPositionRepositoryCustom {
+}
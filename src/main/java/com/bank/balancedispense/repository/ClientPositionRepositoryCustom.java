@@ -0,0 +1,120 @@
+package com.bank.balancedispense.repository;
+
+import com.bank.balancedispense.dto.ClientDto;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * JDBC access to CLIENT_POSITION: delta writes, single-row reads, the top-balance listing and the
+ * range queries of the rebuild job.
+ */
+public interface ClientPositionRepositoryCustom {
+
+    /**
+     * A client's position totals, with their highest-balance transactional account
+     * (both null if the client has no transactional account).
+     */
+    record Position(Long clientId, BigDecimal loanBalance, BigDecimal transactionalBalance, BigDecimal netPosition,
+                    String topAccountNumber, BigDecimal topTransactionalBalance) {}
+
+    /**
+     * A change to a client's totals. If a transactional balance changed, the top account is recomputed.
+     */
+    record Delta(Long clientId, BigDecimal loanBalance, BigDecimal transactionalBalance, BigDecimal netPosition,
+                 boolean transactionalChanged) {}
+
+    /**
+     * A client's highest-balance transactional account, as listed by the top-balance endpoint.
+     */
+    record TopBalance(Long clientId, String surname, String accountNumber, BigDecimal balance) {}
+
+    /**
+     * Client details with the stored position, if any.
+     */
+    record StoredPosition(ClientDto client, Position position) {}
+
+    /**
+     * One line of the financial-position report, with the client's display name as built by
+     * sql/aggregate_financial_position.sql.
+     */
+    record PositionReportRow(Long clientId, String client, BigDecimal loanBalance, BigDecimal transactionalBalance,
+                             BigDecimal netPosition) {}
+
+    /**
+     * Adds the deltas to the stored positions in one JDBC batch. Clients whose transactional balance
+     * changed get their top account recomputed from their own accounts in the same statement. Clients
+     * without a stored row are left alone; their position is computed from the accounts until the next
+     * rebuild stores it.
+     */
+    void applyDeltas(List<Delta> deltas);
+
+    /**
+     * Returns the top transactional accounts of the clients after {@code afterClientId}, in client-ID order.
+     * Clients without a transactional account, or without a stored position, are not listed.
+     *
+     * @param afterClientId Last client ID of the previous page, or null for the first page
+     */
+    List<TopBalance> findTopBalances(Long afterClientId, int limit);
+
+    /**
+     * Looks up the client and their stored position by primary key.
+     *
+     * @return Empty if the client does not exist; a null position if it has not been stored yet
+     */
+    Optional<StoredPosition> findStoredPosition(Long clientId);
+
+    /**
+     * Lowest and highest client ID found in CLIENT_ACCOUNT or CLIENT_POSITION, or empty if both are empty.
+     */
+    Optional<long[]> clientIdRange();
+
+    /**
+     * Stores zero positions for the clients of the range that have accounts but no stored row yet,
+     * so later deltas have a row to land on.
+     *
+     * @return IDs of the clients whose row was inserted
+     */
+    List<Long> insertMissingPositions(long fromClientId, long toClientId);
+
+    /**
+     * Locks and returns the stored positions of the client-ID range, so balance changes of those clients
+     * wait until the calling transaction ends.
+     */
+    List<Position> lockPositions(long fromClientId, long toClientId);
+
+    /**
+     * Locks the accounts of the clients, waiting for transactions that still hold one of them.
+     */
+    void lockAccounts(List<Long> clientIds);
+
+    /**
+     * Computes the positions of the client-ID range from CLIENT_ACCOUNT, as the aggregate report does.
+     * Clients without accounts are absent.
+     */
+    List<Position> aggregatePositions(long fromClientId, long toClientId);
+
+    /**
+     * Inserts or replaces the positions in one JDBC batch.
+     */
+    void savePositions(List<Position> positions);
+
+    /**
+     * Deletes the stored positions of clients that no longer have accounts.
+     */
+    void deletePositions(List<Long> clientIds);
+
+    /**
+     * Passes every stored position to the action in client-ID order, one row at a time, through a
+     * forward-only cursor. Rows are not collected; the action must not hold on to them.
+     */
+    void streamPositionReport(int fetchSize, Consumer<PositionReportRow> action);
+
+    /**
+     * Passes every client's top transactional account to the action in client-ID order, like
+     * {@link #streamPositionReport}. Clients without a transactional account are skipped.
+     */
+    void streamTopBalances(int fetchSize, Consumer<TopBalance> action);
+}
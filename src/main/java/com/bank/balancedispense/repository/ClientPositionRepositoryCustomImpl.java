@@ -0,0 +1,205 @@
+package com.bank.balancedispense.repository;
+
+import com.bank.balancedispense.common.Constants;
+import com.bank.balancedispense.dto.ClientDto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * JDBC implementation of {@link ClientPositionRepositoryCustom}.
+ * Runs on the connection of the current JPA transaction, or on its own connection outside of one.
+ */
+@RequiredArgsConstructor
+public class ClientPositionRepositoryCustomImpl implements ClientPositionRepositoryCustom {
+
+    private static final String LOAN_TYPES = Constants.LOAN_ACCOUNT_TYPES.stream()
+            .map(code -> "'" + code + "'")
+            .collect(Collectors.joining(", "));
+
+    private static final String DELTA_SQL = "UPDATE CLIENT_POSITION SET LOAN_BALANCE = LOAN_BALANCE + ?, "
+            + "TRANSACTIONAL_BALANCE = TRANSACTIONAL_BALANCE + ?, NET_POSITION = NET_POSITION + ? WHERE CLIENT_ID = ?";
+
+    // Runs on the writer's connection, so it sees the debit it accompanies
+    private static final String DELTA_WITH_TOP_SQL = "UPDATE CLIENT_POSITION p SET LOAN_BALANCE = LOAN_BALANCE + ?, "
+            + "TRANSACTIONAL_BALANCE = TRANSACTIONAL_BALANCE + ?, NET_POSITION = NET_POSITION + ?, "
+            + "(TOP_ACCOUNT_NUMBER, TOP_TRANSACTIONAL_BALANCE) = ("
+            + "SELECT A.CLIENT_ACCOUNT_NUMBER, A.DISPLAY_BALANCE FROM CLIENT_ACCOUNT A "
+            + "JOIN ACCOUNT_TYPE T ON A.ACCOUNT_TYPE_CODE = T.ACCOUNT_TYPE_CODE "
+            + "WHERE A.CLIENT_ID = p.CLIENT_ID AND T.TRANSACTIONAL = TRUE "
+            + "ORDER BY A.DISPLAY_BALANCE DESC NULLS LAST, A.CLIENT_ACCOUNT_NUMBER FETCH FIRST 1 ROW ONLY) "
+            + "WHERE CLIENT_ID = ?";
+
+    private static final String TOP_PAGE_SQL = "SELECT p.CLIENT_ID, c.SURNAME, p.TOP_ACCOUNT_NUMBER, p.TOP_TRANSACTIONAL_BALANCE "
+            + "FROM CLIENT_POSITION p JOIN CLIENT c ON c.ID = p.CLIENT_ID "
+            + "WHERE p.CLIENT_ID > ? AND p.TOP_ACCOUNT_NUMBER IS NOT NULL ORDER BY p.CLIENT_ID FETCH FIRST ? ROWS ONLY";
+
+    private static final String FIND_SQL = "SELECT c.ID, c.TITLE, c.NAME, c.SURNAME, p.CLIENT_ID AS POSITION_ID, "
+            + "p.LOAN_BALANCE, p.TRANSACTIONAL_BALANCE, p.NET_POSITION, p.TOP_ACCOUNT_NUMBER, p.TOP_TRANSACTIONAL_BALANCE "
+            + "FROM CLIENT c LEFT JOIN CLIENT_POSITION p ON p.CLIENT_ID = c.ID WHERE c.ID = ?";
+
+    // Each bound is an index lookup
+    private static final String RANGE_SQL = "SELECT MIN(ID), MAX(ID) FROM ("
+            + "SELECT MIN(CLIENT_ID) AS ID FROM CLIENT_ACCOUNT UNION ALL SELECT MAX(CLIENT_ID) FROM CLIENT_ACCOUNT "
+            + "UNION ALL SELECT MIN(CLIENT_ID) FROM CLIENT_POSITION UNION ALL SELECT MAX(CLIENT_ID) FROM CLIENT_POSITION) ids";
+
+    private static final String MISSING_SQL = "SELECT DISTINCT A.CLIENT_ID FROM CLIENT_ACCOUNT A "
+            + "WHERE A.CLIENT_ID BETWEEN ? AND ? "
+            + "AND NOT EXISTS (SELECT 1 FROM CLIENT_POSITION p WHERE p.CLIENT_ID = A.CLIENT_ID) ORDER BY A.CLIENT_ID";
+
+    private static final String INSERT_ZERO_SQL = "INSERT INTO CLIENT_POSITION (CLIENT_ID, LOAN_BALANCE, "
+            + "TRANSACTIONAL_BALANCE, NET_POSITION) VALUES (?, 0, 0, 0)";
+
+    private static final String LOCK_ACCOUNTS_SQL = "SELECT CLIENT_ACCOUNT_NUMBER FROM CLIENT_ACCOUNT "
+            + "WHERE CLIENT_ID = ANY(?) ORDER BY CLIENT_ACCOUNT_NUMBER FOR UPDATE";
+
+    private static final String LOCK_SQL = "SELECT CLIENT_ID, LOAN_BALANCE, TRANSACTIONAL_BALANCE, NET_POSITION, "
+            + "TOP_ACCOUNT_NUMBER, TOP_TRANSACTIONAL_BALANCE "
+            + "FROM CLIENT_POSITION WHERE CLIENT_ID BETWEEN ? AND ? ORDER BY CLIENT_ID FOR UPDATE";
+
+    // Same totals as sql/aggregate_financial_position.sql, and the top account as ranked by
+    // sql/highest_transactional_balance_window.sql, restricted to a client-ID range
+    private static final String AGGREGATE_SQL = "SELECT A.CLIENT_ID, "
+            + "COALESCE(SUM(CASE WHEN A.ACCOUNT_TYPE_CODE IN (" + LOAN_TYPES + ") THEN A.DISPLAY_BALANCE ELSE 0 END), 0), "
+            + "COALESCE(SUM(CASE WHEN A.TRANSACTIONAL = TRUE THEN A.DISPLAY_BALANCE ELSE 0 END), 0), "
+            + "COALESCE(SUM(CASE WHEN A.ACCOUNT_TYPE_CODE IN (" + LOAN_TYPES + ") OR A.TRANSACTIONAL = TRUE "
+            + "THEN A.DISPLAY_BALANCE ELSE 0 END), 0), "
+            + "MAX(CASE WHEN A.TOP_RANK = 1 THEN A.CLIENT_ACCOUNT_NUMBER END), "
+            + "MAX(CASE WHEN A.TOP_RANK = 1 THEN A.DISPLAY_BALANCE END) "
+            + "FROM (SELECT A.CLIENT_ID, A.CLIENT_ACCOUNT_NUMBER, A.ACCOUNT_TYPE_CODE, A.DISPLAY_BALANCE, T.TRANSACTIONAL, "
+            + "CASE WHEN T.TRANSACTIONAL = TRUE THEN ROW_NUMBER() OVER (PARTITION BY A.CLIENT_ID, T.TRANSACTIONAL "
+            + "ORDER BY A.DISPLAY_BALANCE DESC NULLS LAST, A.CLIENT_ACCOUNT_NUMBER) END AS TOP_RANK "
+            + "FROM CLIENT_ACCOUNT A JOIN ACCOUNT_TYPE T ON A.ACCOUNT_TYPE_CODE = T.ACCOUNT_TYPE_CODE "
+            + "WHERE A.CLIENT_ID BETWEEN ? AND ?) A "
+            + "GROUP BY A.CLIENT_ID ORDER BY A.CLIENT_ID";
+
+    private static final String SAVE_SQL = "MERGE INTO CLIENT_POSITION (CLIENT_ID, LOAN_BALANCE, TRANSACTIONAL_BALANCE, "
+            + "NET_POSITION, TOP_ACCOUNT_NUMBER, TOP_TRANSACTIONAL_BALANCE) KEY (CLIENT_ID) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String DELETE_SQL = "DELETE FROM CLIENT_POSITION WHERE CLIENT_ID = ?";
+
+    // Both reports scan CLIENT_POSITION in primary-key order, so no sort has to buffer the result
+    private static final String POSITION_REPORT_SQL = "SELECT p.CLIENT_ID, CONCAT(c.TITLE, ' ', c.NAME, ' ', c.SURNAME), "
+            + "p.LOAN_BALANCE, p.TRANSACTIONAL_BALANCE, p.NET_POSITION "
+            + "FROM CLIENT_POSITION p JOIN CLIENT c ON c.ID = p.CLIENT_ID ORDER BY p.CLIENT_ID";
+
+    private static final String TOP_REPORT_SQL = "SELECT p.CLIENT_ID, c.SURNAME, p.TOP_ACCOUNT_NUMBER, p.TOP_TRANSACTIONAL_BALANCE "
+            + "FROM CLIENT_POSITION p JOIN CLIENT c ON c.ID = p.CLIENT_ID "
+            + "WHERE p.TOP_ACCOUNT_NUMBER IS NOT NULL ORDER BY p.CLIENT_ID";
+
+    private static final RowMapper<Position> POSITION = (rs, rowNum) -> new Position(
+            rs.getLong(1), rs.getBigDecimal(2), rs.getBigDecimal(3), rs.getBigDecimal(4), rs.getString(5), rs.getBigDecimal(6));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void applyDeltas(List<Delta> deltas) {
+        // Fixed row order keeps concurrent writers from deadlocking on each other
+        List<Delta> sorted = deltas.stream().sorted(Comparator.comparing(Delta::clientId)).toList();
+        List<Object[]> totals = new ArrayList<>();
+        List<Object[]> withTop = new ArrayList<>();
+        for (Delta d : sorted) {
+            Object[] args = {d.loanBalance(), d.transactionalBalance(), d.netPosition(), d.clientId()};
+            (d.transactionalChanged() ? withTop : totals).add(args);
+        }
+        if (!totals.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELTA_SQL, totals);
+        }
+        if (!withTop.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELTA_WITH_TOP_SQL, withTop);
+        }
+    }
+
+    @Override
+    public List<TopBalance> findTopBalances(Long afterClientId, int limit) {
+        return jdbcTemplate.query(TOP_PAGE_SQL, (rs, rowNum) -> new TopBalance(
+                        rs.getLong(1), rs.getString(2), rs.getString(3), rs.getBigDecimal(4)),
+                afterClientId == null ? Long.MIN_VALUE : afterClientId, limit);
+    }
+
+    @Override
+    public Optional<StoredPosition> findStoredPosition(Long clientId) {
+        return jdbcTemplate.query(FIND_SQL, (rs, rowNum) -> {
+            ClientDto client = new ClientDto(rs.getLong("ID"), rs.getString("TITLE"), rs.getString("NAME"), rs.getString("SURNAME"));
+            rs.getLong("POSITION_ID");
+            Position position = rs.wasNull() ? null : new Position(client.id(), rs.getBigDecimal("LOAN_BALANCE"),
+                    rs.getBigDecimal("TRANSACTIONAL_BALANCE"), rs.getBigDecimal("NET_POSITION"),
+                    rs.getString("TOP_ACCOUNT_NUMBER"), rs.getBigDecimal("TOP_TRANSACTIONAL_BALANCE"));
+            return new StoredPosition(client, position);
+        }, clientId).stream().findFirst();
+    }
+
+    @Override
+    public Optional<long[]> clientIdRange() {
+        return jdbcTemplate.queryForObject(RANGE_SQL, (rs, rowNum) -> {
+            long min = rs.getLong(1);
+            return rs.wasNull() ? Optional.empty() : Optional.of(new long[]{min, rs.getLong(2)});
+        });
+    }
+
+    @Override
+    public List<Long> insertMissingPositions(long fromClientId, long toClientId) {
+        List<Long> clientIds = jdbcTemplate.queryForList(MISSING_SQL, Long.class, fromClientId, toClientId);
+        if (!clientIds.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_ZERO_SQL, clientIds.stream().map(id -> new Object[]{id}).toList());
+        }
+        return clientIds;
+    }
+
+    @Override
+    public List<Position> lockPositions(long fromClientId, long toClientId) {
+        return jdbcTemplate.query(LOCK_SQL, POSITION, fromClientId, toClientId);
+    }
+
+    @Override
+    public void lockAccounts(List<Long> clientIds) {
+        if (clientIds.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.queryForList(LOCK_ACCOUNTS_SQL, String.class, (Object) clientIds.toArray(Long[]::new));
+    }
+
+    @Override
+    public List<Position> aggregatePositions(long fromClientId, long toClientId) {
+        return jdbcTemplate.query(AGGREGATE_SQL, POSITION, fromClientId, toClientId);
+    }
+
+    @Override
+    public void savePositions(List<Position> positions) {
+        if (positions.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(SAVE_SQL, positions.stream()
+                .map(p -> new Object[]{p.clientId(), p.loanBalance(), p.transactionalBalance(), p.netPosition(),
+                        p.topAccountNumber(), p.topTransactionalBalance()})
+                .toList());
+    }
+
+    @Override
+    public void deletePositions(List<Long> clientIds) {
+        if (clientIds.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(DELETE_SQL, clientIds.stream().map(id -> new Object[]{id}).toList());
+    }
+
+    @Override
+    public void streamPositionReport(int fetchSize, Consumer<PositionReportRow> action) {
+        JdbcStreaming.stream(jdbcTemplate, POSITION_REPORT_SQL, fetchSize, (rs, rowNum) -> new PositionReportRow(
+                rs.getLong(1), rs.getString(2), rs.getBigDecimal(3), rs.getBigDecimal(4), rs.getBigDecimal(5)), action);
+    }
+
+    @Override
+    public void streamTopBalances(int fetchSize, Consumer<TopBalance> action) {
+        JdbcStreaming.stream(jdbcTemplate, TOP_REPORT_SQL, fetchSize, (rs, rowNum) -> new TopBalance(
+                rs.getLong(1), rs.getString(2), rs.getString(3), rs.getBigDecimal(4)), action);
+    }
+}
@@ -0,0 +1,9 @@
+package com.bank.balancedispense.repository;
+
+import com.bank.balancedispense.entities.CurrencyConversionRateHistory;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface CurrencyConversionRateHistoryRepository extends JpaRepository<CurrencyConversionRateHistory, Long> {
+
+    boolean existsByCurrencyCode(String currencyCode);
+}
@@ -0,0 +1,10 @@
+package com.bank.balancedispense.repository;
+
+import com.bank.balancedispense.entities.InventoryCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+/**
+ * Repository for the in-memory inventory's persistence checkpoint.
+ */
+public interface InventoryCheckpointRepository extends JpaRepository<InventoryCheckpoint, Long> {
+}
@@ -0,0 +1,54 @@
+package com.bank.balancedispense.repository;
+
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.Consumer;
+
+/**
+ * Forward-only cursor reads shared by the JDBC repository implementations.
+ */
+final class JdbcStreaming {
+
+    private JdbcStreaming() {
+    }
+
+    /**
+     * Runs the query with lazy execution switched on for the connection and passes each row to the action
+     * as it is read. Embedded H2 otherwise builds the whole result in memory before returning the first row,
+     * whatever the fetch size.
+     */
+    static <T> void stream(JdbcTemplate jdbcTemplate, String sql, int fetchSize, RowMapper<T> mapper,
+                           Consumer<T> action, Object... args) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            setLazyExecution(con, true);
+            try (PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                ps.setFetchSize(fetchSize);
+                new ArgumentPreparedStatementSetter(args).setValues(ps);
+                try (ResultSet rs = ps.executeQuery()) {
+                    int rowNum = 0;
+                    while (rs.next()) {
+                        action.accept(mapper.mapRow(rs, rowNum++));
+                    }
+                }
+            } finally {
+                // The connection goes back to the pool
+                setLazyExecution(con, false);
+            }
+            return null;
+        });
+    }
+
+    private static void setLazyExecution(Connection con, boolean lazy) throws SQLException {
+        try (Statement statement = con.createStatement()) {
+            statement.execute("SET LAZY_QUERY_EXECUTION " + lazy);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.bank.balancedispense.repository;
+
+import com.bank.balancedispense.entities.WithdrawalIdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+
+/**
+ * Repository for durable idempotency records of completed withdrawals.
+ */
+public interface WithdrawalIdempotencyRecordRepository extends JpaRepository<WithdrawalIdempotencyRecord, String> {
+
+    /**
+     * Deletes records created before the cutoff.
+     *
+     * @return Number of deleted records
+     */
+    @Modifying
+    @Query("delete from WithdrawalIdempotencyRecord r where r.createdAt < :cutoff")
+    int deleteCreatedBefore(@Param("cutoff") Instant cutoff);
+
+    /**
+     * Deletes the record for the key if it was created before the cutoff.
+     *
+     * @return Number of deleted records
+     */
+    @Modifying
+    @Query("delete from WithdrawalIdempotencyRecord r where r.idempotencyKey = :key and r.createdAt < :cutoff")
+    int deleteExpired(@Param("key") String idempotencyKey, @Param("cutoff") Instant cutoff);
+}
@@ -0,0 +1,40 @@
+package com.bank.balancedispense.services;
+
+import com.bank.balancedispense.entities.ATMAllocation;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Owns the cassette counts of the ATMs during a withdrawal.
+ * The implementation is selected with the {@code atm.inventory.mode} property.
+ */
+public interface AtmInventoryService {
+
+    /**
+     * Returns the ATM's allocations with their ATM and denominations, reflecting committed withdrawals only.
+     * Returns an empty list if the ATM does not exist or has no allocations.
+     */
+    List<ATMAllocation> loadAllocations(Long atmId);
+
+    /**
+     * Picks the notes for the amount and removes them from the ATM as one step, as part of the
+     * current transaction. If the transaction rolls back, the notes are not removed.
+     *
+     * @param allocations Allocations returned by {@link #loadAllocations} in this transaction
+     * @return Note count per denomination value
+     * @throws com.bank.balancedispense.exceptions.NoteCalculationException if the amount cannot be paid out
+     * @throws org.springframework.dao.OptimisticLockingFailureException if a concurrent withdrawal took the notes
+     */
+    Map<Integer, Integer> dispense(Long atmId, double amount, List<ATMAllocation> allocations);
+
+    /**
+     * Removes notes the caller has already picked from the allocations, as part of the current
+     * transaction. If the transaction rolls back, the notes are not removed.
+     *
+     * @param dispensed   Note count per denomination value
+     * @param allocations Allocations returned by {@link #loadAllocations} in this transaction
+     * @throws org.springframework.dao.OptimisticLockingFailureException if the ATM no longer holds the notes
+     */
+    void remove(Long atmId, Map<Integer, Integer> dispensed, List<ATMAllocation> allocations);
+}
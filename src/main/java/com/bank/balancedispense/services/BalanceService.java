@@ -1,8 +1,12 @@
 package com.bank.balancedispense.services;
 
+import com.bank.balancedispense.dto.BulkBalanceResponse;
 import com.bank.balancedispense.dto.TransactionalBalanceResponseWrapper;
 import com.bank.balancedispense.dto.CurrencyBalanceResponseWrapper;
+import com.bank.balancedispense.dto.PortfolioResponseWrapper;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 /**
@@ -19,4 +23,37 @@ public interface BalanceService {
      * Returns currency balances wrapped with client and result metadata.
      */
     CurrencyBalanceResponseWrapper getCurrencyBalances(Long clientId);
+
+    /**
+     * Returns one page of transactional balances, in the same order as the full listing.
+     *
+     * @param cursor {@code nextCursor} of the previous page, or null for the first page
+     * @param limit  Maximum number of accounts on the page
+     */
+    TransactionalBalanceResponseWrapper getTransactionalBalances(Long clientId, String cursor, int limit);
+
+    /**
+     * Returns one page of currency balances, ordered by account number.
+     *
+     * @param cursor {@code nextCursor} of the previous page, or null for the first page
+     * @param limit  Maximum number of accounts on the page
+     */
+    CurrencyBalanceResponseWrapper getCurrencyBalances(Long clientId, String cursor, int limit);
+
+    /**
+     * Writes the client's transactional or currency accounts as newline-delimited JSON, one account
+     * per line, while they are read from the database.
+     */
+    void streamBalances(Long clientId, boolean transactional, OutputStream out) throws IOException;
+
+    /**
+     * Returns the client with both transactional and currency balances, loaded with a single query.
+     */
+    PortfolioResponseWrapper getPortfolio(Long clientId);
+
+    /**
+     * Returns the accounts of several clients, loaded with a single query and converted with one rate snapshot.
+     * Unknown clients and clients without accounts get a failed entry instead of an exception.
+     */
+    BulkBalanceResponse getBulkBalances(List<Long> clientIds);
 }
@@ -0,0 +1,13 @@
+package com.bank.balancedispense.services;
+
+import com.bank.balancedispense.dto.BatchWithdrawResponse;
+import com.bank.balancedispense.dto.WithdrawRequest;
+
+import java.util.List;
+
+/**
+ * Service interface for replaying many ATM withdrawals in one call.
+ */
+public interface BatchWithdrawService {
+    BatchWithdrawResponse withdrawAll(List<WithdrawRequest> requests);
+}
@@ -0,0 +1,46 @@
+package com.bank.balancedispense.services;
+
+import com.bank.balancedispense.dto.ClientPositionResponse;
+import com.bank.balancedispense.dto.PositionRebuildReport;
+import com.bank.balancedispense.dto.TopBalancePageResponse;
+import com.bank.balancedispense.entities.AccountType;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Service interface for the per-client financial position summary (CLIENT_POSITION).
+ */
+public interface ClientPositionService {
+
+    /**
+     * A change to one account's balance; negative for a debit.
+     */
+    record BalanceChange(Long clientId, AccountType accountType, BigDecimal amount) {}
+
+    /**
+     * Applies balance changes to the stored positions. Must be called in the transaction that changes
+     * the balances, so the summary commits or rolls back with them. Every writer of CLIENT_ACCOUNT
+     * balances has to call this.
+     */
+    void applyBalanceChanges(List<BalanceChange> changes);
+
+    /**
+     * Returns the client's position with a primary-key read of the summary.
+     */
+    ClientPositionResponse getPosition(Long clientId);
+
+    /**
+     * Returns one page of clients with their highest-balance transactional account, in client-ID order.
+     *
+     * @param afterClientId {@code nextAfterClientId} of the previous page, or null for the first page
+     * @param limit         Maximum number of clients on the page
+     */
+    TopBalancePageResponse getTopTransactionalBalances(Long afterClientId, int limit);
+
+    /**
+     * Recomputes every position from CLIENT_ACCOUNT in parallel client-ID ranges, and stores and
+     * reports those that were missing or wrong.
+     */
+    PositionRebuildReport rebuildAll();
+}
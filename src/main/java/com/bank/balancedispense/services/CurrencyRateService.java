@@ -0,0 +1,15 @@
+package com.bank.balancedispense.services;
+
+import com.bank.balancedispense.dto.CurrencyRateDto;
+import com.bank.balancedispense.dto.CurrencyRateUpdateRequest;
+
+/**
+ * Service interface for maintaining currency conversion rates.
+ */
+public interface CurrencyRateService {
+
+    /**
+     * Creates or replaces the conversion rate of an existing currency.
+     */
+    CurrencyRateDto updateRate(String currencyCode, CurrencyRateUpdateRequest request);
+}
@@ -0,0 +1,31 @@
+package com.bank.balancedispense.services;
+
+import com.bank.balancedispense.dto.MonthEndReportStatus;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Service interface for the month-end report: every client's balances per account category, converted to ZAR.
+ */
+public interface MonthEndReportService {
+
+    /**
+     * Starts a report run in the background and returns its initial status.
+     * Balances are read as they are now; conversion uses the rates in force at {@code asOf}.
+     *
+     * @throws com.bank.balancedispense.exceptions.ReportAlreadyRunningException if a run is in progress
+     */
+    MonthEndReportStatus start(Instant asOf);
+
+    /**
+     * Returns the status of the running or most recent run, or empty if none was started.
+     */
+    Optional<MonthEndReportStatus> status();
+
+    /**
+     * Returns the CSV file of the most recent completed run, or empty if none has completed.
+     */
+    Optional<Path> latestReport();
+}
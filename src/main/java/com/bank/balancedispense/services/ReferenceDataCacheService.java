@@ -0,0 +1,13 @@
+package com.bank.balancedispense.services;
+
+/**
+ * Service interface for the cached reference data (currencies, account types, denominations and rates).
+ */
+public interface ReferenceDataCacheService {
+
+    /**
+     * Drops all cached reference data, e.g. after the tables were changed directly in the database.
+     * The next reads load it again.
+     */
+    void evictAll();
+}
@@ -0,0 +1,33 @@
+package com.bank.balancedispense.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Service interface for exporting the SQL reports over HTTP.
+ */
+public interface ReportExportService {
+
+    /**
+     * The exportable reports, both read from the CLIENT_POSITION summary.
+     */
+    enum Report {
+        /** Loan, transactional and net balance per client, as in sql/aggregate_financial_position.sql. */
+        FINANCIAL_POSITION,
+        /** Each client's highest-balance transactional account, as in sql/highest_transactional_balance.sql. */
+        TOP_TRANSACTIONAL_BALANCES
+    }
+
+    enum Format {
+        /** Header line, then one RFC 4180 line per row. */
+        CSV,
+        /** One JSON object per line. */
+        NDJSON
+    }
+
+    /**
+     * Writes the report to the stream while it is read from the database, in client-ID order.
+     * The stream is flushed but not closed.
+     */
+    void export(Report report, Format format, OutputStream out) throws IOException;
+}
@@ -8,4 +8,9 @@ import com.bank.balancedispense.dto.WithdrawResponseWrapper;
  */
 public interface WithdrawService {
     WithdrawResponseWrapper withdraw(WithdrawRequest request);
+
+    /**
+     * Executes the withdrawal and stores its response under the idempotency key in the same transaction.
+     */
+    WithdrawResponseWrapper withdraw(WithdrawRequest request, String idempotencyKey);
 }
@@ -1,77 +1,72 @@
 package com.bank.balancedispense.services.impl;
 
-import com.bank.balancedispense.common.Constants;
 import com.bank.balancedispense.dto.*;
-import com.bank.balancedispense.entities.Client;
-import com.bank.balancedispense.entities.ClientAccount;
 import com.bank.balancedispense.exceptions.NoAccountsFoundException;
 import com.bank.balancedispense.repository.ClientAccountRepository;
+import com.bank.balancedispense.repository.ClientAccountRepositoryCustom.BalancePage;
+import com.bank.balancedispense.repository.ClientAccountRepositoryCustom.BalanceRow;
 import com.bank.balancedispense.repository.ClientRepository;
 import com.bank.balancedispense.services.BalanceService;
-import com.bank.balancedispense.util.CurrencyConversionUtil;
-import lombok.RequiredArgsConstructor;
+import com.bank.balancedispense.services.impl.ClientPortfolioLoader.ClientPortfolio;
+import com.bank.balancedispense.util.BalanceCursor;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
-import java.util.Comparator;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.time.Instant;
+import java.util.*;
 
 /**
  * Service implementation for retrieving client account balances.
- * Uses the normalized schema with ClientAccount, AccountType, and Currency mappings.
+ * Full listings are served by one {@link ClientPortfolioLoader} query in a read-only transaction.
+ * Paginated listings use keyset queries, and streamed listings read from a forward-only JDBC cursor;
+ * both return currency accounts by account number, as ranking them by ZAR value needs the in-memory rate snapshot.
+ * None of them load ClientAccount entities.
  */
 @Slf4j
-@RequiredArgsConstructor
 @Service
 public class BalanceServiceImpl implements BalanceService {
 
+    private static final byte[] NEWLINE = {'\n'};
+
+    private final ClientPortfolioLoader portfolioLoader;
     private final ClientAccountRepository accountRepo;
     private final ClientRepository clientRepo;
-    private final CurrencyConversionUtil currencyUtil;
+    private final ObjectMapper objectMapper;
+    private final int streamFetchSize;
+
+    public BalanceServiceImpl(ClientPortfolioLoader portfolioLoader,
+                              ClientAccountRepository accountRepo,
+                              ClientRepository clientRepo,
+                              ObjectMapper objectMapper,
+                              @Value("${atm.balance.stream.fetch-size:500}") int streamFetchSize) {
+        this.portfolioLoader = portfolioLoader;
+        this.accountRepo = accountRepo;
+        this.clientRepo = clientRepo;
+        this.objectMapper = objectMapper;
+        this.streamFetchSize = streamFetchSize;
+    }
 
     /**
      * Retrieves all transactional accounts for the given client.
      * Sorted descending by balance.
      */
     @Override
+    @Transactional(readOnly = true)
     public TransactionalBalanceResponseWrapper getTransactionalBalances(Long clientId) {
         log.info("Fetching transactional balances for clientId={}", clientId);
 
-        // Filter by account types that are marked transactional = true
-        List<ClientAccount> accounts = accountRepo.findByClientIdAndAccountTypeTransactional(clientId, true);
-        if (accounts.isEmpty()) {
-            throw new NoAccountsFoundException("No transactional accounts to display");
-        }
-
-        Client client = clientRepo.findById(clientId)
-                .orElseThrow(() -> new NoAccountsFoundException("Client not found"));
-
-        ClientDto clientDto = new ClientDto(client.getId(), client.getTitle(), client.getName(), client.getSurname());
-
-        List<TransactionalAccountDto> accountDtos = accounts.stream()
-                .sorted(Comparator.comparing(ClientAccount::getDisplayBalance).reversed())
-                .map(acc -> {
-                    BigDecimal rate = currencyUtil.getConversionRate(acc.getCurrency().getCode());
-                    BigDecimal balance = acc.getDisplayBalance();
-                    BigDecimal zarBalance = balance.multiply(rate);
-
-                    return new TransactionalAccountDto(
-                            acc.getAccountNumber(),
-                            acc.getAccountType().getCode(),
-                            acc.getAccountType().getDescription(),
-                            acc.getCurrency().getCode(),
-                            rate,
-                            balance,
-                            zarBalance,
-                            BigDecimal.ZERO
-                    );
-                })
-                .collect(Collectors.toList());
+        ClientPortfolio portfolio = portfolioLoader.load(clientId, true)
+                .orElseThrow(() -> new NoAccountsFoundException("No transactional accounts to display"));
 
         ResultDto result = new ResultDto(true, 200, "Transactional balances retrieved successfully");
-        return new TransactionalBalanceResponseWrapper(clientDto, accountDtos, result);
+        return new TransactionalBalanceResponseWrapper(portfolio.client(), portfolio.transactionalAccounts(), result);
     }
 
     /**
@@ -79,45 +74,160 @@ public class BalanceServiceImpl implements BalanceService {
      * Sorted ascending by converted value.
      */
     @Override
+    @Transactional(readOnly = true)
     public CurrencyBalanceResponseWrapper getCurrencyBalances(Long clientId) {
         log.info("Fetching currency balances for clientId={}", clientId);
 
-        // Filter by account types where transactional = false
-        List<ClientAccount> accounts = accountRepo.findByClientIdAndAccountTypeTransactional(clientId, false);
-        if (accounts.isEmpty()) {
-            throw new NoAccountsFoundException("No currency accounts to display");
-        }
+        ClientPortfolio portfolio = portfolioLoader.load(clientId, false)
+                .orElseThrow(() -> new NoAccountsFoundException("No currency accounts to display"));
 
-        Client client = clientRepo.findById(clientId)
-                .orElseThrow(() -> new NoAccountsFoundException("Client not found"));
+        ResultDto result = new ResultDto(true, 200, "Currency balances retrieved successfully");
+        return new CurrencyBalanceResponseWrapper(portfolio.client(), portfolio.currencyAccounts(), result);
+    }
 
-        ClientDto clientDto = new ClientDto(client.getId(), client.getTitle(), client.getName(), client.getSurname());
-
-        List<CurrencyBalanceResponse> currencyResponses = accounts.stream()
-                .map(acc -> {
-                    BigDecimal rate = currencyUtil.getConversionRate(acc.getCurrency().getCode());
-                    BigDecimal balance = acc.getDisplayBalance();
-                    BigDecimal converted = balance.multiply(rate);
-
-                    BigDecimal accountLimit = acc.getAccountType().isTransactional()
-                            ? BigDecimal.valueOf(Math.abs(Constants.OVERDRAFT_LIMIT))
-                            : BigDecimal.ZERO;
-
-                    return new CurrencyBalanceResponse(
-                            acc.getAccountNumber(),
-                            acc.getAccountType().getCode(),
-                            acc.getAccountType().getDescription(),
-                            acc.getCurrency().getCode(),
-                            rate,
-                            balance,
-                            converted,
-                            accountLimit
-                    );
-                })
-                .sorted(Comparator.comparing(CurrencyBalanceResponse::zarBalance))
+    @Override
+    @Transactional(readOnly = true)
+    public TransactionalBalanceResponseWrapper getTransactionalBalances(Long clientId, String cursor, int limit) {
+        log.info("Fetching transactional balance page for clientId={}, limit={}", clientId, limit);
+
+        Page page = readPage(clientId, true, cursor, limit, "No transactional accounts to display");
+        Instant asOf = Instant.now();
+        List<TransactionalAccountDto> accounts = page.rows().stream()
+                .map(row -> portfolioLoader.transactionalAccount(row.accountNumber(), row.typeCode(),
+                        row.accountTypeDescription(), row.currencyCode(), row.balance(), asOf))
+                .toList();
+
+        ResultDto result = new ResultDto(true, 200, "Transactional balances retrieved successfully");
+        return new TransactionalBalanceResponseWrapper(page.client(), accounts, result, page.nextCursor());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public CurrencyBalanceResponseWrapper getCurrencyBalances(Long clientId, String cursor, int limit) {
+        log.info("Fetching currency balance page for clientId={}, limit={}", clientId, limit);
+
+        Page page = readPage(clientId, false, cursor, limit, "No currency accounts to display");
+        Instant asOf = Instant.now();
+        List<CurrencyBalanceResponse> accounts = page.rows().stream()
+                .map(row -> portfolioLoader.currencyAccount(row.accountNumber(), row.typeCode(),
+                        row.accountTypeDescription(), row.currencyCode(), row.balance(), asOf))
                 .toList();
 
         ResultDto result = new ResultDto(true, 200, "Currency balances retrieved successfully");
-        return new CurrencyBalanceResponseWrapper(clientDto, currencyResponses, result);
+        return new CurrencyBalanceResponseWrapper(page.client(), accounts, result, page.nextCursor());
+    }
+
+    /**
+     * Streams straight from a JDBC cursor; only the current row is held in memory.
+     * Runs outside a transaction, on the thread writing the response.
+     */
+    @Override
+    public void streamBalances(Long clientId, boolean transactional, OutputStream out) throws IOException {
+        log.info("Streaming {} balances for clientId={}", transactional ? "transactional" : "currency", clientId);
+
+        Instant asOf = Instant.now();
+        try {
+            accountRepo.streamBalances(clientId, transactional, streamFetchSize, row -> {
+                Object account = transactional
+                        ? portfolioLoader.transactionalAccount(row.accountNumber(), row.typeCode(),
+                        row.accountTypeDescription(), row.currencyCode(), row.balance(), asOf)
+                        : portfolioLoader.currencyAccount(row.accountNumber(), row.typeCode(),
+                        row.accountTypeDescription(), row.currencyCode(), row.balance(), asOf);
+                try {
+                    out.write(objectMapper.writeValueAsBytes(account));
+                    out.write(NEWLINE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // Usually the client went away; the JDBC cursor is already closed
+            throw e.getCause();
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads one more row than requested to tell whether another page follows.
+     * The client comes with the rows; only a page past the last account looks it up separately.
+     */
+    private Page readPage(Long clientId, boolean transactional, String cursor, int limit, String noAccountsMessage) {
+        BalanceCursor after = cursor == null ? null : BalanceCursor.decode(cursor);
+        if (after != null && (after.sortKey() != null) != transactional) {
+            // A cursor of the other listing
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        BalancePage balancePage = accountRepo.findBalancePage(clientId, transactional, after, limit + 1);
+        List<BalanceRow> rows = balancePage.rows();
+        if (rows.isEmpty() && after == null) {
+            throw new NoAccountsFoundException(noAccountsMessage);
+        }
+
+        ClientDto clientDto = balancePage.client() != null ? balancePage.client() : clientRepo.findById(clientId)
+                .map(client -> new ClientDto(client.getId(), client.getTitle(), client.getName(), client.getSurname()))
+                .orElseThrow(() -> new NoAccountsFoundException("Client not found"));
+
+        if (rows.size() <= limit) {
+            return new Page(clientDto, rows, null);
+        }
+        List<BalanceRow> pageRows = rows.subList(0, limit);
+        BalanceRow last = pageRows.get(limit - 1);
+        BigDecimal sortKey = transactional ? last.balance() : null;
+        return new Page(clientDto, pageRows, new BalanceCursor(sortKey, last.accountNumber()).encode());
+    }
+
+    private record Page(ClientDto client, List<BalanceRow> rows, String nextCursor) {}
+
+    /**
+     * Retrieves the client with both account groups, each sorted and converted as by the endpoints above.
+     * A client without accounts gets two empty groups.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public PortfolioResponseWrapper getPortfolio(Long clientId) {
+        log.info("Fetching portfolio for clientId={}", clientId);
+
+        ClientPortfolio portfolio = portfolioLoader.load(clientId, null)
+                .orElseThrow(() -> new NoAccountsFoundException("Client not found"));
+
+        ResultDto result = new ResultDto(true, 200, "Portfolio retrieved successfully");
+        return new PortfolioResponseWrapper(portfolio.client(), portfolio.transactionalAccounts(),
+                portfolio.currencyAccounts(), result);
+    }
+
+    /**
+     * Loads all requested clients with one IN-list query. Unknown clients and clients without accounts get
+     * a 400 entry with the message the single-client endpoints use; repeated IDs are loaded once.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public BulkBalanceResponse getBulkBalances(List<Long> clientIds) {
+        log.info("Fetching balances for {} clients", clientIds.size());
+
+        Set<Long> distinct = new HashSet<>();
+        for (Long clientId : clientIds) {
+            if (clientId != null && clientId > 0) {
+                distinct.add(clientId);
+            }
+        }
+        Map<Long, ClientPortfolio> portfolios = distinct.isEmpty() ? Map.of() : portfolioLoader.loadAll(distinct);
+
+        List<BulkBalanceEntry> results = new ArrayList<>(clientIds.size());
+        int found = 0;
+        for (Long clientId : clientIds) {
+            ClientPortfolio portfolio = clientId == null ? null : portfolios.get(clientId);
+            if (portfolio == null) {
+                String message = clientId == null || clientId < 1 ? "Invalid client ID" : "Client not found";
+                results.add(new BulkBalanceEntry(clientId, null, null, null, new ResultDto(false, 400, message)));
+            } else if (portfolio.transactionalAccounts().isEmpty() && portfolio.currencyAccounts().isEmpty()) {
+                results.add(new BulkBalanceEntry(clientId, portfolio.client(), List.of(), List.of(),
+                        new ResultDto(false, 400, "No accounts to display")));
+            } else {
+                found++;
+                results.add(new BulkBalanceEntry(clientId, portfolio.client(), portfolio.transactionalAccounts(),
+                        portfolio.currencyAccounts(), new ResultDto(true, 200, "Balances retrieved successfully")));
+            }
+        }
+        return new BulkBalanceResponse(found, results.size() - found, results);
     }
 }
@@ -0,0 +1,305 @@
+package com.bank.balancedispense.services.impl;
+
+import com.bank.balancedispense.common.ErrorMessage;
+import com.bank.balancedispense.dto.*;
+import com.bank.balancedispense.entities.ATM;
+import com.bank.balancedispense.entities.ATMAllocation;
+import com.bank.balancedispense.entities.ClientAccount;
+import com.bank.balancedispense.exceptions.*;
+import com.bank.balancedispense.repository.ClientAccountRepository;
+import com.bank.balancedispense.repository.ClientAccountRepositoryCustom.Debit;
+import com.bank.balancedispense.services.AtmInventoryService;
+import com.bank.balancedispense.services.BatchWithdrawService;
+import com.bank.balancedispense.services.ClientPositionService;
+import com.bank.balancedispense.services.ClientPositionService.BalanceChange;
+import com.bank.balancedispense.services.WithdrawService;
+import com.bank.balancedispense.util.ClientBalanceVersions;
+import com.bank.balancedispense.util.DispensabilityIndex;
+import com.bank.balancedispense.util.DispenseEngine;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Replays queued withdrawals grouped by ATM.
+ * <p>
+ * Each ATM group runs in one transaction: the ATM's allocations and every account are loaded once,
+ * and the items are applied in request order against running balances and cassette counts. Items
+ * that fail are answered with their error and leave the running state untouched. The accepted items
+ * are then written with one conditional debit statement and one batch of cassette decrements. Each
+ * accepted item reports the balance the debit wrote, plus the amounts of the same account's later items.
+ * <p>
+ * If those writes lose a race with a concurrent withdrawal, the group is rolled back and its items
+ * are replayed one by one through {@link WithdrawService}, so one bad item never fails the others.
+ */
+@Slf4j
+@Service
+public class BatchWithdrawServiceImpl implements BatchWithdrawService {
+
+    private final AtmInventoryService atmInventory;
+    private final ClientAccountRepository accountRepo;
+    private final WithdrawServiceImpl withdrawCore;
+    private final WithdrawService withdrawService;
+    private final DispenseEngine dispenseEngine;
+    private final DispensabilityIndex dispensabilityIndex;
+    private final ClientBalanceVersions balanceVersions;
+    private final ClientPositionService positionService;
+    private final Validator validator;
+    private final TransactionTemplate transactionTemplate;
+
+    public BatchWithdrawServiceImpl(AtmInventoryService atmInventory,
+                                    ClientAccountRepository accountRepo,
+                                    WithdrawServiceImpl withdrawCore,
+                                    WithdrawService withdrawService,
+                                    DispenseEngine dispenseEngine,
+                                    DispensabilityIndex dispensabilityIndex,
+                                    ClientBalanceVersions balanceVersions,
+                                    ClientPositionService positionService,
+                                    Validator validator,
+                                    PlatformTransactionManager transactionManager) {
+        this.atmInventory = atmInventory;
+        this.accountRepo = accountRepo;
+        this.withdrawCore = withdrawCore;
+        this.withdrawService = withdrawService;
+        this.dispenseEngine = dispenseEngine;
+        this.dispensabilityIndex = dispensabilityIndex;
+        this.balanceVersions = balanceVersions;
+        this.positionService = positionService;
+        this.validator = validator;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public BatchWithdrawResponse withdrawAll(List<WithdrawRequest> requests) {
+        WithdrawResponseWrapper[] results = new WithdrawResponseWrapper[requests.size()];
+
+        // Group valid items by ATM, keeping request order inside each group
+        Map<Long, List<Integer>> byAtm = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            String errors = validate(requests.get(i));
+            if (errors != null) {
+                results[i] = failure(400, "Validation failed: " + errors);
+                continue;
+            }
+            byAtm.computeIfAbsent(requests.get(i).atmId(), k -> new ArrayList<>()).add(i);
+        }
+
+        byAtm.forEach((atmId, items) -> {
+            try {
+                transactionTemplate.executeWithoutResult(status -> applyGroup(atmId, items, requests, results));
+            } catch (DataAccessException e) {
+                log.warn("Batch for ATM {} conflicted, replaying {} withdrawals one by one: {}", atmId, items.size(), e.getMessage());
+                replay(items, requests, results);
+            } catch (RuntimeException e) {
+                // The group's transaction rolled back; other groups are not affected
+                log.error("Batch for ATM {} failed, replaying {} withdrawals one by one", atmId, items.size(), e);
+                replay(items, requests, results);
+            }
+        });
+
+        int succeeded = (int) Arrays.stream(results).filter(r -> r.result().success()).count();
+        log.info("Batch withdrawal finished: {} succeeded, {} failed", succeeded, results.length - succeeded);
+        return new BatchWithdrawResponse(succeeded, results.length - succeeded, Arrays.asList(results));
+    }
+
+    /**
+     * Applies one ATM's items in order and writes the accepted ones in one debit statement and one JDBC batch.
+     */
+    private void applyGroup(Long atmId, List<Integer> items, List<WithdrawRequest> requests, WithdrawResponseWrapper[] results) {
+        List<ATMAllocation> allocations = atmInventory.loadAllocations(atmId);
+        ATM atm;
+        try {
+            atm = withdrawCore.findActiveATM(atmId, allocations);
+        } catch (ATMNotFoundException e) {
+            items.forEach(i -> results[i] = failure(e));
+            return;
+        }
+
+        List<ATMAllocation> remaining = copyOf(allocations);
+        Map<String, Optional<RunningAccount>> accounts = new HashMap<>();
+        Map<Integer, Integer> totalDispensed = new HashMap<>();
+        List<Accepted> accepted = new ArrayList<>();
+
+        for (int i : items) {
+            WithdrawRequest request = requests.get(i);
+            try {
+                RunningAccount account = accounts.computeIfAbsent(request.clientId() + ":" + request.accountNumber(),
+                                k -> accountRepo.findWithDetailsByClientIdAndAccountNumber(request.clientId(), request.accountNumber())
+                                        .map(RunningAccount::new))
+                        .orElseThrow(() -> new AccountNotFoundException(ErrorMessage.ACCOUNT_NOT_FOUND.get()));
+
+                BigDecimal amount = BigDecimal.valueOf(request.amount());
+                BigDecimal balance = account.balance.subtract(amount);
+                if (balance.compareTo(account.limit) < 0) {
+                    throw new InsufficientFundsException(ErrorMessage.INSUFFICIENT_FUNDS.get());
+                }
+
+                Map<Integer, Integer> dispensed;
+                try {
+                    dispensed = dispenseEngine.calculate(request.amount(), remaining);
+                } catch (NoteCalculationException e) {
+                    throw new NoteCalculationException(ErrorMessage.NOTE_CALCULATION_FAILED.get(),
+                            dispenseEngine.suggestAlternatives(request.amount(), remaining));
+                }
+
+                accepted.add(new Accepted(i, account, amount, dispensed));
+                account.balance = balance;
+                account.debit = account.debit.add(amount);
+                take(remaining, dispensed);
+                dispensed.forEach((value, qty) -> totalDispensed.merge(value, qty, Integer::sum));
+            } catch (AccountNotFoundException | InsufficientFundsException | NoteCalculationException | IllegalArgumentException e) {
+                results[i] = failure(e);
+            }
+        }
+
+        List<Debit> debits = accounts.values().stream()
+                .flatMap(Optional::stream)
+                .filter(a -> a.debit.signum() > 0)
+                .map(a -> new Debit(a.account.getAccountNumber(), a.debit, a.limit))
+                .toList();
+        if (debits.isEmpty()) {
+            return;
+        }
+        Map<String, BigDecimal> written = accountRepo.debitAll(debits);
+        respond(accepted, written, allocations, results);
+        List<RunningAccount> debited = accounts.values().stream()
+                .flatMap(Optional::stream)
+                .filter(a -> a.debit.signum() > 0)
+                .toList();
+        positionService.applyBalanceChanges(debited.stream()
+                .map(a -> new BalanceChange(a.account.getClient().getId(), a.account.getAccountType(), a.debit.negate()))
+                .toList());
+        debited.stream()
+                .map(a -> a.account.getClient().getId())
+                .distinct()
+                .forEach(balanceVersions::recordChange);
+        atmInventory.remove(atm.getId(), totalDispensed, allocations);
+        dispensabilityIndex.recordDispense(atm.getId(), totalDispensed);
+    }
+
+    /**
+     * Builds the accepted items' responses from the balances actually written, which include any change
+     * committed concurrently since the accounts were loaded. Walking each account's items backwards, an
+     * item's balance is the written one plus the amounts of the items after it.
+     */
+    private void respond(List<Accepted> accepted, Map<String, BigDecimal> written,
+                         List<ATMAllocation> allocations, WithdrawResponseWrapper[] results) {
+        Map<RunningAccount, BigDecimal> balanceAfter = new HashMap<>();
+        for (int k = accepted.size() - 1; k >= 0; k--) {
+            Accepted item = accepted.get(k);
+            BigDecimal balance = balanceAfter.computeIfAbsent(item.account(),
+                    a -> written.get(a.account.getAccountNumber()));
+            results[item.index()] = withdrawCore.toResponse(item.account().account, balance, allocations, item.dispensed());
+            balanceAfter.put(item.account(), balance.add(item.amount()));
+        }
+    }
+
+    /**
+     * Runs a single withdrawal in its own transaction and turns its outcome into a result entry.
+     */
+    private void replay(List<Integer> items, List<WithdrawRequest> requests, WithdrawResponseWrapper[] results) {
+        for (int i : items) {
+            results[i] = withdrawOne(requests.get(i));
+        }
+    }
+
+    private WithdrawResponseWrapper withdrawOne(WithdrawRequest request) {
+        try {
+            return withdrawService.withdraw(request);
+        } catch (ATMNotFoundException | AccountNotFoundException | InsufficientFundsException
+                 | NoteCalculationException | IllegalArgumentException | OptimisticLockingFailureException e) {
+            return failure(e);
+        } catch (RuntimeException e) {
+            log.error("Unexpected error in batch withdrawal", e);
+            return failure(500, "An unexpected error occurred: " + e.getMessage());
+        }
+    }
+
+    private String validate(WithdrawRequest request) {
+        if (request == null) {
+            return "withdrawal is required";
+        }
+        Set<ConstraintViolation<WithdrawRequest>> violations = validator.validate(request);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * Maps an item failure to the same status the single withdrawal endpoint would return.
+     */
+    private static WithdrawResponseWrapper failure(RuntimeException e) {
+        if (e instanceof NoteCalculationException nce) {
+            return new WithdrawResponseWrapper(null, null, null,
+                    new ResultDto(false, 400, nce.getMessage(), nce.getFallbackAmount(), nce.getAlternatives()));
+        }
+        int status = e instanceof ATMNotFoundException || e instanceof AccountNotFoundException ? 404
+                : e instanceof OptimisticLockingFailureException ? 409
+                : 400;
+        String message = e instanceof OptimisticLockingFailureException ? ErrorMessage.CONCURRENT_UPDATE.get() : e.getMessage();
+        return failure(status, message);
+    }
+
+    private static WithdrawResponseWrapper failure(int status, String message) {
+        return new WithdrawResponseWrapper(null, null, null, new ResultDto(false, status, message));
+    }
+
+    private static List<ATMAllocation> copyOf(List<ATMAllocation> allocations) {
+        List<ATMAllocation> copies = new ArrayList<>(allocations.size());
+        for (ATMAllocation allocation : allocations) {
+            ATMAllocation copy = new ATMAllocation();
+            copy.setAtm(allocation.getAtm());
+            copy.setDenomination(allocation.getDenomination());
+            copy.setQuantity(allocation.getQuantity());
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    /**
+     * Subtracts dispensed notes from the first allocation of each value, as the inventory write does.
+     */
+    private static void take(List<ATMAllocation> remaining, Map<Integer, Integer> dispensed) {
+        Map<Integer, Integer> left = new HashMap<>(dispensed);
+        for (ATMAllocation allocation : remaining) {
+            Integer qty = left.remove(allocation.getDenomination().getValue().intValue());
+            if (qty != null) {
+                allocation.setQuantity(allocation.getQuantity() - qty);
+            }
+        }
+    }
+
+    /**
+     * Item of a group that passed the funds and note checks, answered once the debits are written.
+     */
+    private record Accepted(int index, RunningAccount account, BigDecimal amount, Map<Integer, Integer> dispensed) {}
+
+    /**
+     * Account loaded once per group, with its balance after the items accepted so far.
+     */
+    private static final class RunningAccount {
+        final ClientAccount account;
+        final BigDecimal limit;
+        BigDecimal balance;
+        BigDecimal debit = BigDecimal.ZERO;
+
+        RunningAccount(ClientAccount account) {
+            this.account = account;
+            this.limit = WithdrawServiceImpl.allowedLimit(account);
+            this.balance = account.getDisplayBalance();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.bank.balancedispense.services.impl;
+
+import com.bank.balancedispense.dto.ClientDto;
+import com.bank.balancedispense.dto.CurrencyBalanceResponse;
+import com.bank.balancedispense.dto.PortfolioRow;
+import com.bank.balancedispense.dto.TransactionalAccountDto;
+import com.bank.balancedispense.repository.ClientAccountRepository;
+import com.bank.balancedispense.util.CurrencyConversionUtil;
+import com.bank.balancedispense.util.RateVersion;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Loads a client together with their accounts in a single query and converts every balance to ZAR.
+ * Shared by the balance, portfolio and bulk balance endpoints; the split into account groups is done in memory.
+ */
+@Component
+@RequiredArgsConstructor
+public class ClientPortfolioLoader {
+
+    private final ClientAccountRepository accountRepo;
+    private final CurrencyConversionUtil currencyUtil;
+
+    /**
+     * A client's accounts split by type, each group in display order.
+     */
+    public record ClientPortfolio(
+            ClientDto client,
+            List<TransactionalAccountDto> transactionalAccounts,
+            List<CurrencyBalanceResponse> currencyAccounts
+    ) {}
+
+    /**
+     * @param transactional Only load transactional (true) or currency (false) accounts; null for both
+     * @return Empty if nothing matched: the client is unknown, or has no accounts of the requested kind
+     */
+    public Optional<ClientPortfolio> load(Long clientId, Boolean transactional) {
+        List<PortfolioRow> rows = accountRepo.findPortfolioRows(clientId, transactional);
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(toPortfolio(rows, currencyUtil.snapshotAsOf(Instant.now())));
+    }
+
+    /**
+     * Loads several clients with all their accounts in one query and converts every balance against one
+     * rate snapshot taken at one instant.
+     *
+     * @return Portfolios by client ID, in ascending ID order; unknown clients are absent,
+     *         clients without accounts have two empty groups
+     */
+    public Map<Long, ClientPortfolio> loadAll(Collection<Long> clientIds) {
+        List<PortfolioRow> rows = accountRepo.findPortfolioRowsByClientIds(clientIds);
+        Function<String, RateVersion> rates = currencyUtil.snapshotAsOf(Instant.now());
+
+        // Rows arrive grouped by client
+        Map<Long, ClientPortfolio> portfolios = new LinkedHashMap<>();
+        int from = 0;
+        for (int i = 1; i <= rows.size(); i++) {
+            if (i == rows.size() || !rows.get(i).clientId().equals(rows.get(from).clientId())) {
+                portfolios.put(rows.get(from).clientId(), toPortfolio(rows.subList(from, i), rates));
+                from = i;
+            }
+        }
+        return portfolios;
+    }
+
+    /**
+     * Splits one client's rows into the two account groups. Transactional rows are already in display order.
+     * Currency rows arrive by account number and are ranked here by the ZAR value shown, lowest first; the
+     * sort is stable, so accounts of equal value stay in account-number order.
+     */
+    private ClientPortfolio toPortfolio(List<PortfolioRow> rows, Function<String, RateVersion> rates) {
+        PortfolioRow first = rows.get(0);
+        ClientDto client = new ClientDto(first.clientId(), first.title(), first.name(), first.surname());
+
+        List<TransactionalAccountDto> transactionalAccounts = new ArrayList<>();
+        List<CurrencyBalanceResponse> currencyAccounts = new ArrayList<>();
+        for (PortfolioRow row : rows) {
+            if (row.accountNumber() == null) {
+                continue; // client without accounts
+            }
+            RateVersion rateVersion = rates.apply(row.currencyCode());
+            if (Boolean.TRUE.equals(row.transactional())) {
+                transactionalAccounts.add(transactionalAccount(row.accountNumber(), row.typeCode(),
+                        row.accountTypeDescription(), row.currencyCode(), row.balance(), rateVersion));
+            } else {
+                currencyAccounts.add(currencyAccount(row.accountNumber(), row.typeCode(),
+                        row.accountTypeDescription(), row.currencyCode(), row.balance(), rateVersion));
+            }
+        }
+        currencyAccounts.sort(Comparator.comparing(CurrencyBalanceResponse::zarBalance));
+        return new ClientPortfolio(client, transactionalAccounts, currencyAccounts);
+    }
+
+    /**
+     * Converts a transactional account's balance with the rate in force at {@code asOf}.
+     */
+    public TransactionalAccountDto transactionalAccount(String accountNumber, String typeCode, String description,
+                                                        String currencyCode, BigDecimal balance, Instant asOf) {
+        return transactionalAccount(accountNumber, typeCode, description, currencyCode, balance,
+                currencyUtil.rateAsOf(currencyCode, asOf));
+    }
+
+    private static TransactionalAccountDto transactionalAccount(String accountNumber, String typeCode, String description,
+                                                                String currencyCode, BigDecimal balance,
+                                                                RateVersion rateVersion) {
+        BigDecimal rate = rateVersion.multiplier();
+        return new TransactionalAccountDto(accountNumber, typeCode, description, currencyCode, rate, balance,
+                balance.multiply(rate), BigDecimal.ZERO, rateVersion.version());
+    }
+
+    /**
+     * Converts a currency account's balance with the rate in force at {@code asOf}.
+     * Currency accounts are never transactional, so they have no overdraft limit.
+     */
+    public CurrencyBalanceResponse currencyAccount(String accountNumber, String typeCode, String description,
+                                                   String currencyCode, BigDecimal balance, Instant asOf) {
+        return currencyAccount(accountNumber, typeCode, description, currencyCode, balance,
+                currencyUtil.rateAsOf(currencyCode, asOf));
+    }
+
+    private static CurrencyBalanceResponse currencyAccount(String accountNumber, String typeCode, String description,
+                                                           String currencyCode, BigDecimal balance,
+                                                           RateVersion rateVersion) {
+        BigDecimal rate = rateVersion.multiplier();
+        return new CurrencyBalanceResponse(accountNumber, typeCode, description, currencyCode, rate, balance,
+                balance.multiply(rate), BigDecimal.ZERO, rateVersion.version());
+    }
+}
@@ -0,0 +1,241 @@
+package com.bank.balancedispense.services.impl;
+
+import com.bank.balancedispense.common.Constants;
+import com.bank.balancedispense.dto.ClientPositionResponse;
+import com.bank.balancedispense.dto.PositionRebuildReport;
+import com.bank.balancedispense.dto.ResultDto;
+import com.bank.balancedispense.dto.TopBalanceDto;
+import com.bank.balancedispense.dto.TopBalancePageResponse;
+import com.bank.balancedispense.exceptions.NoAccountsFoundException;
+import com.bank.balancedispense.repository.ClientPositionRepository;
+import com.bank.balancedispense.repository.ClientPositionRepositoryCustom.Delta;
+import com.bank.balancedispense.repository.ClientPositionRepositoryCustom.Position;
+import com.bank.balancedispense.repository.ClientPositionRepositoryCustom.StoredPosition;
+import com.bank.balancedispense.repository.ClientPositionRepositoryCustom.TopBalance;
+import com.bank.balancedispense.services.ClientPositionService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Maintains CLIENT_POSITION incrementally and rebuilds it from CLIENT_ACCOUNT.
+ * The summary also indexes each client's highest-balance transactional account, which a delta
+ * recomputes from the client's own accounts whenever a transactional balance changes.
+ * <p>
+ * Balance writers apply deltas in their own transaction, so a stored position is never ahead of or
+ * behind committed balances. A client whose position is not stored yet is computed from their accounts
+ * on read, and a delta for them is dropped; the next rebuild stores the row.
+ * <p>
+ * The rebuild processes client-ID ranges in parallel. Per range, it first inserts and commits zero rows
+ * for clients without one, so every later delta lands on a row. It then locks the range's positions,
+ * plus the accounts of the newly inserted clients, whose withdrawals may have dropped a delta just
+ * before the row appeared. Withdrawals that already applied a delta are therefore committed before
+ * the range's balances are read, and ones that have not wait and then add it to the rebuilt row.
+ */
+@Slf4j
+@Service
+public class ClientPositionServiceImpl implements ClientPositionService {
+
+    private final ClientPositionRepository positionRepo;
+    private final TransactionTemplate transactionTemplate;
+    private final int rangeSize;
+    private final int parallelism;
+    private final boolean rebuildOnStartup;
+
+    public ClientPositionServiceImpl(ClientPositionRepository positionRepo,
+                                     PlatformTransactionManager transactionManager,
+                                     @Value("${atm.position.rebuild.range-size:10000}") int rangeSize,
+                                     @Value("${atm.position.rebuild.parallelism:0}") int parallelism,
+                                     @Value("${atm.position.rebuild.on-startup:true}") boolean rebuildOnStartup) {
+        this.positionRepo = positionRepo;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.rangeSize = rangeSize;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.rebuildOnStartup = rebuildOnStartup;
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void applyBalanceChanges(List<BalanceChange> changes) {
+        Map<Long, Delta> deltas = new HashMap<>();
+        for (BalanceChange change : changes) {
+            boolean loan = Constants.LOAN_ACCOUNT_TYPES.contains(change.accountType().getCode());
+            boolean transactional = change.accountType().isTransactional();
+            if (!loan && !transactional) {
+                continue; // e.g. currency accounts are not part of the position
+            }
+            Delta delta = new Delta(change.clientId(),
+                    loan ? change.amount() : BigDecimal.ZERO,
+                    transactional ? change.amount() : BigDecimal.ZERO,
+                    change.amount(),
+                    transactional);
+            deltas.merge(change.clientId(), delta, ClientPositionServiceImpl::add);
+        }
+        positionRepo.applyDeltas(List.copyOf(deltas.values()));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public ClientPositionResponse getPosition(Long clientId) {
+        StoredPosition stored = positionRepo.findStoredPosition(clientId)
+                .orElseThrow(() -> new NoAccountsFoundException("Client not found"));
+
+        Position position = stored.position();
+        if (position == null) {
+            log.debug("No stored position for clientId={}, computing it from the accounts", clientId);
+            position = positionRepo.aggregatePositions(clientId, clientId).stream()
+                    .findFirst()
+                    .orElse(new Position(clientId, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, null, null));
+        }
+        return new ClientPositionResponse(stored.client(), position.loanBalance(), position.transactionalBalance(),
+                position.netPosition(), new ResultDto(true, 200, "Position retrieved successfully"));
+    }
+
+    /**
+     * Reads one keyset page of the stored top accounts; each page is a primary-key range scan.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public TopBalancePageResponse getTopTransactionalBalances(Long afterClientId, int limit) {
+        List<TopBalance> rows = positionRepo.findTopBalances(afterClientId, limit + 1);
+        boolean more = rows.size() > limit;
+        List<TopBalanceDto> clients = rows.stream()
+                .limit(limit)
+                .map(row -> new TopBalanceDto(row.clientId(), row.surname(), row.accountNumber(), row.balance()))
+                .toList();
+        Long next = more ? clients.get(clients.size() - 1).clientId() : null;
+        return new TopBalancePageResponse(clients, next, new ResultDto(true, 200, "Top balances retrieved successfully"));
+    }
+
+    @Override
+    public PositionRebuildReport rebuildAll() {
+        long started = System.nanoTime();
+        List<long[]> ranges = positionRepo.clientIdRange()
+                .map(bounds -> split(bounds[0], bounds[1]))
+                .orElse(List.of());
+        if (ranges.isEmpty()) {
+            return new PositionRebuildReport(0, 0, 0, 0, 0, 0);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, ranges.size()));
+        try {
+            List<CompletableFuture<PositionRebuildReport>> partitions = ranges.stream()
+                    .map(range -> CompletableFuture.supplyAsync(
+                            () -> rebuildRange(range[0], range[1]), pool))
+                    .toList();
+
+            int verified = 0, inserted = 0, corrected = 0, removed = 0;
+            for (CompletableFuture<PositionRebuildReport> partition : partitions) {
+                PositionRebuildReport part = partition.join();
+                verified += part.verified();
+                inserted += part.inserted();
+                corrected += part.corrected();
+                removed += part.removed();
+            }
+            PositionRebuildReport report = new PositionRebuildReport(ranges.size(), verified, inserted, corrected,
+                    removed, (System.nanoTime() - started) / 1_000_000);
+            log.info("Rebuilt client positions: {}", report);
+            return report;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Builds the summary once the application has started, unless disabled.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (rebuildOnStartup) {
+            rebuildAll();
+        }
+    }
+
+    /**
+     * Verifies and repairs one client-ID range: missing rows are inserted and committed first, then the
+     * range is locked and compared against its accounts in a second transaction.
+     */
+    private PositionRebuildReport rebuildRange(long fromClientId, long toClientId) {
+        long started = System.nanoTime();
+        List<Long> missing = transactionTemplate.execute(status -> positionRepo.insertMissingPositions(fromClientId, toClientId));
+        return transactionTemplate.execute(status -> repairRange(fromClientId, toClientId, new HashSet<>(missing), started));
+    }
+
+    /**
+     * Compares the locked positions of the range with its accounts inside the current transaction.
+     *
+     * @param inserted Clients whose zero row was just inserted; they count as inserted, not as drifted
+     */
+    private PositionRebuildReport repairRange(long fromClientId, long toClientId, Set<Long> inserted, long started) {
+        Map<Long, Position> stored = new HashMap<>();
+        for (Position position : positionRepo.lockPositions(fromClientId, toClientId)) {
+            stored.put(position.clientId(), position);
+        }
+        positionRepo.lockAccounts(inserted.stream().sorted().toList());
+
+        List<Position> expected = positionRepo.aggregatePositions(fromClientId, toClientId);
+        List<Position> changed = new ArrayList<>();
+        int insertedCount = 0;
+        int corrected = 0;
+        for (Position position : expected) {
+            Position current = stored.remove(position.clientId());
+            if (current == null || inserted.contains(position.clientId())) {
+                insertedCount++;
+                changed.add(position);
+            } else if (!sameTotals(current, position)) {
+                log.warn("Client position drifted for clientId={}: stored={}, expected={}", position.clientId(), current, position);
+                corrected++;
+                changed.add(position);
+            }
+        }
+        positionRepo.savePositions(changed);
+        positionRepo.deletePositions(List.copyOf(stored.keySet()));
+
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+        log.debug("Rebuilt positions of clients {}..{} in {} ms", fromClientId, toClientId, elapsedMillis);
+        return new PositionRebuildReport(1, expected.size(), insertedCount, corrected, stored.size(), elapsedMillis);
+    }
+
+    private List<long[]> split(long minClientId, long maxClientId) {
+        List<long[]> ranges = new ArrayList<>();
+        long from = minClientId;
+        while (true) {
+            long to = maxClientId - from < rangeSize ? maxClientId : from + rangeSize - 1;
+            ranges.add(new long[]{from, to});
+            if (to == maxClientId) {
+                return ranges;
+            }
+            from = to + 1;
+        }
+    }
+
+    private static boolean sameTotals(Position a, Position b) {
+        return sameAmount(a.loanBalance(), b.loanBalance())
+                && sameAmount(a.transactionalBalance(), b.transactionalBalance())
+                && sameAmount(a.netPosition(), b.netPosition())
+                && Objects.equals(a.topAccountNumber(), b.topAccountNumber())
+                && sameAmount(a.topTransactionalBalance(), b.topTransactionalBalance());
+    }
+
+    private static boolean sameAmount(BigDecimal a, BigDecimal b) {
+        return a == null ? b == null : b != null && a.compareTo(b) == 0;
+    }
+
+    private static Delta add(Delta a, Delta b) {
+        return new Delta(a.clientId(), a.loanBalance().add(b.loanBalance()),
+                a.transactionalBalance().add(b.transactionalBalance()), a.netPosition().add(b.netPosition()),
+                a.transactionalChanged() || b.transactionalChanged());
+    }
+}
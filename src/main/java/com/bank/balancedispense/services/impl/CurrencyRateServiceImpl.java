@@ -0,0 +1,76 @@
+package com.bank.balancedispense.services.impl;
+
+import com.bank.balancedispense.dto.CurrencyRateDto;
+import com.bank.balancedispense.dto.CurrencyRateUpdateRequest;
+import com.bank.balancedispense.entities.CurrencyConversionRate;
+import com.bank.balancedispense.entities.CurrencyConversionRateHistory;
+import com.bank.balancedispense.repository.CurrencyConversionRateHistoryRepository;
+import com.bank.balancedispense.repository.CurrencyConversionRateRepository;
+import com.bank.balancedispense.repository.CurrencyRepository;
+import com.bank.balancedispense.services.CurrencyRateService;
+import com.bank.balancedispense.util.CurrencyConversionUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Maintains CURRENCY_CONVERSION_RATE and appends each change to CURRENCY_CONVERSION_RATE_HISTORY,
+ * effective from the time it is saved. The in-memory rate snapshot is swapped once the change commits.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CurrencyRateServiceImpl implements CurrencyRateService {
+
+    private final CurrencyConversionRateRepository rateRepo;
+    private final CurrencyConversionRateHistoryRepository historyRepo;
+    private final CurrencyRepository currencyRepo;
+    private final CurrencyConversionUtil currencyUtil;
+
+    @Override
+    @Transactional
+    public CurrencyRateDto updateRate(String currencyCode, CurrencyRateUpdateRequest request) {
+        String code = currencyCode.toUpperCase();
+        if (code.equals("ZAR") || !currencyRepo.existsById(code)) {
+            throw new IllegalArgumentException("Unsupported currency: " + currencyCode);
+        }
+
+        Optional<CurrencyConversionRate> existing = rateRepo.findById(code);
+        if (existing.isPresent() && !historyRepo.existsByCurrencyCode(code)) {
+            // Keep the rate that applied so far, so earlier instants still reprice with it
+            historyRepo.save(new CurrencyConversionRateHistory(null, code,
+                    existing.get().getConversionIndicator(), existing.get().getRate(), Instant.EPOCH));
+        }
+        CurrencyConversionRateHistory version = historyRepo.save(new CurrencyConversionRateHistory(null, code,
+                request.conversionIndicator(), request.rate(), Instant.now()));
+
+        CurrencyConversionRate rate = existing.orElseGet(() -> {
+            CurrencyConversionRate created = new CurrencyConversionRate();
+            created.setCurrencyCode(code);
+            return created;
+        });
+        rate.setConversionIndicator(request.conversionIndicator());
+        rate.setRate(request.rate());
+        rateRepo.save(rate);
+        log.info("Conversion rate for {} set to {} {} (version {})", code, request.conversionIndicator(), request.rate(), version.getVersion());
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                currencyUtil.refresh();
+            }
+        });
+
+        // Same conversion as the snapshot applies, so the response shows the multiplier balances will use
+        BigDecimal multiplier = CurrencyConversionUtil.multiplier(request.conversionIndicator(), request.rate());
+        return new CurrencyRateDto(code, request.conversionIndicator(), request.rate(), multiplier,
+                version.getVersion(), version.getEffectiveFrom());
+    }
+}
@@ -0,0 +1,52 @@
+package com.bank.balancedispense.services.impl;
+
+import com.bank.balancedispense.entities.ATMAllocation;
+import com.bank.balancedispense.repository.ATMAllocationRepository;
+import com.bank.balancedispense.services.AtmInventoryService;
+import com.bank.balancedispense.util.DispenseEngine;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Inventory kept in {@code ATM_ALLOCATION}: notes are picked from the rows read in the transaction
+ * and removed with conditional SQL decrements. Default, or {@code atm.inventory.mode=database}.
+ */
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "atm.inventory.mode", havingValue = "database", matchIfMissing = true)
+public class DatabaseAtmInventoryService implements AtmInventoryService {
+
+    private final ATMAllocationRepository atmAllocationRepo;
+    private final DispenseEngine dispenseEngine;
+
+    @Override
+    public List<ATMAllocation> loadAllocations(Long atmId) {
+        return atmAllocationRepo.findWithAtmAndDenominationByAtmId(atmId);
+    }
+
+    /**
+     * Calculates the notes from the loaded allocations, then removes them with one batch of conditional decrements.
+     * The loaded allocations are left untouched so Hibernate does not write them again.
+     */
+    @Override
+    public Map<Integer, Integer> dispense(Long atmId, double amount, List<ATMAllocation> allocations) {
+        Map<Integer, Integer> dispensed = dispenseEngine.calculate(amount, allocations);
+        remove(atmId, dispensed, allocations);
+        return dispensed;
+    }
+
+    @Override
+    public void remove(Long atmId, Map<Integer, Integer> dispensed, List<ATMAllocation> allocations) {
+        Map<Long, Integer> notesByDenominationId = new TreeMap<>();
+        dispensed.forEach((denVal, qty) -> allocations.stream()
+                .filter(a -> a.getDenomination().getValue().intValue() == denVal)
+                .findFirst()
+                .ifPresent(a -> notesByDenominationId.put(a.getDenomination().getId(), qty)));
+        atmAllocationRepo.decrementCounts(atmId, notesByDenominationId);
+    }
+}
@@ -0,0 +1,106 @@
+package com.bank.balancedispense.services.impl;
+
+import com.bank.balancedispense.common.ErrorMessage;
+import com.bank.balancedispense.dto.WithdrawRequest;
+import com.bank.balancedispense.dto.WithdrawResponseWrapper;
+import com.bank.balancedispense.entities.WithdrawalIdempotencyRecord;
+import com.bank.balancedispense.exceptions.IdempotencyKeyReuseException;
+import com.bank.balancedispense.repository.WithdrawalIdempotencyRecordRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * Durable side of withdrawal idempotency: completed responses are stored as JSON in
+ * WITHDRAWAL_IDEMPOTENCY and read back after a restart or once the in-memory entry has been evicted.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IdempotencyRecordStore {
+
+    private final WithdrawalIdempotencyRecordRepository recordRepo;
+    private final ObjectMapper objectMapper;
+
+    @Value("${atm.idempotency.ttl:24h}")
+    private Duration ttl;
+
+    /**
+     * Stores the response in the caller's transaction. Flushed immediately, so a key committed
+     * concurrently elsewhere fails here with a DataIntegrityViolationException.
+     * An expired record that has not been purged yet is replaced, as {@link #find} no longer returns it.
+     */
+    public void save(String idempotencyKey, WithdrawRequest request, WithdrawResponseWrapper response) {
+        recordRepo.deleteExpired(idempotencyKey, Instant.now().minus(ttl));
+        try {
+            recordRepo.saveAndFlush(new WithdrawalIdempotencyRecord(idempotencyKey, fingerprint(request),
+                    objectMapper.writeValueAsString(response), Instant.now()));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize withdrawal response", e);
+        }
+    }
+
+    /**
+     * Returns the stored response for the key, if any.
+     *
+     * @throws IdempotencyKeyReuseException if the key belongs to a different request
+     */
+    public Optional<WithdrawResponseWrapper> find(String idempotencyKey, WithdrawRequest request) {
+        return recordRepo.findById(idempotencyKey)
+                .filter(r -> r.getCreatedAt().isAfter(Instant.now().minus(ttl)))
+                .map(r -> {
+                    requireSameRequest(idempotencyKey, r.getRequestFingerprint(), fingerprint(request));
+                    try {
+                        return objectMapper.readValue(r.getResponseJson(), WithdrawResponseWrapper.class);
+                    } catch (JsonProcessingException e) {
+                        throw new IllegalStateException("Cannot read stored withdrawal response", e);
+                    }
+                });
+    }
+
+    /**
+     * Deletes records older than the idempotency TTL.
+     */
+    @Scheduled(fixedDelayString = "${atm.idempotency.purge-interval-ms:3600000}")
+    @Transactional
+    public void purgeExpired() {
+        int deleted = recordRepo.deleteCreatedBefore(Instant.now().minus(ttl));
+        if (deleted > 0) {
+            log.info("Purged {} expired idempotency records", deleted);
+        }
+    }
+
+    /**
+     * Rejects a key that is replayed with a request other than the one it was first used for.
+     */
+    static void requireSameRequest(String idempotencyKey, String storedFingerprint, String fingerprint) {
+        if (!storedFingerprint.equals(fingerprint)) {
+            throw new IdempotencyKeyReuseException(ErrorMessage.IDEMPOTENCY_KEY_REUSED.get() + " Key: " + idempotencyKey);
+        }
+    }
+
+    /**
+     * SHA-256 over the request fields, hex encoded.
+     */
+    static String fingerprint(WithdrawRequest request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(request.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
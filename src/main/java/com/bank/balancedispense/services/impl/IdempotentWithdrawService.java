@@ -0,0 +1,142 @@
+package com.bank.balancedispense.services.impl;
+
+import com.bank.balancedispense.dto.WithdrawRequest;
+import com.bank.balancedispense.dto.WithdrawResponseWrapper;
+import com.bank.balancedispense.services.WithdrawService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Runs withdrawals at most once per client-supplied idempotency key.
+ * <p>
+ * Results are kept in a bounded in-memory cache, so a replayed request is answered without
+ * touching CLIENT_ACCOUNT or ATM_ALLOCATION. A duplicate that arrives while the first request is
+ * still running waits for its outcome instead of withdrawing again. Completed results are also
+ * stored in WITHDRAWAL_IDEMPOTENCY within the withdrawal transaction, which covers restarts,
+ * evicted entries and other instances sharing the database.
+ * <p>
+ * Failed withdrawals are not cached: waiting duplicates receive the same error, later ones run again.
+ */
+@Slf4j
+@Service
+public class IdempotentWithdrawService {
+
+    private final WithdrawService withdrawService;
+    private final IdempotencyRecordStore recordStore;
+    private final int maxEntries;
+    private final long ttlMillis;
+
+    // Insertion-ordered, guarded by this; in-flight slots are never evicted
+    private final Map<String, Slot> slots = new LinkedHashMap<>();
+
+    public IdempotentWithdrawService(WithdrawService withdrawService,
+                                     IdempotencyRecordStore recordStore,
+                                     @Value("${atm.idempotency.max-entries:10000}") int maxEntries,
+                                     @Value("${atm.idempotency.ttl:24h}") Duration ttl) {
+        this.withdrawService = withdrawService;
+        this.recordStore = recordStore;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttl.toMillis();
+    }
+
+    /**
+     * Executes the withdrawal once for the key and returns the same response for every replay.
+     *
+     * @throws com.bank.balancedispense.exceptions.IdempotencyKeyReuseException if the key was used for a different request
+     */
+    public WithdrawResponseWrapper withdraw(String idempotencyKey, WithdrawRequest request) {
+        String fingerprint = IdempotencyRecordStore.fingerprint(request);
+        Slot slot;
+        boolean owner;
+        synchronized (this) {
+            evict(System.currentTimeMillis());
+            slot = slots.get(idempotencyKey);
+            owner = slot == null;
+            if (owner) {
+                slot = new Slot(fingerprint);
+                slots.put(idempotencyKey, slot);
+            }
+        }
+        IdempotencyRecordStore.requireSameRequest(idempotencyKey, slot.fingerprint, fingerprint);
+
+        if (!owner) {
+            log.info("Replaying withdrawal for idempotency key {}", idempotencyKey);
+            return await(slot);
+        }
+
+        try {
+            WithdrawResponseWrapper response = recordStore.find(idempotencyKey, request)
+                    .orElseGet(() -> execute(idempotencyKey, request));
+            synchronized (this) {
+                slot.completedAt = System.currentTimeMillis();
+            }
+            slot.result.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                slots.remove(idempotencyKey, slot);
+            }
+            slot.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Runs the withdrawal. If another instance committed the same key first, its stored result is returned.
+     */
+    private WithdrawResponseWrapper execute(String idempotencyKey, WithdrawRequest request) {
+        try {
+            return withdrawService.withdraw(request, idempotencyKey);
+        } catch (DataIntegrityViolationException e) {
+            return recordStore.find(idempotencyKey, request).orElseThrow(() -> e);
+        }
+    }
+
+    private WithdrawResponseWrapper await(Slot slot) {
+        try {
+            return slot.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Drops completed slots older than the TTL, then the oldest completed slots above the size bound.
+     */
+    private void evict(long now) {
+        Iterator<Slot> it = slots.values().iterator();
+        while (it.hasNext()) {
+            Slot slot = it.next();
+            if (slot.completedAt == 0) {
+                continue;
+            }
+            if (now - slot.completedAt >= ttlMillis || slots.size() >= maxEntries) {
+                it.remove();
+            } else {
+                break;
+            }
+        }
+    }
+
+    private static final class Slot {
+        final String fingerprint;
+        final CompletableFuture<WithdrawResponseWrapper> result = new CompletableFuture<>();
+        long completedAt;
+
+        Slot(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+}
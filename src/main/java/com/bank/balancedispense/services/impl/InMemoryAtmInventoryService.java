@@ -0,0 +1,364 @@
+package com.bank.balancedispense.services.impl;
+
+import com.bank.balancedispense.entities.ATM;
+import com.bank.balancedispense.entities.ATMAllocation;
+import com.bank.balancedispense.entities.Denomination;
+import com.bank.balancedispense.entities.InventoryCheckpoint;
+import com.bank.balancedispense.repository.ATMAllocationRepository;
+import com.bank.balancedispense.repository.InventoryCheckpointRepository;
+import com.bank.balancedispense.services.AtmInventoryService;
+import com.bank.balancedispense.util.DispenseEngine;
+import com.bank.balancedispense.util.InventoryJournal;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Inventory held in memory by the single service instance that owns the ATMs.
+ * Enabled with {@code atm.inventory.mode=memory}.
+ * <p>
+ * Each ATM has one state holder with its counts in primitive arrays. Notes are picked and reserved
+ * under the holder's lock, so cassette counts never wait on the database. Before the withdrawal
+ * commits, the change is appended to a local {@link InventoryJournal} and forced to disk. After
+ * commit it is queued for write-behind. A rollback releases the reservation and marks the journal
+ * record as aborted.
+ * <p>
+ * A scheduled flush applies queued changes to ATM_ALLOCATION in one transaction with the
+ * ATM_INVENTORY_CHECKPOINT row, which holds the highest sequence below which every record is persisted
+ * or aborted. On startup, journal records after the checkpoint are replayed into the database
+ * before the first ATM is loaded, so a crash loses no committed withdrawal.
+ * <p>
+ * The journal must be discarded if the database is recreated. Cassette refills must go through
+ * {@link #reload(Long)} so the holder picks up the new counts.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "atm.inventory.mode", havingValue = "memory")
+public class InMemoryAtmInventoryService implements AtmInventoryService {
+
+    private static final long CHECKPOINT_ID = 1L;
+    private static final long COMPACT_THRESHOLD_BYTES = 1L << 20;
+
+    private final ATMAllocationRepository atmAllocationRepo;
+    private final InventoryCheckpointRepository checkpointRepo;
+    private final DispenseEngine dispenseEngine;
+    private final TransactionTemplate transactionTemplate;
+    private final InventoryJournal journal;
+
+    private final ConcurrentMap<Long, Cassettes> atms = new ConcurrentHashMap<>();
+    private final Queue<InventoryJournal.Entry> committed = new ConcurrentLinkedQueue<>();
+    /** Journaled sequences whose transaction has not completed yet. Guarded by the journal for writes. */
+    private final NavigableSet<Long> inFlight = new ConcurrentSkipListSet<>();
+    /** Committed records not yet covered by the checkpoint, by sequence. Only touched by {@link #flush()}. */
+    private final NavigableMap<Long, InventoryJournal.Entry> pending = new TreeMap<>();
+    private long checkpointedSequence;
+
+    public InMemoryAtmInventoryService(ATMAllocationRepository atmAllocationRepo,
+                                       InventoryCheckpointRepository checkpointRepo,
+                                       DispenseEngine dispenseEngine,
+                                       PlatformTransactionManager transactionManager,
+                                       @Value("${atm.inventory.journal-path:data/atm-inventory.journal}") String journalPath) {
+        this.atmAllocationRepo = atmAllocationRepo;
+        this.checkpointRepo = checkpointRepo;
+        this.dispenseEngine = dispenseEngine;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.journal = new InventoryJournal(Path.of(journalPath));
+    }
+
+    /**
+     * Replays journal records the database has not seen yet, then starts a fresh journal.
+     */
+    @PostConstruct
+    public void recover() {
+        long checkpoint = checkpointRepo.findById(CHECKPOINT_ID).map(InventoryCheckpoint::getLastSequence).orElse(0L);
+        InventoryJournal.Replay replay;
+        synchronized (journal) {
+            replay = journal.replay(checkpoint);
+        }
+        if (replay.lastSequence() > checkpoint) {
+            log.info("Replaying {} inventory journal records after sequence {}", replay.committed().size(), checkpoint);
+            persist(replay.committed(), replay.lastSequence());
+        }
+        synchronized (journal) {
+            journal.truncate();
+        }
+        checkpointedSequence = replay.lastSequence();
+    }
+
+    @Override
+    public List<ATMAllocation> loadAllocations(Long atmId) {
+        Cassettes cassettes = cassettes(atmId);
+        return cassettes == null ? List.of() : cassettes.snapshot(true);
+    }
+
+    @Override
+    public Map<Integer, Integer> dispense(Long atmId, double amount, List<ATMAllocation> allocations) {
+        Cassettes cassettes = cassettes(atmId);
+        if (cassettes == null) {
+            return dispenseEngine.calculate(amount, List.of());
+        }
+
+        Map<Integer, Integer> dispensed = cassettes.reserve(amount, dispenseEngine);
+        track(atmId, cassettes, dispensed);
+        return dispensed;
+    }
+
+    @Override
+    public void remove(Long atmId, Map<Integer, Integer> dispensed, List<ATMAllocation> allocations) {
+        Cassettes cassettes = cassettes(atmId);
+        if (cassettes == null) {
+            throw new OptimisticLockingFailureException("ATM " + atmId + " has no cassettes");
+        }
+        cassettes.reserve(dispensed);
+        track(atmId, cassettes, dispensed);
+    }
+
+    /**
+     * Journals a reservation before the current transaction commits, and commits or releases it afterwards.
+     */
+    private void track(Long atmId, Cassettes cassettes, Map<Integer, Integer> dispensed) {
+        Map<Long, Integer> notes = cassettes.byDenominationId(dispensed);
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            long sequence = journalDispense(atmId, notes);
+            cassettes.commit(dispensed);
+            journalCommit(new InventoryJournal.Entry(sequence, atmId, notes));
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private long sequence = -1;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                // A withdrawal can only commit once its cassette change is durable
+                sequence = journalDispense(atmId, notes);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    cassettes.commit(dispensed);
+                    journalCommit(new InventoryJournal.Entry(sequence, atmId, notes));
+                    return;
+                }
+                cassettes.release(dispensed);
+                if (sequence >= 0) {
+                    journalAbort(sequence);
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes committed cassette changes up to the oldest in-flight record to ATM_ALLOCATION together
+     * with the new checkpoint. Records committed after an older one that is still in flight wait for
+     * a later run, since replay after a crash skips everything up to the checkpoint. Failed batches
+     * are kept and retried on the next run.
+     */
+    @Scheduled(fixedDelayString = "${atm.inventory.flush-interval-ms:200}")
+    public synchronized void flush() {
+        long watermark;
+        synchronized (journal) {
+            watermark = inFlight.isEmpty() ? journal.lastSequence() : inFlight.first() - 1;
+        }
+        // Drained after reading the watermark: every record at or below it is already queued
+        for (InventoryJournal.Entry entry; (entry = committed.poll()) != null; ) {
+            pending.put(entry.sequence(), entry);
+        }
+
+        SortedMap<Long, InventoryJournal.Entry> due = pending.headMap(watermark, true);
+        if (due.isEmpty() && watermark == checkpointedSequence) {
+            return;
+        }
+
+        List<InventoryJournal.Entry> batch = new ArrayList<>(due.values());
+        try {
+            persist(batch, watermark);
+        } catch (RuntimeException e) {
+            log.error("Inventory write-behind failed for {} records, will retry", batch.size(), e);
+            return;
+        }
+        due.clear();
+        checkpointedSequence = watermark;
+
+        synchronized (journal) {
+            if (inFlight.isEmpty() && pending.isEmpty() && journal.lastSequence() == watermark
+                    && journal.size() > COMPACT_THRESHOLD_BYTES) {
+                journal.truncate();
+            }
+        }
+    }
+
+    /**
+     * Flushes pending changes and drops the ATM's holder, so the next withdrawal reloads its
+     * counts from the database (e.g. after a cassette refill).
+     */
+    public void reload(Long atmId) {
+        flush();
+        atms.remove(atmId);
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        flush();
+        synchronized (journal) {
+            if (inFlight.isEmpty() && pending.isEmpty()) {
+                journal.truncate();
+            }
+            journal.close();
+        }
+    }
+
+    private Cassettes cassettes(Long atmId) {
+        Cassettes cassettes = atms.get(atmId);
+        if (cassettes != null) {
+            return cassettes;
+        }
+        List<ATMAllocation> allocations = atmAllocationRepo.findWithAtmAndDenominationByAtmId(atmId);
+        if (allocations.isEmpty()) {
+            return null;
+        }
+        return atms.computeIfAbsent(atmId, id -> new Cassettes(allocations));
+    }
+
+    private long journalDispense(Long atmId, Map<Long, Integer> notes) {
+        synchronized (journal) {
+            long sequence = journal.appendDispense(atmId, notes);
+            inFlight.add(sequence);
+            return sequence;
+        }
+    }
+
+    private void journalCommit(InventoryJournal.Entry entry) {
+        // Queued before it leaves the in-flight set, so a flush never checkpoints past an unqueued record
+        committed.add(entry);
+        synchronized (journal) {
+            inFlight.remove(entry.sequence());
+        }
+    }
+
+    private void journalAbort(long sequence) {
+        synchronized (journal) {
+            try {
+                journal.appendAbort(sequence);
+            } catch (RuntimeException e) {
+                // Replay would re-apply this dispense; skipping it via the checkpoint is the safer outcome
+                log.error("Cannot journal abort of inventory record {}", sequence, e);
+            }
+            inFlight.remove(sequence);
+        }
+    }
+
+    private void persist(List<InventoryJournal.Entry> entries, long checkpoint) {
+        Map<Long, Map<Long, Integer>> deltas = new TreeMap<>();
+        for (InventoryJournal.Entry entry : entries) {
+            Map<Long, Integer> atmDeltas = deltas.computeIfAbsent(entry.atmId(), id -> new TreeMap<>());
+            entry.notesByDenominationId().forEach((id, qty) -> atmDeltas.merge(id, qty, Integer::sum));
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            deltas.forEach(atmAllocationRepo::decrementCounts);
+            checkpointRepo.save(new InventoryCheckpoint(CHECKPOINT_ID, checkpoint));
+        });
+    }
+
+    /**
+     * Single-writer state of one ATM. {@code available} includes reservations of in-flight
+     * withdrawals; {@code committed} only reflects committed ones.
+     */
+    private static final class Cassettes {
+
+        private final ATM atm;
+        private final Denomination[] denominations;
+        private final int[] available;
+        private final int[] committed;
+
+        Cassettes(List<ATMAllocation> allocations) {
+            List<ATMAllocation> sorted = new ArrayList<>(allocations);
+            sorted.sort(Comparator.comparing((ATMAllocation a) -> a.getDenomination().getValue()).reversed());
+
+            this.atm = sorted.get(0).getAtm();
+            this.denominations = new Denomination[sorted.size()];
+            this.available = new int[sorted.size()];
+            for (int i = 0; i < sorted.size(); i++) {
+                denominations[i] = sorted.get(i).getDenomination();
+                available[i] = sorted.get(i).getQuantity() == null ? 0 : sorted.get(i).getQuantity();
+            }
+            this.committed = available.clone();
+        }
+
+        synchronized List<ATMAllocation> snapshot(boolean committedOnly) {
+            int[] counts = committedOnly ? committed : available;
+            List<ATMAllocation> allocations = new ArrayList<>(denominations.length);
+            for (int i = 0; i < denominations.length; i++) {
+                ATMAllocation allocation = new ATMAllocation();
+                allocation.setAtm(atm);
+                allocation.setDenomination(denominations[i]);
+                allocation.setQuantity(counts[i]);
+                allocations.add(allocation);
+            }
+            return allocations;
+        }
+
+        synchronized Map<Integer, Integer> reserve(double amount, DispenseEngine engine) {
+            Map<Integer, Integer> dispensed = engine.calculate(amount, snapshot(false));
+            apply(available, dispensed, -1);
+            return dispensed;
+        }
+
+        synchronized void reserve(Map<Integer, Integer> dispensed) {
+            for (int i = 0; i < denominations.length; i++) {
+                Integer qty = dispensed.get(denominations[i].getValue().intValue());
+                if (qty != null && qty > available[i]) {
+                    throw new OptimisticLockingFailureException("ATM " + atm.getId() + " no longer holds "
+                            + qty + " notes of denomination " + denominations[i].getId());
+                }
+            }
+            apply(available, dispensed, -1);
+        }
+
+        synchronized void release(Map<Integer, Integer> dispensed) {
+            apply(available, dispensed, 1);
+        }
+
+        synchronized void commit(Map<Integer, Integer> dispensed) {
+            apply(committed, dispensed, -1);
+        }
+
+        Map<Long, Integer> byDenominationId(Map<Integer, Integer> dispensed) {
+            Map<Long, Integer> notes = new TreeMap<>();
+            for (Denomination denomination : denominations) {
+                Integer qty = dispensed.get(denomination.getValue().intValue());
+                if (qty != null && qty > 0) {
+                    notes.put(denomination.getId(), qty);
+                }
+            }
+            return notes;
+        }
+
+        private void apply(int[] counts, Map<Integer, Integer> dispensed, int sign) {
+            for (int i = 0; i < denominations.length; i++) {
+                Integer qty = dispensed.get(denominations[i].getValue().intValue());
+                if (qty != null) {
+                    counts[i] += sign * qty;
+                }
+            }
+        }
+    }
+}
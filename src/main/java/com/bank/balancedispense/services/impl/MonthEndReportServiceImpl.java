@@ -0,0 +1,375 @@
+package com.bank.balancedispense.services.impl;
+
+import com.bank.balancedispense.common.Constants;
+import com.bank.balancedispense.dto.MonthEndReportStatus;
+import com.bank.balancedispense.dto.MonthEndReportStatus.State;
+import com.bank.balancedispense.dto.PartitionTiming;
+import com.bank.balancedispense.exceptions.ReportAlreadyRunningException;
+import com.bank.balancedispense.repository.ClientAccountRepository;
+import com.bank.balancedispense.repository.ClientAccountRepositoryCustom.BalanceTotal;
+import com.bank.balancedispense.repository.ClientPositionRepository;
+import com.bank.balancedispense.services.MonthEndReportService;
+import com.bank.balancedispense.util.CurrencyConversionUtil;
+import com.bank.balancedispense.util.RateVersion;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Builds the month-end report on a fork-join pool.
+ * <p>
+ * The client-ID space is cut into ranges of {@code atm.report.month-end.range-size} IDs, widened so there
+ * are never more than {@value #MAX_PARTITIONS} ranges, and the task over all ranges is halved until each
+ * task holds one range. A range is summed per account type and currency in SQL, in its own read-only
+ * transaction (and so on its own connection). The sums are converted to ZAR with one rate snapshot taken
+ * at the start of the run, so every range uses the same rates even if they change meanwhile. Each range
+ * writes its clients to a part file and returns its totals; totals are added up as the tasks join, and
+ * the part files are concatenated in client-ID order into the report. A range without clients writes no
+ * part file. Progress and the timing of every finished range can be read while the run goes on.
+ */
+@Slf4j
+@Service
+public class MonthEndReportServiceImpl implements MonthEndReportService {
+
+    private static final String[] HEADER = {"CLIENT_ID", "LOAN_BALANCE_ZAR", "TRANSACTIONAL_BALANCE_ZAR",
+            "OTHER_BALANCE_ZAR", "NET_POSITION_ZAR", "TOTAL_BALANCE_ZAR"};
+    /** Sparse or very large client-ID spaces widen the ranges rather than adding tasks. */
+    private static final int MAX_PARTITIONS = 1024;
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'")
+            .withZone(ZoneOffset.UTC);
+
+    private final ClientAccountRepository accountRepo;
+    private final ClientPositionRepository positionRepo;
+    private final CurrencyConversionUtil currencyUtil;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Path outputDir;
+    private final int rangeSize;
+    private final int parallelism;
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "month-end-report");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Run current;
+    private volatile Path latestReport;
+
+    public MonthEndReportServiceImpl(ClientAccountRepository accountRepo,
+                                     ClientPositionRepository positionRepo,
+                                     CurrencyConversionUtil currencyUtil,
+                                     PlatformTransactionManager transactionManager,
+                                     @Value("${atm.report.month-end.output-dir:data/reports}") String outputDir,
+                                     @Value("${atm.report.month-end.range-size:10000}") int rangeSize,
+                                     @Value("${atm.report.month-end.parallelism:0}") int parallelism) {
+        this.accountRepo = accountRepo;
+        this.positionRepo = positionRepo;
+        this.currencyUtil = currencyUtil;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.outputDir = Path.of(outputDir);
+        this.rangeSize = rangeSize;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public synchronized MonthEndReportStatus start(Instant asOf) {
+        if (current != null && current.state == State.RUNNING) {
+            throw new ReportAlreadyRunningException("A month-end report is already running");
+        }
+
+        Optional<long[]> range = positionRepo.clientIdRange();
+        long[] bounds = range.orElse(new long[]{0, 0});
+        long span = range.isEmpty() ? 0 : bounds[1] - bounds[0] + 1;
+        long rangeWidth = Math.max(rangeSize, ceilDiv(span, MAX_PARTITIONS));
+        int partitions = (int) ceilDiv(span, rangeWidth);
+        Run run = new Run(asOf, currencyUtil.snapshotAsOf(asOf), bounds[0], bounds[1], rangeWidth, partitions,
+                outputDir.resolve(".month-end-" + System.currentTimeMillis()));
+        current = run;
+        log.info("Starting month-end report as of {} over {} client-ID ranges", asOf, partitions);
+        coordinator.execute(() -> execute(run));
+        return run.status();
+    }
+
+    @Override
+    public synchronized Optional<MonthEndReportStatus> status() {
+        return Optional.ofNullable(current).map(Run::status);
+    }
+
+    @Override
+    public Optional<Path> latestReport() {
+        return Optional.ofNullable(latestReport);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        coordinator.shutdownNow();
+    }
+
+    private void execute(Run run) {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(parallelism, run.partitions)));
+        try {
+            Files.createDirectories(run.partsDir);
+            Totals totals = run.partitions == 0 ? Totals.EMPTY : pool.invoke(new RangeTask(run, 0, run.partitions));
+            Path report = merge(run);
+            latestReport = report;
+            run.complete(totals, report.getFileName().toString());
+            log.info("Month-end report as of {} written to {}: {} clients, {} ranges in {} ms",
+                    run.asOf, report, totals.clients(), run.partitions, run.elapsedMillis);
+        } catch (IOException | RuntimeException e) {
+            log.error("Month-end report as of {} failed", run.asOf, e);
+            // The pool rethrows a task's exception wrapped in a copy of itself
+            Throwable cause = e;
+            while (cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            run.fail(cause);
+        } finally {
+            pool.shutdown();
+            cleanUp(run);
+        }
+    }
+
+    /**
+     * Halves the ranges it was given until it holds a single one, then processes that range.
+     */
+    private final class RangeTask extends RecursiveTask<Totals> {
+
+        private final Run run;
+        private final int firstRange;
+        private final int ranges;
+
+        RangeTask(Run run, int firstRange, int ranges) {
+            this.run = run;
+            this.firstRange = firstRange;
+            this.ranges = ranges;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (ranges == 1) {
+                return processRange(run, firstRange);
+            }
+            int half = ranges / 2;
+            RangeTask left = new RangeTask(run, firstRange, half);
+            left.fork();
+            Totals right = new RangeTask(run, firstRange + half, ranges - half).compute();
+            return left.join().plus(right);
+        }
+    }
+
+    /**
+     * Converts and writes the clients of one range, and returns the range's totals.
+     */
+    private Totals processRange(Run run, int range) {
+        long started = System.nanoTime();
+        long from = run.minClientId + range * run.rangeWidth;
+        long to = run.maxClientId - from < run.rangeWidth ? run.maxClientId : from + run.rangeWidth - 1;
+
+        List<BalanceTotal> rows = readOnlyTransaction.execute(status -> accountRepo.findBalanceTotals(from, to));
+        Totals totals = Totals.EMPTY;
+        if (rows.isEmpty()) {
+            run.rangeFinished(new PartitionTiming(from, to, 0, (System.nanoTime() - started) / 1_000_000));
+            return totals;
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(run.partFile(range), StandardCharsets.UTF_8)) {
+            int i = 0;
+            while (i < rows.size()) {
+                long clientId = rows.get(i).clientId();
+                BigDecimal loan = BigDecimal.ZERO;
+                BigDecimal transactional = BigDecimal.ZERO;
+                BigDecimal other = BigDecimal.ZERO;
+                // Rows are ordered by client, so each client's rows are consecutive
+                for (; i < rows.size() && rows.get(i).clientId() == clientId; i++) {
+                    BalanceTotal row = rows.get(i);
+                    BigDecimal zar = row.balance().multiply(run.rates.apply(row.currencyCode()).multiplier());
+                    if (Constants.LOAN_ACCOUNT_TYPES.contains(row.accountTypeCode())) {
+                        loan = loan.add(zar);
+                    } else if (row.transactional()) {
+                        transactional = transactional.add(zar);
+                    } else {
+                        other = other.add(zar);
+                    }
+                }
+
+                Totals client = new Totals(1, round(loan), round(transactional), round(other));
+                out.write(ReportExportServiceImpl.csvLine(clientId, client.loan(), client.transactional(),
+                        client.other(), client.net(), client.total()));
+                totals = totals.plus(client);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+        run.rangeFinished(new PartitionTiming(from, to, (int) totals.clients(), elapsedMillis));
+        log.debug("Month-end report range {}..{}: {} clients in {} ms", from, to, totals.clients(), elapsedMillis);
+        return totals;
+    }
+
+    /**
+     * Concatenates the part files in range order behind the header, then moves the result into place.
+     */
+    private Path merge(Run run) throws IOException {
+        Path merged = run.partsDir.resolve("report.csv");
+        try (OutputStream out = Files.newOutputStream(merged)) {
+            out.write(ReportExportServiceImpl.csvLine((Object[]) HEADER).getBytes(StandardCharsets.UTF_8));
+            for (int range = 0; range < run.partitions; range++) {
+                if (Files.exists(run.partFile(range))) {
+                    Files.copy(run.partFile(range), out);
+                }
+            }
+        }
+        Path report = outputDir.resolve("month-end-" + FILE_TIME.format(run.asOf) + ".csv");
+        return Files.move(merged, report, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void cleanUp(Run run) {
+        try {
+            for (int range = 0; range < run.partitions; range++) {
+                Files.deleteIfExists(run.partFile(range));
+            }
+            Files.deleteIfExists(run.partsDir.resolve("report.csv"));
+            Files.deleteIfExists(run.partsDir);
+        } catch (IOException e) {
+            log.warn("Could not remove the part files in {}", run.partsDir, e);
+        }
+    }
+
+    private static long ceilDiv(long dividend, long divisor) {
+        return dividend / divisor + (dividend % divisor == 0 ? 0 : 1);
+    }
+
+    private static BigDecimal round(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * ZAR totals of one client or a set of ranges.
+     */
+    private record Totals(long clients, BigDecimal loan, BigDecimal transactional, BigDecimal other) {
+
+        static final Totals EMPTY = new Totals(0, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO);
+
+        Totals plus(Totals o) {
+            return new Totals(clients + o.clients, loan.add(o.loan), transactional.add(o.transactional), other.add(o.other));
+        }
+
+        /** Loan plus transactional balance, as in sql/aggregate_financial_position.sql. */
+        BigDecimal net() {
+            return loan.add(transactional);
+        }
+
+        BigDecimal total() {
+            return net().add(other);
+        }
+    }
+
+    /**
+     * State of one run. Ranges report into it from the pool threads; status requests read it.
+     */
+    private static final class Run {
+
+        final Instant asOf;
+        final Function<String, RateVersion> rates;
+        final long minClientId;
+        final long maxClientId;
+        final long rangeWidth;
+        final int partitions;
+        final Path partsDir;
+        final Instant startedAt = Instant.now();
+        final long startedNanos = System.nanoTime();
+        final AtomicInteger completedPartitions = new AtomicInteger();
+        final AtomicLong clients = new AtomicLong();
+        final Queue<PartitionTiming> timings = new ConcurrentLinkedQueue<>();
+
+        volatile State state = State.RUNNING;
+        volatile long elapsedMillis;
+        volatile Totals totals;
+        volatile String fileName;
+        volatile String error;
+
+        Run(Instant asOf, Function<String, RateVersion> rates, long minClientId, long maxClientId, long rangeWidth,
+            int partitions, Path partsDir) {
+            this.asOf = asOf;
+            this.rates = rates;
+            this.minClientId = minClientId;
+            this.maxClientId = maxClientId;
+            this.rangeWidth = rangeWidth;
+            this.partitions = partitions;
+            this.partsDir = partsDir;
+        }
+
+        Path partFile(int range) {
+            return partsDir.resolve("part-" + range + ".csv");
+        }
+
+        void rangeFinished(PartitionTiming timing) {
+            timings.add(timing);
+            clients.addAndGet(timing.clients());
+            completedPartitions.incrementAndGet();
+        }
+
+        void complete(Totals totals, String fileName) {
+            this.totals = totals;
+            this.fileName = fileName;
+            finish(State.COMPLETED);
+        }
+
+        void fail(Throwable cause) {
+            this.error = cause.getMessage();
+            finish(State.FAILED);
+        }
+
+        private void finish(State state) {
+            this.elapsedMillis = (System.nanoTime() - startedNanos) / 1_000_000;
+            this.state = state;
+        }
+
+        MonthEndReportStatus status() {
+            State state = this.state;
+            long elapsed = state == State.RUNNING ? (System.nanoTime() - startedNanos) / 1_000_000 : elapsedMillis;
+            Totals done = state == State.COMPLETED ? totals : null;
+            List<PartitionTiming> sorted = timings.stream()
+                    .sorted(Comparator.comparingLong(PartitionTiming::fromClientId))
+                    .toList();
+            return new MonthEndReportStatus(state, asOf, startedAt, elapsed, partitions, completedPartitions.get(),
+                    clients.get(),
+                    done == null ? null : done.loan(),
+                    done == null ? null : done.transactional(),
+                    done == null ? null : done.other(),
+                    done == null ? null : done.net(),
+                    done == null ? null : done.total(),
+                    done == null ? null : fileName,
+                    sorted, error);
+        }
+    }
+}
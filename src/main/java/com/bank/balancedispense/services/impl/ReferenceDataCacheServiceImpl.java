@@ -0,0 +1,38 @@
+package com.bank.balancedispense.services.impl;
+
+import com.bank.balancedispense.entities.AccountType;
+import com.bank.balancedispense.entities.Currency;
+import com.bank.balancedispense.entities.CurrencyConversionRate;
+import com.bank.balancedispense.entities.Denomination;
+import com.bank.balancedispense.services.ReferenceDataCacheService;
+import com.bank.balancedispense.util.CurrencyConversionUtil;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Evicts the reference entities from the Hibernate second-level cache and reloads the rate snapshot.
+ * Changes made through JPA (such as the rate admin endpoint) already update the cache; this is for
+ * changes Hibernate does not see.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ReferenceDataCacheServiceImpl implements ReferenceDataCacheService {
+
+    private static final List<Class<?>> REFERENCE_ENTITIES =
+            List.of(Currency.class, AccountType.class, Denomination.class, CurrencyConversionRate.class);
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final CurrencyConversionUtil currencyUtil;
+
+    @Override
+    public void evictAll() {
+        REFERENCE_ENTITIES.forEach(entityManagerFactory.getCache()::evict);
+        currencyUtil.refresh();
+        log.info("Evicted cached reference data");
+    }
+}
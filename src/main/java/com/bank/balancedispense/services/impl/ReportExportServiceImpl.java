@@ -0,0 +1,130 @@
+package com.bank.balancedispense.services.impl;
+
+import com.bank.balancedispense.repository.ClientPositionRepository;
+import com.bank.balancedispense.services.ReportExportService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Streams the reports row by row from a JDBC cursor to the output stream.
+ * Only the current row is held in memory, so memory use does not grow with the number of clients.
+ */
+@Slf4j
+@Service
+public class ReportExportServiceImpl implements ReportExportService {
+
+    private static final byte[] NEWLINE = {'\n'};
+    private static final String CSV_LINE_END = "\r\n";
+
+    // Column names of the SQL reports, with the client ID first
+    private static final String[] POSITION_HEADER = {"CLIENT_ID", "CLIENT", "LOAN_BALANCE", "TRANSACTIONAL_BALANCE", "NET_POSITION"};
+    private static final String[] TOP_BALANCE_HEADER = {"CLIENT_ID", "SURNAME", "CLIENT_ACCOUNT_NUMBER", "DISPLAY_BALANCE"};
+
+    private final ClientPositionRepository positionRepo;
+    private final ObjectMapper objectMapper;
+    private final int fetchSize;
+
+    public ReportExportServiceImpl(ClientPositionRepository positionRepo,
+                                   ObjectMapper objectMapper,
+                                   @Value("${atm.report.export.fetch-size:1000}") int fetchSize) {
+        this.positionRepo = positionRepo;
+        this.objectMapper = objectMapper;
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public void export(Report report, Format format, OutputStream out) throws IOException {
+        log.info("Exporting {} report as {}", report, format);
+        long started = System.nanoTime();
+        long[] rows = {0};
+
+        try {
+            switch (report) {
+                case FINANCIAL_POSITION -> {
+                    writeHeader(out, format, POSITION_HEADER);
+                    positionRepo.streamPositionReport(fetchSize, row -> {
+                        writeRow(out, format, POSITION_HEADER, row.clientId(), row.client(), row.loanBalance(),
+                                row.transactionalBalance(), row.netPosition());
+                        rows[0]++;
+                    });
+                }
+                case TOP_TRANSACTIONAL_BALANCES -> {
+                    writeHeader(out, format, TOP_BALANCE_HEADER);
+                    positionRepo.streamTopBalances(fetchSize, row -> {
+                        writeRow(out, format, TOP_BALANCE_HEADER, row.clientId(), row.surname(), row.accountNumber(), row.balance());
+                        rows[0]++;
+                    });
+                }
+            }
+        } catch (UncheckedIOException e) {
+            // Usually the client went away; the JDBC cursor is already closed
+            throw e.getCause();
+        }
+        out.flush();
+
+        log.info("Exported {} rows of the {} report in {} ms", rows[0], report, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private static void writeHeader(OutputStream out, Format format, String[] columns) throws IOException {
+        if (format == Format.CSV) {
+            out.write(csvLine((Object[]) columns).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Writes the values as a CSV line, or as a JSON object keyed by the same column names as the CSV header.
+     */
+    private void writeRow(OutputStream out, Format format, String[] columns, Object... values) {
+        try {
+            if (format == Format.CSV) {
+                out.write(csvLine(values).getBytes(StandardCharsets.UTF_8));
+            } else {
+                Map<String, Object> fields = new LinkedHashMap<>();
+                for (int i = 0; i < columns.length; i++) {
+                    fields.put(columns[i], values[i]);
+                }
+                out.write(objectMapper.writeValueAsBytes(fields));
+                out.write(NEWLINE);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String csvLine(Object... values) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            Object value = values[i];
+            if (value instanceof BigDecimal number) {
+                line.append(number.toPlainString());
+            } else if (value != null) {
+                appendCsvField(line, value.toString());
+            }
+        }
+        return line.append(CSV_LINE_END).toString();
+    }
+
+    /**
+     * Quotes the field if it contains a separator, quote or line break, doubling embedded quotes.
+     */
+    private static void appendCsvField(StringBuilder line, String field) {
+        if (field.chars().noneMatch(c -> c == ',' || c == '"' || c == '\r' || c == '\n')) {
+            line.append(field);
+            return;
+        }
+        line.append('"').append(field.replace("\"", "\"\"")).append('"');
+    }
+}
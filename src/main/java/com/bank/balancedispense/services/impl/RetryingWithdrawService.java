@@ -0,0 +1,98 @@
+package com.bank.balancedispense.services.impl;
+
+import com.bank.balancedispense.dto.WithdrawRequest;
+import com.bank.balancedispense.dto.WithdrawResponseWrapper;
+import com.bank.balancedispense.services.WithdrawService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * WithdrawService that retries withdrawals which lost an optimistic race
+ * (a @Version conflict or a cassette emptied by a concurrent withdrawal).
+ * <p>
+ * Every attempt runs {@link WithdrawServiceImpl} in its own transaction, so the ATM, allocations
+ * and account are re-read and the notes recalculated from fresh data. Attempts are separated by
+ * exponential backoff with full jitter. Retries are counted in {@code atm.withdraw.retries};
+ * requests that still fail after the last attempt are counted in {@code atm.withdraw.retries.exhausted}.
+ */
+@Slf4j
+@Primary
+@Service
+public class RetryingWithdrawService implements WithdrawService {
+
+    private final WithdrawServiceImpl delegate;
+    private final int maxAttempts;
+    private final long backoffMillis;
+    private final long maxBackoffMillis;
+    private final Counter retries;
+    private final Counter exhausted;
+
+    public RetryingWithdrawService(WithdrawServiceImpl delegate,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${atm.withdraw.retry.max-attempts:3}") int maxAttempts,
+                                   @Value("${atm.withdraw.retry.backoff-ms:10}") long backoffMillis,
+                                   @Value("${atm.withdraw.retry.max-backoff-ms:200}") long maxBackoffMillis) {
+        this.delegate = delegate;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMillis = backoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.retries = Counter.builder("atm.withdraw.retries")
+                .description("Withdrawal attempts retried after an optimistic locking conflict")
+                .register(meterRegistry);
+        this.exhausted = Counter.builder("atm.withdraw.retries.exhausted")
+                .description("Withdrawals that still conflicted after the last attempt")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public WithdrawResponseWrapper withdraw(WithdrawRequest request) {
+        return withRetry(request, () -> delegate.withdraw(request));
+    }
+
+    @Override
+    public WithdrawResponseWrapper withdraw(WithdrawRequest request, String idempotencyKey) {
+        return withRetry(request, () -> delegate.withdraw(request, idempotencyKey));
+    }
+
+    private WithdrawResponseWrapper withRetry(WithdrawRequest request, Supplier<WithdrawResponseWrapper> attemptWithdrawal) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return attemptWithdrawal.get();
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= maxAttempts) {
+                    exhausted.increment();
+                    log.warn("Withdrawal still conflicting after {} attempts: atmId={}, account={}",
+                            attempt, request.atmId(), request.accountNumber());
+                    throw e;
+                }
+                retries.increment();
+                log.debug("Withdrawal attempt {} conflicted, retrying: {}", attempt, e.getMessage());
+                backoff(attempt, e);
+            }
+        }
+    }
+
+    /**
+     * Sleeps for a random time between 0 and the exponential bound for this attempt.
+     */
+    private void backoff(int attempt, OptimisticLockingFailureException cause) {
+        long bound = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempt - 1, 20));
+        if (bound <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw cause;
+        }
+    }
+}
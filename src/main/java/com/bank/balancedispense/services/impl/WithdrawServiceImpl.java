@@ -6,15 +6,22 @@ import com.bank.balancedispense.dto.*;
 import com.bank.balancedispense.entities.*;
 import com.bank.balancedispense.exceptions.*;
 import com.bank.balancedispense.repository.*;
+import com.bank.balancedispense.services.AtmInventoryService;
+import com.bank.balancedispense.services.ClientPositionService;
+import com.bank.balancedispense.services.ClientPositionService.BalanceChange;
 import com.bank.balancedispense.services.WithdrawService;
+import com.bank.balancedispense.util.ClientBalanceVersions;
 import com.bank.balancedispense.util.CurrencyConversionUtil;
-import com.bank.balancedispense.util.NoteCalculator;
+import com.bank.balancedispense.util.DispensabilityIndex;
+import com.bank.balancedispense.util.DispenseEngine;
+import com.bank.balancedispense.util.RateVersion;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -30,10 +37,14 @@ import java.util.stream.Collectors;
 public class WithdrawServiceImpl implements WithdrawService {
 
     private final ClientAccountRepository accountRepo;
-    private final ATMAllocationRepository atmAllocationRepo;
+    private final AtmInventoryService atmInventory;
     private final ATMRepository atmRepo;
-    private final ClientRepository clientRepo;
     private final CurrencyConversionUtil currencyUtil;
+    private final DispenseEngine dispenseEngine;
+    private final DispensabilityIndex dispensabilityIndex;
+    private final IdempotencyRecordStore idempotencyRecords;
+    private final ClientBalanceVersions balanceVersions;
+    private final ClientPositionService positionService;
 
     /**
      * Executes a withdrawal from a specified ATM and client account.
@@ -45,44 +56,73 @@ public class WithdrawServiceImpl implements WithdrawService {
         log.info("Starting withdrawal for clientId={}, account={}, amount={}, atmId={}",
                 request.clientId(), request.accountNumber(), request.amount(), request.atmId());
 
-        // Validate ATM is active
-        ATM atm = atmRepo.findById(request.atmId())
-                .filter(ATM::isActive)
-                .orElseThrow(() -> new ATMNotFoundException(ErrorMessage.ATM_NOT_FOUND.get()));
+        // An indexed ATM was found active before: reject amounts it cannot pay out without any query
+        rejectIfNotDispensable(request.atmId(), request.amount());
+
+        // Load the ATM with its allocations and denominations (and index the ATM on first use)
+        long ticket = dispensabilityIndex.beginRead(request.atmId());
+        List<ATMAllocation> allocations = atmInventory.loadAllocations(request.atmId());
+        ATM atm = findActiveATM(request.atmId(), allocations);
+        dispensabilityIndex.register(atm.getId(), ticket, allocations);
 
-        // Lookup account by client and account number
-        ClientAccount account = accountRepo.findByClient_IdAndAccountNumber(request.clientId(), request.accountNumber())
+        // The entry may have only just been registered; check again before touching the account
+        rejectIfNotDispensable(atm.getId(), request.amount());
 
+        // Lookup account with its client, type and currency by client and account number
+        ClientAccount account = accountRepo.findWithDetailsByClientIdAndAccountNumber(request.clientId(), request.accountNumber())
                 .orElseThrow(() -> new AccountNotFoundException(ErrorMessage.ACCOUNT_NOT_FOUND.get()));
 
         // Check if account has enough funds (consider overdraft)
         validateFunds(account, request.amount());
 
-        // Get available ATM allocations
-        List<ATMAllocation> allocations = atmAllocationRepo.findByAtm_Id(request.atmId());
+        // Debit the account
+        BigDecimal balance = debitAccount(account, request.amount());
+        positionService.applyBalanceChanges(List.of(
+                new BalanceChange(request.clientId(), account.getAccountType(), BigDecimal.valueOf(request.amount()).negate())));
+        balanceVersions.recordChange(request.clientId());
 
-        // Calculate optimal notes to dispense
+        // Pick the notes and remove them from the ATM inventory
         Map<Integer, Integer> dispensed;
         try {
-            dispensed = NoteCalculator.calculate(request.amount(), allocations);
+            dispensed = atmInventory.dispense(atm.getId(), request.amount(), allocations);
         } catch (NoteCalculationException e) {
-            Optional<Integer> fallback = NoteCalculator.suggestFallbackAmount(request.amount(), allocations);
-            throw new NoteCalculationException(ErrorMessage.NOTE_CALCULATION_FAILED.get(), fallback.orElse(null));
+            List<DispenseAlternative> alternatives = dispenseEngine.suggestAlternatives(request.amount(), allocations);
+            throw new NoteCalculationException(ErrorMessage.NOTE_CALCULATION_FAILED.get(), alternatives);
         }
+        dispensabilityIndex.recordDispense(atm.getId(), dispensed);
 
-        // Update ATM inventory and account balance
-        updateATMInventory(allocations, dispensed);
-        updateAccountBalance(account, request.amount());
+        log.info("Withdrawal successful. Dispensed={}, New balance={}", dispensed, balance);
+        return toResponse(account, balance, allocations, dispensed);
+    }
+
+    /**
+     * Executes the withdrawal and records its response for the idempotency key.
+     * A committed withdrawal therefore always has its record.
+     */
+    @Override
+    @Transactional
+    public WithdrawResponseWrapper withdraw(WithdrawRequest request, String idempotencyKey) {
+        WithdrawResponseWrapper response = withdraw(request);
+        idempotencyRecords.save(idempotencyKey, request, response);
+        return response;
+    }
 
-        // Get client details
-        Client client = clientRepo.findById(request.clientId())
-                .orElseThrow(() -> new AccountNotFoundException("Client not found"));
+    /**
+     * Builds the success response for a completed withdrawal. Also used by the batch endpoint.
+     *
+     * @param balance   Account balance after the withdrawal
+     * @param dispensed Note count per denomination value
+     */
+    public WithdrawResponseWrapper toResponse(ClientAccount account, BigDecimal balance,
+                                              List<ATMAllocation> allocations, Map<Integer, Integer> dispensed) {
+        // Client was fetched together with the account
+        Client client = account.getClient();
 
         ClientDto clientDto = new ClientDto(client.getId(), client.getTitle(), client.getName(), client.getSurname());
 
         // Convert to ZAR
-        BigDecimal rate = currencyUtil.getConversionRate(account.getCurrency().getCode());
-        BigDecimal balance = account.getDisplayBalance();
+        RateVersion rateVersion = currencyUtil.rateAsOf(account.getCurrency().getCode(), Instant.now());
+        BigDecimal rate = rateVersion.multiplier();
         BigDecimal zarBalance = balance.multiply(rate);
 
         // Build account DTO
@@ -94,7 +134,8 @@ public class WithdrawServiceImpl implements WithdrawService {
                 rate,
                 balance,
                 zarBalance,
-                BigDecimal.ZERO
+                BigDecimal.ZERO,
+                rateVersion.version()
         );
 
         // Build denomination breakdown
@@ -108,21 +149,40 @@ public class WithdrawServiceImpl implements WithdrawService {
                 .collect(Collectors.toList());
 
         ResultDto result = new ResultDto(true, 200, "Withdrawal completed successfully");
-        log.info("Withdrawal successful. Dispensed={}, New balance={}", dispensed, account.getDisplayBalance());
 
         return new WithdrawResponseWrapper(clientDto, accountDto, denominationDtos, result);
     }
 
+    /**
+     * Resolves the ATM from its fetched allocations. Only an ATM without allocations
+     * needs a separate lookup. Throws ATMNotFoundException if the ATM is missing or inactive.
+     */
+    public ATM findActiveATM(Long atmId, List<ATMAllocation> allocations) {
+        return (allocations.isEmpty() ? atmRepo.findById(atmId) : Optional.of(allocations.get(0).getAtm()))
+                .filter(ATM::isActive)
+                .orElseThrow(() -> new ATMNotFoundException(ErrorMessage.ATM_NOT_FOUND.get()));
+    }
+
+    /**
+     * Throws with the nearest payable amounts if the index knows the ATM cannot pay out the amount.
+     */
+    private void rejectIfNotDispensable(Long atmId, double amount) {
+        if (dispensabilityIndex.check(atmId, amount) == DispensabilityIndex.Verdict.NOT_DISPENSABLE) {
+            throw new NoteCalculationException(ErrorMessage.NOTE_CALCULATION_FAILED.get(),
+                    dispensabilityIndex.alternatives(atmId, amount));
+        }
+    }
+
     /**
      * Validates whether the account has enough funds for withdrawal.
      * Allows overdraft for transactional accounts only.
+     * This is an early check on the loaded balance; {@link #debitAccount} makes the binding one.
      */
     private void validateFunds(ClientAccount acc, double amount) {
-        boolean isTransactional = acc.getAccountType().isTransactional();
-        double allowedLimit = isTransactional ? Constants.OVERDRAFT_LIMIT : 0.0;
+        BigDecimal allowedLimit = allowedLimit(acc);
 
-        double newBalance = acc.getDisplayBalance().doubleValue() - amount;
-        if (newBalance < allowedLimit) {
+        BigDecimal newBalance = acc.getDisplayBalance().subtract(BigDecimal.valueOf(amount));
+        if (newBalance.compareTo(allowedLimit) < 0) {
             log.error("Insufficient funds: balance={}, requested={}, allowedLimit={}",
                     acc.getDisplayBalance(), amount, allowedLimit);
             throw new InsufficientFundsException(ErrorMessage.INSUFFICIENT_FUNDS.get());
@@ -130,20 +190,24 @@ public class WithdrawServiceImpl implements WithdrawService {
     }
 
     /**
-     * Updates ATM allocations by deducting used note quantities.
+     * Lowest balance the account may reach: the overdraft limit for transactional accounts, zero otherwise.
      */
-    private void updateATMInventory(List<ATMAllocation> allocations, Map<Integer, Integer> dispensed) {
-        dispensed.forEach((denVal, qty) -> allocations.stream()
-                .filter(a -> a.getDenomination().getValue().intValue() == denVal)
-                .findFirst()
-                .ifPresent(a -> a.setQuantity(a.getQuantity() - qty)));
+    public static BigDecimal allowedLimit(ClientAccount acc) {
+        return acc.getAccountType().isTransactional() ? BigDecimal.valueOf(Constants.OVERDRAFT_LIMIT) : BigDecimal.ZERO;
     }
 
     /**
-     * Deducts withdrawal amount from the account and persists the change.
+     * Deducts the withdrawal amount with a conditional UPDATE that also enforces the limit,
+     * so concurrent withdrawals cannot take the account past it.
+     * The loaded entity is not modified, so Hibernate does not write the row again.
+     *
+     * @return Balance written by the debit, including concurrent changes made since the account was loaded
      */
-    private void updateAccountBalance(ClientAccount acc, double amount) {
-        acc.setDisplayBalance(acc.getDisplayBalance().subtract(BigDecimal.valueOf(amount)));
-        accountRepo.save(acc);
+    private BigDecimal debitAccount(ClientAccount acc, double amount) {
+        return accountRepo.debit(acc.getAccountNumber(), BigDecimal.valueOf(amount), allowedLimit(acc))
+                .orElseThrow(() -> {
+                    log.error("Insufficient funds at debit: account={}, requested={}", acc.getAccountNumber(), amount);
+                    return new InsufficientFundsException(ErrorMessage.INSUFFICIENT_FUNDS.get());
+                });
     }
 }
@@ -0,0 +1,39 @@
+package com.bank.balancedispense.util;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Keyset position in a balance listing: the sort value and account number of the last account returned.
+ * Clients receive it as an opaque URL-safe string.
+ *
+ * @param sortKey       Balance the transactional listing is ordered by; null for currency accounts,
+ *                      which are ordered by account number alone
+ * @param accountNumber Account number, which breaks ties between equal sort values
+ */
+public record BalanceCursor(BigDecimal sortKey, String accountNumber) {
+
+    public String encode() {
+        String raw = (sortKey == null ? "" : sortKey.toPlainString()) + "|" + accountNumber;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value was not produced by {@link #encode()}
+     */
+    public static BalanceCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            if (separator < 0 || separator == raw.length() - 1) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            BigDecimal sortKey = separator == 0 ? null : new BigDecimal(raw.substring(0, separator));
+            return new BalanceCursor(sortKey, raw.substring(separator + 1));
+        } catch (IllegalArgumentException e) {
+            // Also covers malformed Base64 and NumberFormatException
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.bank.balancedispense.util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cheap versions of each client's balance state, used as ETags by the balance endpoints.
+ * <p>
+ * Clients are hashed onto a fixed number of striped counters, so memory stays constant however
+ * many clients there are. A change to one client also invalidates the others on its stripe, which
+ * only costs them a full response. Every writer of CLIENT_ACCOUNT balances must call
+ * {@link #recordChange(Long)}. The tag also includes the conversion-rate generation, because
+ * ZAR values change with the rates, and a random per-instance prefix. A restart, or another
+ * instance behind the same load balancer, therefore never matches an old tag.
+ */
+@Component
+public class ClientBalanceVersions {
+
+    private final String instance = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    private final AtomicLongArray stripes;
+    private final CurrencyConversionUtil currencyUtil;
+
+    public ClientBalanceVersions(CurrencyConversionUtil currencyUtil,
+                                 @Value("${atm.balance.etag.stripes:4096}") int stripes) {
+        this.currencyUtil = currencyUtil;
+        this.stripes = new AtomicLongArray(stripes);
+    }
+
+    /**
+     * Returns the client's current weak ETag. Take it before reading the balances it will describe:
+     * a change committing in between then yields a tag that is already outdated, never a stale body
+     * under a current tag.
+     */
+    public String etag(Long clientId) {
+        return "W/\"" + instance + "-" + currencyUtil.generation() + "-" + stripes.get(stripe(clientId)) + "\"";
+    }
+
+    /**
+     * Records that the client's balances changed. Inside a transaction the version moves once the
+     * transaction has completed, so readers can't tag the old balances with the new version.
+     * Outside of one it moves immediately.
+     */
+    public void recordChange(Long clientId) {
+        int stripe = stripe(clientId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            stripes.incrementAndGet(stripe);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                // A rolled-back change only costs one full response
+                stripes.incrementAndGet(stripe);
+            }
+        });
+    }
+
+    private int stripe(Long clientId) {
+        return Math.floorMod(Long.hashCode(clientId) * 0x9E3779B9, stripes.length());
+    }
+}
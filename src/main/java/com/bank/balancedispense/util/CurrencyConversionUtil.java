@@ -1,21 +1,47 @@
 package com.bank.balancedispense.util;
 
 import com.bank.balancedispense.entities.CurrencyConversionRate;
+import com.bank.balancedispense.entities.CurrencyConversionRateHistory;
+import com.bank.balancedispense.repository.CurrencyConversionRateHistoryRepository;
 import com.bank.balancedispense.repository.CurrencyConversionRateRepository;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
  * Utility that provides currency-to-ZAR conversion using the database-backed currency conversion rate table.
+ * <p>
+ * Rates are held in memory as an immutable snapshot: per currency, its rate versions from
+ * CURRENCY_CONVERSION_RATE_HISTORY ordered by effective-from time, with ZAR multipliers precomputed.
+ * A currency without history uses its CURRENCY_CONVERSION_RATE row as version 0, in force since the epoch.
+ * Lookups for any instant are a binary search on the current snapshot, without locking or touching the
+ * database. The snapshot is rebuilt and swapped as a whole at startup, every
+ * {@code currency.rate.refresh-interval-ms}, after a rate is changed through the admin endpoint, and
+ * the first time a currency is found missing from it. Further misses on the same snapshot fail without
+ * reloading.
  */
+@Slf4j
 @Component
 @RequiredArgsConstructor
 public class CurrencyConversionUtil {
 
+    /** Distinct missing currencies remembered per snapshot; beyond that, misses wait for the scheduled refresh. */
+    private static final int MAX_REMEMBERED_MISSES = 256;
+
     private final CurrencyConversionRateRepository rateRepo;
+    private final CurrencyConversionRateHistoryRepository historyRepo;
+
+    private volatile RateTable rates = RateTable.EMPTY;
+    private volatile long generation;
 
     /**
      * Returns the ZAR conversion rate for the given currency code.
@@ -24,17 +50,196 @@ public class CurrencyConversionUtil {
      * @return Conversion rate to ZAR as BigDecimal
      */
     public BigDecimal getConversionRate(String currencyCode) {
+        return getConversionRate(currencyCode, Instant.now());
+    }
+
+    /**
+     * Returns the ZAR conversion rate that applied to the currency at the given instant.
+     */
+    public BigDecimal getConversionRate(String currencyCode, Instant asOf) {
+        return rateAsOf(currencyCode, asOf).multiplier();
+    }
+
+    /**
+     * Returns the rate version that applied to the currency at the given instant.
+     * Requests should take one instant up front, so a rate change mid-request does not mix versions.
+     *
+     * @throws IllegalArgumentException if the currency has no rate at that instant
+     * @throws IllegalStateException    if the stored rate cannot be used
+     */
+    public RateVersion rateAsOf(String currencyCode, Instant asOf) {
         if (currencyCode.equalsIgnoreCase("ZAR")) {
-            return BigDecimal.ONE;
+            return RateVersion.ZAR;
+        }
+
+        String code = currencyCode.toUpperCase();
+        RateTable table = rates;
+        if (!table.contains(code) && !table.misses().contains(code)) {
+            table = reloadIfUnchanged(table, code);
+        }
+        return table.rateAsOf(code, asOf);
+    }
+
+    /**
+     * Returns a lookup of the rates that applied at the given instant, bound to the current snapshot.
+     * Conversions of a whole batch through it use the same rates even if a reload swaps the snapshot meanwhile.
+     * Only a currency missing from the snapshot falls back to {@link #rateAsOf}, which reloads at most once per snapshot.
+     */
+    public Function<String, RateVersion> snapshotAsOf(Instant asOf) {
+        RateTable table = rates;
+        return currencyCode -> {
+            String code = currencyCode.toUpperCase();
+            if (code.equals("ZAR")) {
+                return RateVersion.ZAR;
+            }
+            return table.contains(code) ? table.rateAsOf(code, asOf) : rateAsOf(code, asOf);
+        };
+    }
+
+    /**
+     * Returns a number that changes whenever a reload brings in different rates.
+     * Reloads that find the same rates keep it, so it can be part of a cache validator.
+     */
+    public long generation() {
+        return generation;
+    }
+
+    /**
+     * Reloads all rates and their history and swaps in the new snapshot.
+     */
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${currency.rate.refresh-interval-ms:60000}", initialDelayString = "${currency.rate.refresh-interval-ms:60000}")
+    public synchronized void refresh() {
+        RateTable loaded = RateTable.of(rateRepo.findAll(), historyRepo.findAll());
+        if (!loaded.sameRates(rates)) {
+            generation++;
         }
+        rates = loaded;
+        log.debug("Loaded conversion rates for {} currencies", rates.size());
+    }
 
-        CurrencyConversionRate rate = rateRepo.findById(currencyCode.toUpperCase())
-                .orElseThrow(() -> new IllegalArgumentException("Unsupported currency: " + currencyCode));
+    /**
+     * Reloads after a miss, unless another thread already replaced the snapshot that missed.
+     * Rates added without going through the admin endpoint are picked up here. A currency still missing
+     * afterwards is remembered on the new snapshot, so it does not reload again until the next refresh.
+     */
+    private synchronized RateTable reloadIfUnchanged(RateTable missed, String code) {
+        if (rates == missed) {
+            refresh();
+        }
+        RateTable table = rates;
+        if (!table.contains(code) && table.misses().size() < MAX_REMEMBERED_MISSES) {
+            table.misses().add(code);
+        }
+        return table;
+    }
 
-        return switch (rate.getConversionIndicator()) {
-            case "*" -> rate.getRate();
-            case "/" -> BigDecimal.ONE.divide(rate.getRate(), 8, RoundingMode.HALF_UP);
-            default -> throw new IllegalStateException("Invalid conversion indicator for " + currencyCode);
+    /**
+     * Converts a stored rate into its ZAR multiplier, or null if the row cannot be used.
+     */
+    public static BigDecimal multiplier(String conversionIndicator, BigDecimal rate) {
+        if (rate == null || rate.signum() <= 0) {
+            return null;
+        }
+        return switch (conversionIndicator) {
+            case "*" -> rate;
+            case "/" -> BigDecimal.ONE.divide(rate, 8, RoundingMode.HALF_UP);
+            default -> null;
         };
     }
+
+    /**
+     * Immutable rate versions per currency code, and the codes that already missed on this snapshot.
+     */
+    private record RateTable(Map<String, Timeline> currencies, Set<String> misses) {
+
+        static final RateTable EMPTY = new RateTable(Map.of(), Set.of());
+
+        static RateTable of(List<CurrencyConversionRate> current, List<CurrencyConversionRateHistory> history) {
+            Map<String, List<RateVersion>> versions = new HashMap<>();
+            for (CurrencyConversionRateHistory row : history) {
+                String code = row.getCurrencyCode().toUpperCase();
+                versions.computeIfAbsent(code, k -> new ArrayList<>()).add(new RateVersion(code, row.getVersion(),
+                        multiplier(row.getConversionIndicator(), row.getRate()), row.getEffectiveFrom()));
+            }
+            for (CurrencyConversionRate row : current) {
+                String code = row.getCurrencyCode().toUpperCase();
+                if (!versions.containsKey(code)) {
+                    versions.put(code, List.of(new RateVersion(code, 0,
+                            multiplier(row.getConversionIndicator(), row.getRate()), Instant.EPOCH)));
+                }
+            }
+
+            Map<String, Timeline> currencies = new HashMap<>();
+            versions.forEach((code, list) -> currencies.put(code, Timeline.of(list)));
+            return new RateTable(Map.copyOf(currencies), ConcurrentHashMap.newKeySet());
+        }
+
+        boolean contains(String code) {
+            return currencies.containsKey(code);
+        }
+
+        int size() {
+            return currencies.size();
+        }
+
+        boolean sameRates(RateTable other) {
+            if (!currencies.keySet().equals(other.currencies.keySet())) {
+                return false;
+            }
+            return currencies.entrySet().stream()
+                    .allMatch(e -> Arrays.equals(e.getValue().versions(), other.currencies.get(e.getKey()).versions()));
+        }
+
+        RateVersion rateAsOf(String code, Instant asOf) {
+            Timeline timeline = currencies.get(code);
+            if (timeline == null) {
+                throw new IllegalArgumentException("Unsupported currency: " + code);
+            }
+            RateVersion version = timeline.at(asOf);
+            if (version == null) {
+                throw new IllegalArgumentException("No conversion rate for " + code + " as of " + asOf);
+            }
+            if (version.multiplier() == null) {
+                throw new IllegalStateException("Invalid conversion rate for " + code);
+            }
+            return version;
+        }
+    }
+
+    /**
+     * One currency's versions sorted by effective-from time; floor lookups by binary search.
+     */
+    private record Timeline(Instant[] effectiveFrom, RateVersion[] versions) {
+
+        static Timeline of(List<RateVersion> list) {
+            RateVersion[] versions = list.toArray(RateVersion[]::new);
+            Arrays.sort(versions, Comparator.comparing(RateVersion::effectiveFrom).thenComparingLong(RateVersion::version));
+            Instant[] effectiveFrom = new Instant[versions.length];
+            for (int i = 0; i < versions.length; i++) {
+                effectiveFrom[i] = versions[i].effectiveFrom();
+            }
+            return new Timeline(effectiveFrom, versions);
+        }
+
+        /**
+         * Latest version effective at or before the instant, or null if the first one starts later.
+         * Of versions sharing the same start, the highest version wins.
+         */
+        RateVersion at(Instant asOf) {
+            int lo = 0;
+            int hi = effectiveFrom.length - 1;
+            int found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (effectiveFrom[mid].compareTo(asOf) <= 0) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found < 0 ? null : versions[found];
+        }
+    }
 }
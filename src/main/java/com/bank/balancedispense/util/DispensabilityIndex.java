@@ -0,0 +1,315 @@
+package com.bank.balancedispense.util;
+
+import com.bank.balancedispense.dto.DispenseAlternative;
+import com.bank.balancedispense.entities.ATMAllocation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory, per-ATM index of the amounts each ATM can currently pay out.
+ * <p>
+ * For every ATM it keeps {@code ways[t]}: the number of note combinations that make up
+ * {@code t x gcd}, i.e. the coefficients of the product of (1 + x^v + ... + x^(q*v)) over the
+ * stocked denominations. An amount is payable iff its coefficient is non-zero, so a withdrawal
+ * the ATM cannot pay is rejected with a single array read.
+ * <p>
+ * When notes are dispensed, the affected factor is swapped for the smaller one with one
+ * polynomial division and one multiplication (two O(maxAmount / gcd) passes) instead of
+ * rebuilding from the allocations. Arithmetic wraps modulo 2^64; the verdict is exact while
+ * the product of (count + 1) over the denominations stays below 2^63, otherwise a
+ * "not payable" reading is downgraded to {@link Verdict#UNKNOWN}.
+ * <p>
+ * Each entry carries an inventory version that increases with every applied change.
+ * Entries are registered from allocations read inside a withdrawal and only accepted when
+ * no dispense for that ATM committed (or was committing) in the meantime, so a stale read
+ * never double-counts a dispense. Inventory changed outside the withdrawal flow (e.g. a
+ * cassette refill) must be reported through {@link #invalidate(Long)}.
+ */
+@Component
+public class DispensabilityIndex {
+
+    /** Outcome of an index lookup. */
+    public enum Verdict {
+        DISPENSABLE,
+        NOT_DISPENSABLE,
+        /** No entry for the ATM yet, or the amount is above the indexed range. */
+        UNKNOWN
+    }
+
+    private final int maxAmount;
+    private final ConcurrentMap<Long, AtmState> atms = new ConcurrentHashMap<>();
+
+    public DispensabilityIndex(@Value("${atm.dispense.index-max-amount:20000}") int maxAmount) {
+        this.maxAmount = maxAmount;
+    }
+
+    /**
+     * Checks whether the ATM can currently pay out the amount.
+     */
+    public Verdict check(Long atmId, double amount) {
+        AtmState state = atms.get(atmId);
+        Entry entry = state == null ? null : state.entry;
+        if (entry == null || amount > entry.maxUnits() * (long) entry.unit()) {
+            return Verdict.UNKNOWN;
+        }
+
+        boolean payable = amount > 0 && amount == Math.rint(amount) && amount % entry.unit() == 0
+                && entry.ways()[(int) (amount / entry.unit())] != 0;
+        if (payable) {
+            return Verdict.DISPENSABLE;
+        }
+        return entry.exact() ? Verdict.NOT_DISPENSABLE : Verdict.UNKNOWN;
+    }
+
+    /**
+     * Returns the nearest payable amounts below and above the requested amount, lower first.
+     * Only amounts inside the indexed range are considered.
+     */
+    public List<DispenseAlternative> alternatives(Long atmId, double amount) {
+        AtmState state = atms.get(atmId);
+        Entry entry = state == null ? null : state.entry;
+        if (entry == null) {
+            return List.of();
+        }
+
+        List<DispenseAlternative> alternatives = new ArrayList<>(2);
+        long[] ways = entry.ways();
+        int below = (int) Math.min(entry.maxUnits(), Math.ceil(amount / entry.unit()) - 1);
+        for (int t = below; t > 0; t--) {
+            if (ways[t] != 0) {
+                alternatives.add(new DispenseAlternative(t * entry.unit(), DispenseAlternative.Direction.LOWER));
+                break;
+            }
+        }
+        for (int t = (int) Math.max(1, Math.floor(amount / entry.unit()) + 1); t <= entry.maxUnits(); t++) {
+            if (ways[t] != 0) {
+                alternatives.add(new DispenseAlternative(t * entry.unit(), DispenseAlternative.Direction.HIGHER));
+                break;
+            }
+        }
+        return alternatives;
+    }
+
+    /**
+     * Returns the inventory version of the ATM's entry, or -1 if the ATM is not indexed.
+     */
+    public long version(Long atmId) {
+        AtmState state = atms.get(atmId);
+        Entry entry = state == null ? null : state.entry;
+        return entry == null ? -1 : entry.version();
+    }
+
+    /**
+     * Must be called before reading allocations that will be passed to {@link #register}.
+     *
+     * @return Ticket for the registration, or -1 if a dispense is currently committing
+     */
+    public long beginRead(Long atmId) {
+        AtmState state = atms.get(atmId);
+        return state == null ? 0 : state.beginRead();
+    }
+
+    /**
+     * Registers an entry built from freshly read allocations if the ATM is not indexed yet and
+     * no dispense was applied since {@link #beginRead} issued the ticket.
+     */
+    public void register(Long atmId, long ticket, List<ATMAllocation> allocations) {
+        if (ticket < 0) {
+            return;
+        }
+        state(atmId).register(ticket, allocations, maxAmount);
+    }
+
+    /**
+     * Records notes dispensed from the ATM. Inside a transaction the index is updated once the
+     * transaction commits; outside of one it is updated immediately.
+     *
+     * @param dispensed Note count per denomination value
+     */
+    public void recordDispense(Long atmId, Map<Integer, Integer> dispensed) {
+        AtmState state = state(atmId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            state.apply(dispensed);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private boolean committing;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                committing = true;
+                state.commitStarted();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (committing) {
+                    state.commitFinished(status == STATUS_COMMITTED ? dispensed : null);
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops the ATM's entry after its inventory changed outside the withdrawal flow.
+     * The next withdrawal re-registers it from the database.
+     */
+    public void invalidate(Long atmId) {
+        state(atmId).invalidate();
+    }
+
+    private AtmState state(Long atmId) {
+        return atms.computeIfAbsent(atmId, id -> new AtmState());
+    }
+
+    /**
+     * Per-ATM holder. Mutations are serialized on the holder; readers see immutable entries.
+     */
+    private static final class AtmState {
+
+        private volatile Entry entry;
+        private long sequence;
+        private int committing;
+
+        synchronized long beginRead() {
+            return committing > 0 ? -1 : sequence;
+        }
+
+        synchronized void register(long ticket, List<ATMAllocation> allocations, int maxAmount) {
+            if (entry == null && committing == 0 && sequence == ticket) {
+                entry = Entry.build(allocations, maxAmount);
+            }
+        }
+
+        synchronized void commitStarted() {
+            committing++;
+        }
+
+        synchronized void commitFinished(Map<Integer, Integer> dispensed) {
+            committing--;
+            if (dispensed != null) {
+                apply(dispensed);
+            }
+        }
+
+        synchronized void apply(Map<Integer, Integer> dispensed) {
+            sequence++;
+            if (entry != null) {
+                entry = entry.withdraw(dispensed);
+            }
+        }
+
+        synchronized void invalidate() {
+            sequence++;
+            entry = null;
+        }
+    }
+
+    /**
+     * Immutable snapshot of an ATM's stock and its combination counts.
+     */
+    private record Entry(long version, int unit, int maxUnits, int[] values, int[] counts, long[] ways, boolean exact) {
+
+        static Entry build(List<ATMAllocation> allocations, int maxAmount) {
+            Map<Integer, Integer> merged = new TreeMap<>(Comparator.reverseOrder());
+            for (ATMAllocation allocation : allocations) {
+                int value = allocation.getDenomination().getValue().intValue();
+                int quantity = allocation.getQuantity() == null ? 0 : Math.max(0, allocation.getQuantity());
+                if (value > 0) {
+                    merged.merge(value, quantity, Integer::sum);
+                }
+            }
+
+            int[] values = new int[merged.size()];
+            int[] counts = new int[merged.size()];
+            int unit = 0;
+            int i = 0;
+            for (Map.Entry<Integer, Integer> e : merged.entrySet()) {
+                values[i] = e.getKey();
+                counts[i] = e.getValue();
+                unit = gcd(unit, values[i]);
+                i++;
+            }
+            if (unit == 0) {
+                unit = 1;
+            }
+
+            int maxUnits = maxAmount / unit;
+            long[] ways = new long[maxUnits + 1];
+            ways[0] = 1;
+            for (int d = 0; d < values.length; d++) {
+                int step = values[d] / unit;
+                divide(ways, step);
+                multiply(ways, (counts[d] + 1L) * step);
+            }
+            return new Entry(0, unit, maxUnits, values, counts, ways, isExact(counts));
+        }
+
+        Entry withdraw(Map<Integer, Integer> dispensed) {
+            long[] next = ways.clone();
+            int[] nextCounts = counts.clone();
+            for (int d = 0; d < values.length; d++) {
+                Integer taken = dispensed.get(values[d]);
+                if (taken == null || taken == 0) {
+                    continue;
+                }
+                int step = values[d] / unit;
+                int remaining = Math.max(0, counts[d] - taken);
+                // Replace (1 - x^((q+1)v)) / (1 - x^v) with (1 - x^((q'+1)v)) / (1 - x^v)
+                divide(next, (counts[d] + 1L) * step);
+                multiply(next, (remaining + 1L) * step);
+                nextCounts[d] = remaining;
+            }
+            return new Entry(version + 1, unit, maxUnits, values, nextCounts, next, isExact(nextCounts));
+        }
+
+        /** ways /= (1 - x^shift), i.e. prefix sums with the given stride. */
+        private static void divide(long[] ways, long shift) {
+            if (shift >= ways.length) {
+                return;
+            }
+            int s = (int) shift;
+            for (int t = s; t < ways.length; t++) {
+                ways[t] += ways[t - s];
+            }
+        }
+
+        /** ways *= (1 - x^shift), walking downwards so every source term is still unmodified. */
+        private static void multiply(long[] ways, long shift) {
+            if (shift >= ways.length) {
+                return;
+            }
+            int s = (int) shift;
+            for (int t = ways.length - 1; t >= s; t--) {
+                ways[t] -= ways[t - s];
+            }
+        }
+
+        private static boolean isExact(int[] counts) {
+            long product = 1;
+            for (int count : counts) {
+                if (product > Long.MAX_VALUE / (count + 1L)) {
+                    return false;
+                }
+                product *= count + 1L;
+            }
+            return true;
+        }
+
+        private static int gcd(int a, int b) {
+            while (b != 0) {
+                int t = a % b;
+                a = b;
+                b = t;
+            }
+            return a;
+        }
+    }
+}
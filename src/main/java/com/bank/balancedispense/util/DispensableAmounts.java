@@ -0,0 +1,191 @@
+package com.bank.balancedispense.util;
+
+import com.bank.balancedispense.dto.DispenseAlternative;
+import com.bank.balancedispense.entities.ATMAllocation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+
+/**
+ * Bitset of every amount an ATM can pay out exactly with its current notes.
+ * <p>
+ * Built in one pass over the allocations: each denomination is split into power-of-two
+ * bundles and OR-ed in with a word-level shift, so construction costs
+ * O(sum(log count) x total / gcd / 64). Bit {@code t} represents the amount {@code t x gcd}.
+ * Nearest lower/higher lookups scan whole 64-bit words and return after the first
+ * non-empty word, which for realistic cassette mixes means a single word read.
+ */
+public final class DispensableAmounts {
+
+    private static final DispensableAmounts EMPTY = new DispensableAmounts(0, new long[0], 0);
+
+    private final int unit;
+    private final long[] words;
+    private final int maxUnits;
+
+    private DispensableAmounts(int unit, long[] words, int maxUnits) {
+        this.unit = unit;
+        this.words = words;
+        this.maxUnits = maxUnits;
+    }
+
+    /**
+     * Builds the reachable-amount set for the notes stocked in an ATM.
+     */
+    public static DispensableAmounts of(List<ATMAllocation> allocations) {
+        int[] denominations = new int[allocations.size()];
+        int[] counts = new int[allocations.size()];
+        for (int i = 0; i < allocations.size(); i++) {
+            ATMAllocation allocation = allocations.get(i);
+            denominations[i] = allocation.getDenomination().getValue().intValue();
+            counts[i] = allocation.getQuantity() == null ? 0 : allocation.getQuantity();
+        }
+        return of(denominations, counts);
+    }
+
+    /**
+     * Builds the reachable-amount set from parallel denomination and note-count arrays.
+     */
+    public static DispensableAmounts of(int[] denominations, int[] counts) {
+        int unit = 0;
+        long total = 0;
+        for (int i = 0; i < denominations.length; i++) {
+            if (denominations[i] > 0 && counts[i] > 0) {
+                unit = gcd(unit, denominations[i]);
+                total += (long) denominations[i] * counts[i];
+            }
+        }
+        if (unit == 0) {
+            return EMPTY;
+        }
+
+        int maxUnits = Math.toIntExact(total / unit);
+        long[] words = new long[(maxUnits >>> 6) + 1];
+        words[0] = 1L;
+
+        for (int i = 0; i < denominations.length; i++) {
+            if (denominations[i] <= 0 || counts[i] <= 0) {
+                continue;
+            }
+            int step = denominations[i] / unit;
+            int remaining = counts[i];
+            // Binary splitting: bundles of 1, 2, 4, ... notes cover every count up to the stock
+            for (int bundle = 1; remaining > 0; bundle <<= 1) {
+                int take = Math.min(bundle, remaining);
+                shiftOr(words, step * take);
+                remaining -= take;
+            }
+        }
+        return new DispensableAmounts(unit, words, maxUnits);
+    }
+
+    /**
+     * Returns true if the amount can be paid out exactly.
+     */
+    public boolean isDispensable(double amount) {
+        if (unit == 0 || amount <= 0 || amount != Math.rint(amount) || amount % unit != 0) {
+            return false;
+        }
+        long t = (long) amount / unit;
+        return t <= maxUnits && get((int) t);
+    }
+
+    /**
+     * Returns the largest dispensable amount strictly below the requested amount.
+     */
+    public OptionalInt nearestBelow(double amount) {
+        if (unit == 0 || amount <= unit) {
+            return OptionalInt.empty();
+        }
+        long limit = (long) Math.ceil(amount / unit) - 1;
+        int t = previousSetBit((int) Math.min(limit, maxUnits));
+        return t > 0 ? OptionalInt.of(t * unit) : OptionalInt.empty();
+    }
+
+    /**
+     * Returns the smallest dispensable amount strictly above the requested amount.
+     */
+    public OptionalInt nearestAbove(double amount) {
+        if (unit == 0) {
+            return OptionalInt.empty();
+        }
+        long from = Math.max(1, (long) Math.floor(amount / unit) + 1);
+        if (from > maxUnits) {
+            return OptionalInt.empty();
+        }
+        int t = nextSetBit((int) from);
+        return t >= 0 ? OptionalInt.of(t * unit) : OptionalInt.empty();
+    }
+
+    /**
+     * Returns the nearest lower and higher dispensable amounts, lower first.
+     */
+    public List<DispenseAlternative> alternatives(double requested) {
+        List<DispenseAlternative> alternatives = new ArrayList<>(2);
+        nearestBelow(requested).ifPresent(a ->
+                alternatives.add(new DispenseAlternative(a, DispenseAlternative.Direction.LOWER)));
+        nearestAbove(requested).ifPresent(a ->
+                alternatives.add(new DispenseAlternative(a, DispenseAlternative.Direction.HIGHER)));
+        return alternatives;
+    }
+
+    private boolean get(int t) {
+        return (words[t >>> 6] & (1L << t)) != 0;
+    }
+
+    private int previousSetBit(int from) {
+        int i = from >>> 6;
+        long word = words[i] & (-1L >>> (63 - (from & 63)));
+        while (true) {
+            if (word != 0) {
+                return (i << 6) + 63 - Long.numberOfLeadingZeros(word);
+            }
+            if (--i < 0) {
+                return -1;
+            }
+            word = words[i];
+        }
+    }
+
+    private int nextSetBit(int from) {
+        int i = from >>> 6;
+        long word = words[i] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                int t = (i << 6) + Long.numberOfTrailingZeros(word);
+                return t <= maxUnits ? t : -1;
+            }
+            if (++i == words.length) {
+                return -1;
+            }
+            word = words[i];
+        }
+    }
+
+    /**
+     * In-place {@code words |= words << shift}. Walking from the top word down means every
+     * source word is read before it is updated.
+     */
+    private static void shiftOr(long[] words, int shift) {
+        int wordShift = shift >>> 6;
+        int bitShift = shift & 63;
+        for (int i = words.length - 1; i >= wordShift; i--) {
+            int src = i - wordShift;
+            long shifted = words[src] << bitShift;
+            if (bitShift != 0 && src > 0) {
+                shifted |= words[src - 1] >>> (64 - bitShift);
+            }
+            words[i] |= shifted;
+        }
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
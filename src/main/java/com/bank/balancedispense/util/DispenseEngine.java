@@ -0,0 +1,32 @@
+package com.bank.balancedispense.util;
+
+import com.bank.balancedispense.dto.DispenseAlternative;
+import com.bank.balancedispense.entities.ATMAllocation;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Strategy for deciding which notes an ATM pays out for a requested amount.
+ * The active engine is selected with the {@code atm.dispense.engine} property.
+ */
+public interface DispenseEngine {
+
+    /**
+     * Calculates the notes to dispense for the requested amount from the given allocations.
+     * Throws NoteCalculationException if the amount cannot be paid out exactly.
+     *
+     * @param amount      Requested amount
+     * @param allocations Notes currently stocked in the ATM
+     * @return Note count per denomination value, ordered from the largest denomination
+     */
+    Map<Integer, Integer> calculate(double amount, List<ATMAllocation> allocations);
+
+    /**
+     * Suggests the nearest lower and higher amounts the allocations can pay out exactly,
+     * for use when the requested amount is not possible.
+     */
+    default List<DispenseAlternative> suggestAlternatives(double requested, List<ATMAllocation> allocations) {
+        return DispensableAmounts.of(allocations).alternatives(requested);
+    }
+}
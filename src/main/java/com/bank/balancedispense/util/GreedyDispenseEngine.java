@@ -0,0 +1,24 @@
+package com.bank.balancedispense.util;
+
+import com.bank.balancedispense.entities.ATMAllocation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Largest-note-first engine backed by {@link NoteCalculator}.
+ * Enabled with {@code atm.dispense.engine=greedy}.
+ * Alternatives still come from the exact reachable-amount set, so greedy may reject
+ * a suggested amount that the knapsack engine would pay out.
+ */
+@Component
+@ConditionalOnProperty(name = "atm.dispense.engine", havingValue = "greedy")
+public class GreedyDispenseEngine implements DispenseEngine {
+
+    @Override
+    public Map<Integer, Integer> calculate(double amount, List<ATMAllocation> allocations) {
+        return NoteCalculator.calculate(amount, allocations);
+    }
+}
@@ -0,0 +1,159 @@
+package com.bank.balancedispense.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Append-only local journal of cassette changes made by the in-memory inventory.
+ * <p>
+ * Every dispense is written and forced to disk before its transaction commits, one line per record:
+ * <pre>
+ * D &lt;sequence&gt; &lt;atmId&gt; &lt;denominationId&gt;:&lt;notes&gt;[,...]
+ * A &lt;sequence&gt;
+ * </pre>
+ * {@code A} marks a dispense whose transaction rolled back. A torn last line left by a crash is ignored on replay.
+ * Not thread-safe on its own; callers synchronize on the journal.
+ */
+public class InventoryJournal implements Closeable {
+
+    /** A journaled dispense. */
+    public record Entry(long sequence, Long atmId, Map<Long, Integer> notesByDenominationId) {
+    }
+
+    /** Result of reading the journal back. */
+    public record Replay(List<Entry> committed, long lastSequence) {
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private long lastSequence;
+
+    public InventoryJournal(Path path) {
+        this.path = path;
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open inventory journal " + path, e);
+        }
+    }
+
+    /**
+     * Appends a dispense under the next sequence number and forces it to disk.
+     *
+     * @return Sequence number of the record
+     */
+    public long appendDispense(Long atmId, Map<Long, Integer> notesByDenominationId) {
+        StringJoiner notes = new StringJoiner(",");
+        notesByDenominationId.forEach((id, qty) -> notes.add(id + ":" + qty));
+        // Never reuse a number, even if the write below fails half-way
+        long sequence = ++lastSequence;
+        write("D " + sequence + " " + atmId + " " + notes + "\n");
+        return sequence;
+    }
+
+    /**
+     * Marks a journaled dispense as rolled back.
+     */
+    public void appendAbort(long sequence) {
+        write("A " + sequence + "\n");
+    }
+
+    /**
+     * Reads the journal and returns the dispenses after {@code checkpoint} that were not rolled back.
+     * Also continues numbering after the highest sequence found.
+     */
+    public Replay replay(long checkpoint) {
+        Map<Long, Entry> dispenses = new TreeMap<>();
+        long last = checkpoint;
+        String content;
+        try {
+            content = Files.readString(path, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read inventory journal " + path, e);
+        }
+
+        List<String> lines = new ArrayList<>(List.of(content.split("\n")));
+        if (!content.endsWith("\n")) {
+            // Torn record from a crash mid-write; it was never acknowledged
+            lines.remove(lines.size() - 1);
+        }
+        for (String line : lines) {
+            String[] parts = line.split(" ");
+            long sequence = Long.parseLong(parts[1]);
+            last = Math.max(last, sequence);
+            if (parts[0].equals("A")) {
+                dispenses.remove(sequence);
+            } else if (sequence > checkpoint) {
+                dispenses.put(sequence, new Entry(sequence, Long.valueOf(parts[2]), parseNotes(parts[3])));
+            }
+        }
+        lastSequence = Math.max(lastSequence, last);
+        return new Replay(new ArrayList<>(dispenses.values()), last);
+    }
+
+    /**
+     * Discards all records. Only safe once every record is persisted or rolled back.
+     */
+    public void truncate() {
+        try {
+            channel.truncate(0);
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot truncate inventory journal " + path, e);
+        }
+    }
+
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    public long size() {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(String record) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write inventory journal " + path, e);
+        }
+    }
+
+    private static Map<Long, Integer> parseNotes(String notes) {
+        Map<Long, Integer> parsed = new TreeMap<>();
+        for (String note : notes.split(",")) {
+            String[] pair = note.split(":");
+            parsed.put(Long.valueOf(pair[0]), Integer.valueOf(pair[1]));
+        }
+        return parsed;
+    }
+}
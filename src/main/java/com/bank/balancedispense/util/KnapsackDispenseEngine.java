@@ -0,0 +1,174 @@
+package com.bank.balancedispense.util;
+
+import com.bank.balancedispense.common.ErrorMessage;
+import com.bank.balancedispense.entities.ATMAllocation;
+import com.bank.balancedispense.exceptions.NoteCalculationException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Exact dispense engine based on bounded-knapsack dynamic programming.
+ * <p>
+ * Unlike the greedy {@link NoteCalculator}, it finds a combination whenever one exists
+ * (e.g. R60 from R50s and R20s) and always picks the one with the fewest notes.
+ * Amounts are scaled down by the GCD of the stocked denominations, and every denomination
+ * is folded in with a sliding-window minimum per residue class, so a calculation costs
+ * O(amount / gcd x denominations) time.
+ * <p>
+ * This is the default engine ({@code atm.dispense.engine=knapsack}).
+ */
+@Component
+@ConditionalOnProperty(name = "atm.dispense.engine", havingValue = "knapsack", matchIfMissing = true)
+public class KnapsackDispenseEngine implements DispenseEngine {
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE / 2;
+
+    @Override
+    public Map<Integer, Integer> calculate(double amount, List<ATMAllocation> allocations) {
+        if (amount <= 0 || amount != Math.rint(amount)) {
+            throw new NoteCalculationException(ErrorMessage.NOTE_CALCULATION_FAILED.get());
+        }
+
+        Stock stock = Stock.of(allocations);
+        // Checked before sizing the DP tables, which grow with the amount
+        if (stock.unit == 0 || amount > stock.total) {
+            throw new NoteCalculationException(ErrorMessage.NOTE_CALCULATION_FAILED.get());
+        }
+        long amt = (long) amount;
+        long units = amt / stock.unit;
+        if (amt % stock.unit != 0 || units >= Integer.MAX_VALUE) {
+            throw new NoteCalculationException(ErrorMessage.NOTE_CALCULATION_FAILED.get());
+        }
+
+        int target = (int) units;
+        Table table = solve(stock, target);
+        int[] used = table.reconstruct(target);
+        if (used == null) {
+            throw new NoteCalculationException(ErrorMessage.NOTE_CALCULATION_FAILED.get());
+        }
+
+        Map<Integer, Integer> result = new TreeMap<>(Comparator.reverseOrder());
+        for (int i = 0; i < used.length; i++) {
+            if (used[i] > 0) {
+                result.put(stock.values[i], used[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs the bounded-knapsack DP for every amount from 0 up to {@code target} (in GCD units).
+     */
+    private static Table solve(Stock stock, int target) {
+        int k = stock.values.length;
+        int[] best = new int[target + 1];
+        int[] next = new int[target + 1];
+        Arrays.fill(best, UNREACHABLE);
+        best[0] = 0;
+
+        // Monotone deque of (notes taken so far, best[t] - notes) per residue class
+        int[] dequeIndex = new int[target + 1];
+        int[] dequeKey = new int[target + 1];
+        int[][] taken = new int[k][];
+
+        for (int i = 0; i < k; i++) {
+            int step = stock.values[i] / stock.unit;
+            int limit = stock.counts[i];
+            int[] take = new int[target + 1];
+
+            for (int r = 0; r < step && r <= target; r++) {
+                int head = 0;
+                int tail = 0;
+                for (int j = 0, t = r; t <= target; j++, t += step) {
+                    if (best[t] < UNREACHABLE) {
+                        int key = best[t] - j;
+                        while (tail > head && dequeKey[tail - 1] >= key) {
+                            tail--;
+                        }
+                        dequeIndex[tail] = j;
+                        dequeKey[tail] = key;
+                        tail++;
+                    }
+                    while (head < tail && dequeIndex[head] < j - limit) {
+                        head++;
+                    }
+                    if (head < tail) {
+                        next[t] = dequeKey[head] + j;
+                        take[t] = j - dequeIndex[head];
+                    } else {
+                        next[t] = UNREACHABLE;
+                    }
+                }
+            }
+
+            taken[i] = take;
+            int[] swap = best;
+            best = next;
+            next = swap;
+        }
+
+        return new Table(stock, best, taken);
+    }
+
+    /**
+     * Denominations stocked in an ATM, largest first, with their note counts, common GCD and total value.
+     */
+    private record Stock(int[] values, int[] counts, int unit, long total) {
+
+        static Stock of(List<ATMAllocation> allocations) {
+            // Merge allocations that share a denomination value
+            Map<Integer, Integer> merged = new TreeMap<>(Comparator.reverseOrder());
+            for (ATMAllocation allocation : allocations) {
+                int value = allocation.getDenomination().getValue().intValue();
+                int quantity = allocation.getQuantity() == null ? 0 : allocation.getQuantity();
+                if (value > 0 && quantity > 0) {
+                    merged.merge(value, quantity, Integer::sum);
+                }
+            }
+
+            int[] values = new int[merged.size()];
+            int[] counts = new int[merged.size()];
+            int unit = 0;
+            long total = 0;
+            int i = 0;
+            for (Map.Entry<Integer, Integer> entry : merged.entrySet()) {
+                values[i] = entry.getKey();
+                counts[i] = entry.getValue();
+                unit = gcd(unit, values[i]);
+                total += (long) values[i] * counts[i];
+                i++;
+            }
+            return new Stock(values, counts, unit, total);
+        }
+
+        private static int gcd(int a, int b) {
+            while (b != 0) {
+                int t = a % b;
+                a = b;
+                b = t;
+            }
+            return a;
+        }
+    }
+
+    /**
+     * Result of a DP run: minimum note count per amount and the notes taken per denomination.
+     */
+    private record Table(Stock stock, int[] best, int[][] taken) {
+
+        int[] reconstruct(int target) {
+            if (best[target] >= UNREACHABLE) {
+                return null;
+            }
+            int[] used = new int[stock.values.length];
+            int t = target;
+            for (int i = stock.values.length - 1; i >= 0; i--) {
+                used[i] = taken[i][t];
+                t -= used[i] * (stock.values[i] / stock.unit);
+            }
+            return t == 0 ? used : null;
+        }
+    }
+}
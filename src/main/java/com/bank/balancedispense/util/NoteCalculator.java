@@ -11,49 +11,96 @@ import java.util.*;
  */
 public class NoteCalculator {
 
+    /** Status: the amount was fully dispensed; the result array holds the note counts. */
+    public static final int DISPENSED = 0;
+
+    /** Status: the notes cannot make up the amount exactly. */
+    public static final int NOT_DISPENSABLE = 1;
+
+    /** Status: negative amount, mismatched array lengths, or denominations not sorted largest first. */
+    public static final int INVALID_INPUT = 2;
+
     /**
      * Calculates the optimal combination of notes to fulfill the requested amount.
      * Throws NoteCalculationException if exact match is not possible.
      */
     public static Map<Integer, Integer> calculate(double amount, List<ATMAllocation> notes) {
-        int amt = (int) amount;
-        Map<Integer, Integer> result = new TreeMap<>(Comparator.reverseOrder());
+        int n = notes.size();
+        int[] denominations = new int[n];
+        int[] counts = new int[n];
 
-        // Sort denominations from largest to smallest by value
-        List<ATMAllocation> sorted = notes.stream()
-                .sorted(Comparator.comparingInt((ATMAllocation a) -> a.getDenomination().getValue().intValue()).reversed())
-                .toList();
-
-        for (ATMAllocation note : sorted) {
+        // Insertion-sort denominations from largest to smallest by value
+        for (int i = 0; i < n; i++) {
+            ATMAllocation note = notes.get(i);
             int denom = note.getDenomination().getValue().intValue();
-            int maxUsable = amt / denom;
-            int useQty = Math.min(note.getQuantity(), maxUsable);
-
-            if (useQty > 0) {
-                result.put(denom, useQty);
-                amt -= denom * useQty;
+            int j = i;
+            while (j > 0 && denominations[j - 1] < denom) {
+                denominations[j] = denominations[j - 1];
+                counts[j] = counts[j - 1];
+                j--;
             }
+            denominations[j] = denom;
+            counts[j] = note.getQuantity();
         }
 
-        if (amt > 0) {
+        int[] used = new int[n];
+        if (calculate((int) amount, denominations, counts, used) != DISPENSED) {
             throw new NoteCalculationException(ErrorMessage.NOTE_CALCULATION_FAILED.get());
         }
 
+        Map<Integer, Integer> result = new TreeMap<>(Comparator.reverseOrder());
+        for (int i = 0; i < n; i++) {
+            if (used[i] > 0) {
+                result.merge(denominations[i], used[i], Integer::sum);
+            }
+        }
         return result;
     }
 
     /**
-     * Suggests the closest available amount that can be dispensed if the requested amount is not possible.
+     * Allocation-free, exception-free variant of {@link #calculate(double, List)}.
+     * <p>
+     * Takes parallel arrays of denomination values (sorted largest first) and available note
+     * counts, and writes the number of notes to use per denomination into {@code result}.
+     * Nothing is allocated, so it is safe to call on hot paths with reused arrays.
+     *
+     * @param amount        Requested amount
+     * @param denominations Denomination values, sorted from largest to smallest
+     * @param counts        Notes available per denomination
+     * @param result        Caller-supplied array receiving the notes used per denomination;
+     *                      only meaningful when {@link #DISPENSED} is returned
+     * @return {@link #DISPENSED}, {@link #NOT_DISPENSABLE} or {@link #INVALID_INPUT}
      */
-    public static Optional<Integer> suggestFallbackAmount(double requested, List<ATMAllocation> notes) {
-        List<Integer> availableAmounts = new ArrayList<>();
-        for (int amount = (int) requested - 10; amount > 0; amount -= 10) {
-            try {
-                NoteCalculator.calculate(amount, notes);
-                availableAmounts.add(amount);
-            } catch (Exception ignored) {
+    public static int calculate(int amount, int[] denominations, int[] counts, int[] result) {
+        int n = denominations.length;
+        if (amount < 0 || counts.length < n || result.length < n) {
+            return INVALID_INPUT;
+        }
+
+        int amt = amount;
+        for (int i = 0; i < n; i++) {
+            int denom = denominations[i];
+            if (denom <= 0 || (i > 0 && denom > denominations[i - 1])) {
+                return INVALID_INPUT;
+            }
+            int useQty = Math.min(counts[i], amt / denom);
+            if (useQty > 0) {
+                result[i] = useQty;
+                amt -= denom * useQty;
+            } else {
+                result[i] = 0;
             }
         }
-        return availableAmounts.stream().max(Integer::compareTo);
+
+        return amt == 0 ? DISPENSED : NOT_DISPENSABLE;
+    }
+
+    /**
+     * Suggests the closest available amount that can be dispensed if the requested amount is not possible.
+     * Looks the amount up in a single-pass reachable-amount bitset instead of retrying the calculation.
+     */
+    public static Optional<Integer> suggestFallbackAmount(double requested, List<ATMAllocation> notes) {
+        OptionalInt below = DispensableAmounts.of(notes).nearestBelow(requested);
+        return below.isPresent() ? Optional.of(below.getAsInt()) : Optional.empty();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,19 @@
+package com.bank.balancedispense.util;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * A conversion rate as it applied at some point in time.
+ *
+ * @param currencyCode  ISO currency code
+ * @param version       RATE_VERSION of the history row, or 0 for a currency without history
+ *                      (its CURRENCY_CONVERSION_RATE row applies since the epoch)
+ * @param multiplier    Multiplier to ZAR
+ * @param effectiveFrom Start of the period in which the rate applies
+ */
+public record RateVersion(String currencyCode, long version, BigDecimal multiplier, Instant effectiveFrom) {
+
+    /** Rate used for ZAR itself. */
+    public static final RateVersion ZAR = new RateVersion("ZAR", 0, BigDecimal.ONE, Instant.EPOCH);
+}
@@ -0,0 +1,19 @@
+SELECT
+    CLIENT_ID,
+    SURNAME,
+    CLIENT_ACCOUNT_NUMBER,
+    DISPLAY_BALANCE
+FROM (
+         SELECT
+             C.ID AS CLIENT_ID,
+             C.SURNAME,
+             A.CLIENT_ACCOUNT_NUMBER,
+             A.DISPLAY_BALANCE,
+             RANK() OVER (PARTITION BY C.ID ORDER BY A.DISPLAY_BALANCE DESC) AS BALANCE_RANK
+         FROM CLIENT C
+                  JOIN CLIENT_ACCOUNT A ON C.ID = A.CLIENT_ID
+                  JOIN ACCOUNT_TYPE T ON A.ACCOUNT_TYPE_CODE = T.ACCOUNT_TYPE_CODE
+         WHERE T.TRANSACTIONAL = TRUE
+           AND A.DISPLAY_BALANCE IS NOT NULL
+     ) RANKED
+WHERE BALANCE_RANK = 1;
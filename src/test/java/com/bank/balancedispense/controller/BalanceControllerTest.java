@@ -5,19 +5,31 @@ import com.bank.balancedispense.controllers.BalanceController;
 import com.bank.balancedispense.dto.*;
 import com.bank.balancedispense.exceptions.NoAccountsFoundException;
 import com.bank.balancedispense.services.BalanceService;
+import com.bank.balancedispense.util.ClientBalanceVersions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.web.bind.MissingServletRequestParameterException;
 
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 /**
@@ -33,6 +45,35 @@ public class BalanceControllerTest {
     @MockBean
     private BalanceService balanceService;
 
+    @MockBean
+    private ClientBalanceVersions balanceVersions;
+
+    @BeforeEach
+    void stubVersions() {
+        when(balanceVersions.etag(1L)).thenReturn("W/\"a-1-7\"");
+    }
+
+    @Test
+    void testGetTransactionalBalancesReturnsEtag() throws Exception {
+        when(balanceService.getTransactionalBalances(1L)).thenReturn(new TransactionalBalanceResponseWrapper(
+                new ClientDto(1L, "Mr", "John", "Doe"), List.of(), new ResultDto(true, 200, "Success")));
+
+        mockMvc.perform(get("/discovery-atm/queryTransactionalBalances?clientId=1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "W/\"a-1-7\""));
+    }
+
+    @Test
+    void testMatchingIfNoneMatchSkipsService() throws Exception {
+        mockMvc.perform(get("/discovery-atm/queryCcyBalances?clientId=1").header("If-None-Match", "W/\"a-1-7\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "W/\"a-1-7\""));
+        mockMvc.perform(get("/discovery-atm/portfolio?clientId=1").header("If-None-Match", "\"a-1-7\""))
+                .andExpect(status().isNotModified());
+
+        verifyNoInteractions(balanceService);
+    }
+
     @Test
     void testGetTransactionalBalances() throws Exception {
         ClientDto client = new ClientDto(1L, "Mr", "John", "Doe");
@@ -90,6 +131,68 @@ public class BalanceControllerTest {
                 .andExpect(jsonPath("$.result.statusCode").value(200));
     }
 
+    @Test
+    void testGetPortfolio() throws Exception {
+        ClientDto client = new ClientDto(1L, "Mr", "John", "Doe");
+        TransactionalAccountDto transactional = new TransactionalAccountDto(
+                "TX12345", "TRANSACTIONAL", "Main Account",
+                "ZAR", BigDecimal.valueOf(1.0),
+                BigDecimal.valueOf(2000.0), BigDecimal.valueOf(2000.0), BigDecimal.ZERO
+        );
+        CurrencyBalanceResponse currency = new CurrencyBalanceResponse(
+                "FX12345", "CURRENCY", "Currency Account", "USD", BigDecimal.valueOf(18.5),
+                BigDecimal.valueOf(100.0), BigDecimal.valueOf(1850.0), BigDecimal.ZERO
+        );
+        PortfolioResponseWrapper wrapper = new PortfolioResponseWrapper(client, List.of(transactional), List.of(currency),
+                new ResultDto(true, 200, "Portfolio retrieved successfully"));
+
+        when(balanceService.getPortfolio(1L)).thenReturn(wrapper);
+
+        mockMvc.perform(get("/discovery-atm/portfolio?clientId=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.client.name").value("John"))
+                .andExpect(jsonPath("$.transactionalAccounts[0].accountNumber").value("TX12345"))
+                .andExpect(jsonPath("$.currencyAccounts[0].zarBalance").value(1850.0))
+                .andExpect(jsonPath("$.result.success").value(true));
+    }
+
+    @Test
+    void testGetCurrencyBalances_paginated() throws Exception {
+        ClientDto client = new ClientDto(1L, "Mr", "John", "Doe");
+        CurrencyBalanceResponseWrapper wrapper = new CurrencyBalanceResponseWrapper(client, List.of(),
+                new ResultDto(true, 200, "Currency balances retrieved successfully"), "next");
+
+        when(balanceService.getCurrencyBalances(1L, "abc", 2)).thenReturn(wrapper);
+
+        mockMvc.perform(get("/discovery-atm/queryCcyBalances?clientId=1&limit=2&cursor=abc"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.nextCursor").value("next"));
+    }
+
+    @Test
+    void testGetTransactionalBalances_limitTooLarge_shouldFail() throws Exception {
+        mockMvc.perform(get("/discovery-atm/queryTransactionalBalances?clientId=1&limit=100000"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testStreamCurrencyBalances() throws Exception {
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(2);
+            out.write("{\"accountNumber\":\"FX12345\"}\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(balanceService).streamBalances(eq(1L), eq(false), any(OutputStream.class));
+
+        MvcResult started = mockMvc.perform(get("/discovery-atm/queryCcyBalances/stream?clientId=1"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string("{\"accountNumber\":\"FX12345\"}\n"));
+    }
+
     @Test
     void testGetTransactionalBalances_notFound() throws Exception {
         when(balanceService.getTransactionalBalances(999L))
@@ -109,4 +212,14 @@ public class BalanceControllerTest {
                 .andExpect(result -> assertTrue(result.getResolvedException() instanceof MissingServletRequestParameterException))
                 .andExpect(result -> assertTrue(result.getResolvedException().getMessage().contains("clientId")));
     }
+
+    @Test
+    void testBulkBalances_rejectsEmptyList() throws Exception {
+        mockMvc.perform(post("/discovery-atm/balances/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(balanceService);
+    }
 }
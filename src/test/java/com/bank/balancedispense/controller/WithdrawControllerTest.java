@@ -3,14 +3,18 @@ package com.bank.balancedispense.controller;
 
 import com.bank.balancedispense.controllers.WithdrawController;
 import com.bank.balancedispense.dto.*;
+import com.bank.balancedispense.exceptions.IdempotencyKeyReuseException;
 import com.bank.balancedispense.exceptions.InsufficientFundsException;
 import com.bank.balancedispense.exceptions.NoteCalculationException;
+import com.bank.balancedispense.services.BatchWithdrawService;
 import com.bank.balancedispense.services.WithdrawService;
+import com.bank.balancedispense.services.impl.IdempotentWithdrawService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
@@ -18,6 +22,9 @@ import java.math.BigDecimal;
 import java.util.List;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
@@ -36,6 +43,12 @@ public class WithdrawControllerTest {
     @MockBean
     private WithdrawService withdrawService;
 
+    @MockBean
+    private IdempotentWithdrawService idempotentWithdrawService;
+
+    @MockBean
+    private BatchWithdrawService batchWithdrawService;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -110,4 +123,81 @@ public class WithdrawControllerTest {
                 .andExpect(jsonPath("$.statusReason").value("Amount cannot be dispensed"))
                 .andExpect(jsonPath("$.fallbackAmount").value(250));
     }
+
+    @Test
+    void testWithdrawEndpointFailsWithConflict_whenInventoryChangedConcurrently() throws Exception {
+        WithdrawRequest request = new WithdrawRequest(1L, "TX12345", 200.0, 1L);
+
+        when(withdrawService.withdraw(any(WithdrawRequest.class)))
+                .thenThrow(new OptimisticLockingFailureException("ATM 1 no longer holds 1 notes of denomination 1"));
+
+        mockMvc.perform(post("/discovery-atm/withdraw")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.success").value(false))
+                .andExpect(jsonPath("$.statusCode").value(409));
+    }
+
+    @Test
+    void testWithdrawEndpointUsesIdempotentService_whenKeyIsSent() throws Exception {
+        WithdrawRequest request = new WithdrawRequest(1L, "TX12345", 200.0, 1L);
+        WithdrawResponseWrapper response = new WithdrawResponseWrapper(null, null, List.of(),
+                new ResultDto(true, 200, "Withdrawal completed successfully"));
+
+        when(idempotentWithdrawService.withdraw(eq("key-1"), any(WithdrawRequest.class))).thenReturn(response);
+
+        mockMvc.perform(post("/discovery-atm/withdraw")
+                        .header("Idempotency-Key", "key-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.result.success").value(true));
+
+        verify(withdrawService, never()).withdraw(any(WithdrawRequest.class));
+    }
+
+    @Test
+    void testWithdrawEndpointFailsWithUnprocessableEntity_whenKeyReusedForOtherRequest() throws Exception {
+        WithdrawRequest request = new WithdrawRequest(1L, "TX12345", 500.0, 1L);
+
+        when(idempotentWithdrawService.withdraw(eq("key-1"), any(WithdrawRequest.class)))
+                .thenThrow(new IdempotencyKeyReuseException("Idempotency key was already used for a different withdrawal."));
+
+        mockMvc.perform(post("/discovery-atm/withdraw")
+                        .header("Idempotency-Key", "key-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(jsonPath("$.success").value(false))
+                .andExpect(jsonPath("$.statusCode").value(422));
+    }
+
+    @Test
+    void testWithdrawBatchEndpointReturnsPerItemResults() throws Exception {
+        List<WithdrawRequest> requests = List.of(
+                new WithdrawRequest(1L, "TX12345", 200.0, 1L),
+                new WithdrawRequest(1L, "TX12345", 99999.0, 1L));
+        BatchWithdrawResponse response = new BatchWithdrawResponse(1, 1, List.of(
+                new WithdrawResponseWrapper(null, null, List.of(), new ResultDto(true, 200, "Withdrawal completed successfully")),
+                new WithdrawResponseWrapper(null, null, null, new ResultDto(false, 400, "Insufficient funds"))));
+
+        when(batchWithdrawService.withdrawAll(any())).thenReturn(response);
+
+        mockMvc.perform(post("/discovery-atm/withdraw/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(requests)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.succeeded").value(1))
+                .andExpect(jsonPath("$.failed").value(1))
+                .andExpect(jsonPath("$.results[1].result.statusCode").value(400));
+    }
+
+    @Test
+    void testWithdrawBatchEndpointRejectsEmptyBatch() throws Exception {
+        mockMvc.perform(post("/discovery-atm/withdraw/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isBadRequest());
+    }
 }
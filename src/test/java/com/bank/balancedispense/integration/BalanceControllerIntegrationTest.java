@@ -1,15 +1,20 @@
 package com.bank.balancedispense.integration;
 
+import com.jayway.jsonpath.JsonPath;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import static org.hamcrest.Matchers.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @SpringBootTest
@@ -20,6 +25,9 @@ public class BalanceControllerIntegrationTest {
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     /**
      * Test retrieval of transactional balances for an existing client.
      */
@@ -50,6 +58,88 @@ public class BalanceControllerIntegrationTest {
                 .andExpect(jsonPath("$.result.success").value(true));
     }
 
+    /**
+     * Test retrieval of both account groups in one portfolio response.
+     */
+    @Test
+    void shouldReturnPortfolio() throws Exception {
+        mockMvc.perform(get("/discovery-atm/portfolio")
+                        .param("clientId", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.client.id").value(1))
+                .andExpect(jsonPath("$.transactionalAccounts", hasSize(greaterThan(0))))
+                .andExpect(jsonPath("$.currencyAccounts", hasSize(greaterThan(0))))
+                .andExpect(jsonPath("$.result.success").value(true));
+    }
+
+    /**
+     * Test paging through currency accounts one at a time, by account number.
+     */
+    @Test
+    void shouldPageThroughCurrencyBalances() throws Exception {
+        MvcResult first = mockMvc.perform(get("/discovery-atm/queryCcyBalances")
+                        .param("clientId", "1")
+                        .param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accounts", hasSize(1)))
+                .andExpect(jsonPath("$.accounts[0].accountNumber").value("FX12345"))
+                .andExpect(jsonPath("$.nextCursor").isNotEmpty())
+                .andReturn();
+        String cursor = JsonPath.read(first.getResponse().getContentAsString(), "$.nextCursor");
+
+        mockMvc.perform(get("/discovery-atm/queryCcyBalances")
+                        .param("clientId", "1")
+                        .param("limit", "1")
+                        .param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accounts[0].accountNumber").value("FXEUR123"))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+    }
+
+    /**
+     * Test that an account without a balance is still reached by the next page, listed as zero.
+     */
+    @Test
+    void shouldPageThroughTransactionalBalancesWithMissingBalance() throws Exception {
+        jdbcTemplate.update("INSERT INTO CLIENT_ACCOUNT (CLIENT_ACCOUNT_NUMBER, CLIENT_ID, ACCOUNT_TYPE_CODE, CURRENCY_CODE, "
+                + "DISPLAY_BALANCE) VALUES ('TXNULL1', 1, 'TRAN', 'ZAR', NULL)");
+        try {
+            MvcResult first = mockMvc.perform(get("/discovery-atm/queryTransactionalBalances")
+                            .param("clientId", "1")
+                            .param("limit", "1"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.accounts[0].accountNumber").value("TX12345"))
+                    .andReturn();
+            String cursor = JsonPath.read(first.getResponse().getContentAsString(), "$.nextCursor");
+
+            mockMvc.perform(get("/discovery-atm/queryTransactionalBalances")
+                            .param("clientId", "1")
+                            .param("limit", "1")
+                            .param("cursor", cursor))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.accounts[0].accountNumber").value("TXNULL1"))
+                    .andExpect(jsonPath("$.accounts[0].balance").value(0))
+                    .andExpect(jsonPath("$.nextCursor").doesNotExist());
+        } finally {
+            jdbcTemplate.update("DELETE FROM CLIENT_ACCOUNT WHERE CLIENT_ACCOUNT_NUMBER = 'TXNULL1'");
+        }
+    }
+
+    /**
+     * Test streaming currency accounts as newline-delimited JSON.
+     */
+    @Test
+    void shouldStreamCurrencyBalances() throws Exception {
+        MvcResult started = mockMvc.perform(get("/discovery-atm/queryCcyBalances/stream")
+                        .param("clientId", "1"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(matchesPattern("(?s)\\{.*\"FX12345\".*}\\n\\{.*\"FXEUR123\".*}\\n")));
+    }
 
     /**
      * Test that request fails when required clientId param is missing.
@@ -77,4 +167,46 @@ public class BalanceControllerIntegrationTest {
     }
 
 
+
+    /**
+     * A matching If-None-Match gets 304 until a withdrawal changes the client's balances.
+     */
+    @Test
+    void shouldRevalidatePortfolioWithEtag() throws Exception {
+        String etag = mockMvc.perform(get("/discovery-atm/portfolio").param("clientId", "1"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/discovery-atm/portfolio").param("clientId", "1").header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        mockMvc.perform(post("/discovery-atm/withdraw")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"clientId\":1,\"accountNumber\":\"TX12345\",\"amount\":50.0,\"atmId\":1}"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/discovery-atm/portfolio").param("clientId", "1").header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", not(etag)));
+    }
+
+    /**
+     * Test a bulk lookup mixing a known client with an unknown one.
+     */
+    @Test
+    void shouldReturnBulkBalancesWithPerClientStatus() throws Exception {
+        mockMvc.perform(post("/discovery-atm/balances/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[999, 1]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.found").value(1))
+                .andExpect(jsonPath("$.notFound").value(1))
+                .andExpect(jsonPath("$.results[0].clientId").value(999))
+                .andExpect(jsonPath("$.results[0].result.success").value(false))
+                .andExpect(jsonPath("$.results[1].client.id").value(1))
+                .andExpect(jsonPath("$.results[1].transactionalAccounts", hasSize(greaterThan(0))))
+                .andExpect(jsonPath("$.results[1].currencyAccounts", hasSize(greaterThan(0))));
+    }
 }
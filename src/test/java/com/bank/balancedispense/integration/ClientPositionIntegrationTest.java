@@ -0,0 +1,92 @@
+package com.bank.balancedispense.integration;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@Sql(scripts = "/test-data.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+public class ClientPositionIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * A withdrawal moves the stored position by its amount, and a later rebuild finds nothing to repair.
+     */
+    @Test
+    void withdrawalShouldUpdateStoredPosition() throws Exception {
+        mockMvc.perform(post("/discovery-atm/admin/positions/rebuild"))
+                .andExpect(status().isOk());
+        BigDecimal before = transactionalPosition();
+
+        mockMvc.perform(post("/discovery-atm/withdraw")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"clientId\":1,\"accountNumber\":\"TX12345\",\"amount\":50.0,\"atmId\":1}"))
+                .andExpect(status().isOk());
+
+        BigDecimal after = transactionalPosition();
+        assertEquals(0, before.subtract(new BigDecimal("50")).compareTo(after));
+
+        // TX12345 is the client's only transactional account, so the index must follow its balance
+        String top = mockMvc.perform(get("/discovery-atm/topTransactionalBalances").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.clients[0].clientId").value(1))
+                .andExpect(jsonPath("$.clients[0].accountNumber").value("TX12345"))
+                .andReturn().getResponse().getContentAsString();
+        assertEquals(0, after.compareTo(new BigDecimal(JsonPath.read(top, "$.clients[0].balance").toString())));
+
+        mockMvc.perform(post("/discovery-atm/admin/positions/rebuild"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.corrected").value(0))
+                .andExpect(jsonPath("$.inserted").value(0));
+    }
+
+    /**
+     * A client without a stored row gets one back from the rebuild, with the same totals as computed on read.
+     */
+    @Test
+    void rebuildShouldInsertMissingPosition() throws Exception {
+        BigDecimal computed = transactionalPosition();
+        jdbcTemplate.update("DELETE FROM CLIENT_POSITION WHERE CLIENT_ID = 1");
+
+        mockMvc.perform(post("/discovery-atm/admin/positions/rebuild"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.corrected").value(0))
+                .andExpect(jsonPath("$.inserted").value(1));
+
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM CLIENT_POSITION WHERE CLIENT_ID = 1", Integer.class));
+        assertEquals(0, computed.compareTo(transactionalPosition()));
+    }
+
+    @Test
+    void unknownClientShouldReturnNotFound() throws Exception {
+        mockMvc.perform(get("/discovery-atm/clientPosition").param("clientId", "999"))
+                .andExpect(status().isNotFound());
+    }
+
+    private BigDecimal transactionalPosition() throws Exception {
+        String body = mockMvc.perform(get("/discovery-atm/clientPosition").param("clientId", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.client.id").value(1))
+                .andReturn().getResponse().getContentAsString();
+        return new BigDecimal(JsonPath.read(body, "$.transactionalBalance").toString());
+    }
+}
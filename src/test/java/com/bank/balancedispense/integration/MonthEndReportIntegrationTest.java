@@ -0,0 +1,84 @@
+package com.bank.balancedispense.integration;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@Sql(scripts = "/test-data.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+public class MonthEndReportIntegrationTest {
+
+    @TempDir
+    static Path outputDir;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @DynamicPropertySource
+    static void reportProperties(DynamicPropertyRegistry registry) {
+        registry.add("atm.report.month-end.output-dir", outputDir::toString);
+    }
+
+    /**
+     * Runs the report to completion and downloads it. Client 1's currency accounts hold
+     * USD 100 at 18.50 and EUR 300 at 20.00, i.e. ZAR 7850.00 outside the net position.
+     */
+    @Test
+    void shouldRunMonthEndReportAndServeTheFile() throws Exception {
+        mockMvc.perform(post("/discovery-atm/admin/reports/month-end").param("asOf", "2030-01-31T23:59:59Z"))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.asOf").value("2030-01-31T23:59:59Z"));
+
+        String status = awaitCompletion();
+        assertEquals("COMPLETED", JsonPath.read(status, "$.state"));
+        assertEquals("month-end-20300131T235959Z.csv", JsonPath.read(status, "$.fileName"));
+        assertTrue(Files.exists(outputDir.resolve("month-end-20300131T235959Z.csv")));
+        assertEquals((Integer) JsonPath.read(status, "$.partitions"), JsonPath.read(status, "$.completedPartitions"));
+        mockMvc.perform(get("/discovery-atm/admin/reports/month-end"))
+                .andExpect(jsonPath("$.clients").value(greaterThanOrEqualTo(1)))
+                .andExpect(jsonPath("$.partitionTimings[0].fromClientId").value(1));
+
+        MvcResult started = mockMvc.perform(get("/discovery-atm/reports/month-end"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/csv"))
+                .andExpect(content().string(matchesPattern("(?s)CLIENT_ID,LOAN_BALANCE_ZAR,TRANSACTIONAL_BALANCE_ZAR,"
+                        + "OTHER_BALANCE_ZAR,NET_POSITION_ZAR,TOTAL_BALANCE_ZAR\r\n1,0.00,[-0-9.]+,7850.00,[-0-9.]+,[-0-9.]+\r\n.*")));
+    }
+
+    private String awaitCompletion() throws Exception {
+        for (int attempt = 0; attempt < 200; attempt++) {
+            String status = mockMvc.perform(get("/discovery-atm/admin/reports/month-end"))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            if (!"RUNNING".equals(JsonPath.read(status, "$.state"))) {
+                return status;
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("Month-end report did not finish");
+    }
+}
@@ -0,0 +1,85 @@
+package com.bank.balancedispense.integration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@Sql(scripts = "/test-data.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+public class ReportExportIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void storePositions() throws Exception {
+        // The test data is inserted after the startup rebuild
+        mockMvc.perform(post("/discovery-atm/admin/positions/rebuild"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void shouldExportFinancialPositionAsCsv() throws Exception {
+        MvcResult started = mockMvc.perform(get("/discovery-atm/reports/financial-position").param("format", "csv"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/csv"))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"financial-position.csv\""))
+                .andExpect(content().string(matchesPattern(
+                        "(?s)CLIENT_ID,CLIENT,LOAN_BALANCE,TRANSACTIONAL_BALANCE,NET_POSITION\r\n1,Mr John Doe,[-0-9.]+,[-0-9.]+,[-0-9.]+\r\n.*")));
+    }
+
+    /**
+     * With Accept-Encoding: gzip the body is compressed while it is written.
+     */
+    @Test
+    void shouldExportTopBalancesAsGzippedNdjson() throws Exception {
+        MvcResult started = mockMvc.perform(get("/discovery-atm/reports/top-transactional-balances")
+                        .param("format", "ndjson")
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        MvcResult result = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn();
+
+        byte[] compressed = result.getResponse().getContentAsByteArray();
+        String body;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        assertTrue(body.startsWith("{\"CLIENT_ID\":1,\"SURNAME\":\"Doe\",\"CLIENT_ACCOUNT_NUMBER\":\"TX12345\","), body);
+        assertTrue(body.endsWith("}\n"), body);
+    }
+
+    @Test
+    void shouldRejectUnknownFormat() throws Exception {
+        mockMvc.perform(get("/discovery-atm/reports/financial-position").param("format", "xml"))
+                .andExpect(status().isBadRequest());
+    }
+}
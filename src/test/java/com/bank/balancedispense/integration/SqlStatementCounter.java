@@ -0,0 +1,81 @@
+package com.bank.balancedispense.integration;
+
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Replaces the application DataSource with one that records every statement sent to the database,
+ * whether Hibernate or a JdbcTemplate issued it, so tests can assert how many round-trips a request makes.
+ * A JDBC batch counts once. Register it with {@code @Import(SqlStatementCounter.class)}.
+ */
+@TestConfiguration
+public class SqlStatementCounter {
+
+    private static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+    @Bean
+    DataSource dataSource(DataSourceProperties properties) {
+        return wrap(DataSource.class, properties.initializeDataSourceBuilder().build(), null);
+    }
+
+    public static void reset() {
+        STATEMENTS.clear();
+    }
+
+    public static List<String> statements() {
+        return List.copyOf(STATEMENTS);
+    }
+
+    /**
+     * Proxies a JDBC object: connections and statements it hands out are wrapped in turn, and executing
+     * a statement records its SQL.
+     *
+     * @param sql SQL a prepared statement was created with, null for other objects
+     */
+    private static <T> T wrap(Class<T> type, T target, String sql) {
+        Object proxy = Proxy.newProxyInstance(SqlStatementCounter.class.getClassLoader(), new Class<?>[]{type},
+                (p, method, args) -> {
+                    String name = method.getName();
+                    if (name.equals("equals")) {
+                        return p == args[0];
+                    }
+                    if (name.equals("hashCode")) {
+                        return System.identityHashCode(p);
+                    }
+                    if (name.startsWith("execute")) {
+                        STATEMENTS.add(sql != null ? sql : args != null && args.length > 0 ? (String) args[0] : "<batch>");
+                    }
+                    Object result;
+                    try {
+                        result = method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (result instanceof Connection connection && name.equals("getConnection")) {
+                        return wrap(Connection.class, connection, null);
+                    }
+                    if (result instanceof CallableStatement statement) {
+                        return wrap(CallableStatement.class, statement, (String) args[0]);
+                    }
+                    if (result instanceof PreparedStatement statement) {
+                        return wrap(PreparedStatement.class, statement, (String) args[0]);
+                    }
+                    if (result instanceof Statement statement && name.equals("createStatement")) {
+                        return wrap(Statement.class, statement, null);
+                    }
+                    return result;
+                });
+        return type.cast(proxy);
+    }
+}
@@ -7,10 +7,17 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -25,6 +32,9 @@ public class WithdrawControllerIntegrationTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     /**
      * Test a successful withdrawal when ATM, client, and account exist and have sufficient balance.
      */
@@ -59,6 +69,28 @@ public class WithdrawControllerIntegrationTest {
                 .andExpect(jsonPath("$.statusReason", containsString("Validation failed")));
     }
 
+    /**
+     * Test that a key whose record expired but was not purged yet runs as a new withdrawal.
+     */
+    @Test
+    void shouldWithdrawAgain_whenIdempotencyRecordExpiredButNotPurged() throws Exception {
+        jdbcTemplate.update("INSERT INTO WITHDRAWAL_IDEMPOTENCY (IDEMPOTENCY_KEY, REQUEST_FINGERPRINT, RESPONSE_JSON, CREATED_AT) "
+                        + "VALUES (?, ?, ?, ?)",
+                "expired-key", "0".repeat(64), "{}", Timestamp.from(Instant.now().minus(Duration.ofDays(2))));
+        WithdrawRequest request = new WithdrawRequest(1L, "TX12345", 500.0, 1L);
+
+        mockMvc.perform(post("/discovery-atm/withdraw")
+                        .header("Idempotency-Key", "expired-key")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.result.success").value(true));
+
+        Timestamp createdAt = jdbcTemplate.queryForObject(
+                "SELECT CREATED_AT FROM WITHDRAWAL_IDEMPOTENCY WHERE IDEMPOTENCY_KEY = 'expired-key'", Timestamp.class);
+        assertTrue(createdAt.toInstant().isAfter(Instant.now().minus(Duration.ofHours(1))));
+    }
+
     /**
      * Test withdrawal with an unknown ATM ID.
      */
@@ -100,4 +132,28 @@ public class WithdrawControllerIntegrationTest {
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("$.statusReason", containsString("Insufficient funds")));
     }
+
+    /**
+     * Test a batch where only one withdrawal can go through: the others fail on their own.
+     */
+    @Test
+    void shouldReturnPerItemResultsForBatch() throws Exception {
+        List<WithdrawRequest> requests = List.of(
+                new WithdrawRequest(1L, "TX12345", 50.0, 1L),
+                new WithdrawRequest(1L, "TX12345", -100.0, 1L),
+                new WithdrawRequest(1L, "NONEXIST123", 100.0, 1L),
+                new WithdrawRequest(1L, "FX12345", 5000.0, 1L));
+
+        mockMvc.perform(post("/discovery-atm/withdraw/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(requests)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.succeeded").value(1))
+                .andExpect(jsonPath("$.failed").value(3))
+                .andExpect(jsonPath("$.results[0].result.success").value(true))
+                .andExpect(jsonPath("$.results[0].denomination[0].denominationValue").value(50))
+                .andExpect(jsonPath("$.results[1].result.statusCode").value(400))
+                .andExpect(jsonPath("$.results[2].result.statusCode").value(404))
+                .andExpect(jsonPath("$.results[3].result.statusReason", containsString("Insufficient funds")));
+    }
 }
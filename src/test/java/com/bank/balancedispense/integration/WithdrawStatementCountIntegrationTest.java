@@ -0,0 +1,107 @@
+package com.bank.balancedispense.integration;
+
+import com.bank.balancedispense.dto.WithdrawRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Guards the withdrawal hot path against extra round-trips. Statements are counted at the JDBC level,
+ * so the JdbcTemplate writes are included: the ATM, allocations, account and client must come from
+ * two fetch-join queries, with denominations, account type and currency served from the second-level
+ * cache once warm, followed by exactly one debit, one position update and one cassette batch.
+ * Uses its own in-memory database so the shared integration data is not affected.
+ */
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:statementcount")
+@AutoConfigureMockMvc
+@Import(SqlStatementCounter.class)
+@Sql(scripts = "/test-data.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+public class WithdrawStatementCountIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private static final Pattern REFERENCE_TABLE =
+            Pattern.compile("\\b(from|join)\\s+(currency|account_type|denomination)\\b", Pattern.CASE_INSENSITIVE);
+
+    @BeforeEach
+    void warmUpAndResetCounter() throws Exception {
+        // The first withdrawal loads the reference entities into the second-level cache
+        withdraw(new WithdrawRequest(1L, "TX12345", 50.0, 1L));
+        SqlStatementCounter.reset();
+    }
+
+    /**
+     * A ZAR withdrawal needs no rate lookup, so exactly five statements are expected: two loads,
+     * neither of which reads a reference table, and three writes.
+     */
+    @Test
+    void withdrawalShouldStayWithinStatementBudget() throws Exception {
+        withdraw(new WithdrawRequest(1L, "TX12345", 100.0, 1L))
+                .andExpect(jsonPath("$.client.name").value("John"))
+                .andExpect(jsonPath("$.result.success").value(true));
+
+        List<String> statements = SqlStatementCounter.statements();
+        Supplier<String> listing = () -> String.join("\n", statements);
+        assertEquals(5, statements.size(), listing);
+        assertEquals(1, count(statements, "select [^(]* from atm_allocation "), listing);
+        assertEquals(1, count(statements, "select [^(]* from client_account "), listing);
+        assertEquals(1, count(statements, "select display_balance from final table \\(update client_account "), listing);
+        assertEquals(1, count(statements, "update client_position "), listing);
+        assertEquals(1, count(statements, "update atm_allocation "), listing);
+        // The position update's subquery may join ACCOUNT_TYPE; the loads must not
+        assertTrue(statements.stream()
+                .filter(sql -> sql.regionMatches(true, 0, "select", 0, 6))
+                .noneMatch(sql -> REFERENCE_TABLE.matcher(sql).find()), listing);
+    }
+
+    /**
+     * Once the ATM is indexed, an amount it cannot pay out is rejected without any statement.
+     */
+    @Test
+    void undispensableAmountShouldBeRejectedWithoutStatements() throws Exception {
+        mockMvc.perform(post("/discovery-atm/withdraw")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new WithdrawRequest(1L, "TX12345", 30.0, 1L))))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.statusReason", containsString("cannot be dispensed")));
+
+        assertEquals(List.of(), SqlStatementCounter.statements());
+    }
+
+    /**
+     * Counts the statements that start with the pattern, ignoring case.
+     */
+    private static long count(List<String> statements, String prefix) {
+        Pattern pattern = Pattern.compile(prefix, Pattern.CASE_INSENSITIVE);
+        return statements.stream().filter(sql -> pattern.matcher(sql).lookingAt()).count();
+    }
+
+    private ResultActions withdraw(WithdrawRequest request) throws Exception {
+        return mockMvc.perform(post("/discovery-atm/withdraw")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk());
+    }
+}
@@ -1,22 +1,36 @@
 package com.bank.balancedispense.service.impl;
 
 import com.bank.balancedispense.dto.CurrencyBalanceResponseWrapper;
+import com.bank.balancedispense.dto.BulkBalanceResponse;
+import com.bank.balancedispense.dto.ClientDto;
+import com.bank.balancedispense.dto.PortfolioResponseWrapper;
+import com.bank.balancedispense.dto.PortfolioRow;
 import com.bank.balancedispense.dto.TransactionalBalanceResponseWrapper;
-import com.bank.balancedispense.entities.*;
+import com.bank.balancedispense.entities.Client;
+import com.bank.balancedispense.entities.CurrencyConversionRate;
 import com.bank.balancedispense.exceptions.NoAccountsFoundException;
 import com.bank.balancedispense.repository.ClientAccountRepository;
+import com.bank.balancedispense.repository.ClientAccountRepositoryCustom.BalancePage;
+import com.bank.balancedispense.repository.ClientAccountRepositoryCustom.BalanceRow;
 import com.bank.balancedispense.repository.ClientRepository;
+import com.bank.balancedispense.repository.CurrencyConversionRateHistoryRepository;
 import com.bank.balancedispense.repository.CurrencyConversionRateRepository;
 import com.bank.balancedispense.services.impl.BalanceServiceImpl;
+import com.bank.balancedispense.services.impl.ClientPortfolioLoader;
+import com.bank.balancedispense.util.BalanceCursor;
 import com.bank.balancedispense.util.CurrencyConversionUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -34,8 +48,9 @@ public class BalanceServiceImplTest {
         MockitoAnnotations.openMocks(this);
         CurrencyConversionRateRepository mockRateRepo = mock(CurrencyConversionRateRepository.class);
 
-        currencyUtil = new CurrencyConversionUtil(mockRateRepo);
-        balanceService = new BalanceServiceImpl(accountRepository, clientRepository, currencyUtil);
+        currencyUtil = new CurrencyConversionUtil(mockRateRepo, mock(CurrencyConversionRateHistoryRepository.class));
+        balanceService = new BalanceServiceImpl(new ClientPortfolioLoader(accountRepository, currencyUtil),
+                accountRepository, clientRepository, new ObjectMapper(), 500);
 
         CurrencyConversionRate zarRate = new CurrencyConversionRate();
         zarRate.setCurrencyCode("ZAR");
@@ -47,35 +62,14 @@ public class BalanceServiceImplTest {
         usdRate.setConversionIndicator("*");
         usdRate.setRate(new BigDecimal("18.5"));
 
-        when(mockRateRepo.findById("ZAR")).thenReturn(Optional.of(zarRate));
-        when(mockRateRepo.findById("USD")).thenReturn(Optional.of(usdRate));
+        when(mockRateRepo.findAll()).thenReturn(List.of(zarRate, usdRate));
     }
 
     @Test
     void testGetTransactionalBalances_success() {
-        ClientAccount acc = new ClientAccount();
-        acc.setAccountNumber("TX123");
-        acc.setDisplayBalance(BigDecimal.valueOf(2000.0));
-
-        Currency currency = new Currency();
-        currency.setCode("ZAR");
-        acc.setCurrency(currency);
-
-        AccountType type = new AccountType();
-        type.setCode("CHQ");
-        type.setDescription("Cheque Account");
-        type.setTransactional(true);
-        acc.setAccountType(type);
-
-        Client client = new Client();
-        client.setId(1L);
-        client.setTitle("Mr");
-        client.setName("John");
-        client.setSurname("Doe");
-        acc.setClient(client);
-
-        when(accountRepository.findByClientIdAndAccountTypeTransactional(1L, true)).thenReturn(List.of(acc));
-        when(clientRepository.findById(1L)).thenReturn(Optional.of(client));
+        PortfolioRow acc = row("TX123", "CHQ", "Cheque Account", true, "ZAR", 2000.0);
+
+        when(accountRepository.findPortfolioRows(1L, true)).thenReturn(List.of(acc));
 
         TransactionalBalanceResponseWrapper wrapper = balanceService.getTransactionalBalances(1L);
 
@@ -90,31 +84,9 @@ public class BalanceServiceImplTest {
 
     @Test
     void testGetCurrencyBalances_success() {
-        ClientAccount acc = new ClientAccount();
-        acc.setAccountNumber("FX123");
-        acc.setDisplayBalance(BigDecimal.valueOf(100.0));
-
-        Currency currency = new Currency();
-        currency.setCode("USD");
-        currency.setDecimalPlaces(2);
-        currency.setDescription("US Dollar");
-        acc.setCurrency(currency);
-
-        AccountType type = new AccountType();
-        type.setCode("CFCA");
-        type.setDescription("Currency Account");
-        type.setTransactional(false);
-        acc.setAccountType(type);
-
-        Client client = new Client();
-        client.setId(1L);
-        client.setTitle("Mr");
-        client.setName("John");
-        client.setSurname("Doe");
-        acc.setClient(client);
-
-        when(accountRepository.findByClientIdAndAccountTypeTransactional(1L, false)).thenReturn(List.of(acc));
-        when(clientRepository.findById(1L)).thenReturn(Optional.of(client));
+        PortfolioRow acc = row("FX123", "CFCA", "Currency Account", false, "USD", 100.0);
+
+        when(accountRepository.findPortfolioRows(1L, false)).thenReturn(List.of(acc));
 
         CurrencyBalanceResponseWrapper wrapper = balanceService.getCurrencyBalances(1L);
 
@@ -130,15 +102,162 @@ public class BalanceServiceImplTest {
         assertTrue(wrapper.result().success());
     }
 
+    @Test
+    void testGetCurrencyBalances_sortsByDisplayedZarValue_keepingAccountOrderOnTies() {
+        when(accountRepository.findPortfolioRows(1L, false)).thenReturn(List.of(
+                row("FX1", "CFCA", "Currency Account", false, "USD", 300.0),
+                row("FX2", "CFCA", "Currency Account", false, "ZAR", 1850.0),
+                row("FX3", "CFCA", "Currency Account", false, "USD", 100.0),
+                row("FX4", "CFCA", "Currency Account", false, "ZAR", 500.0)));
+
+        CurrencyBalanceResponseWrapper wrapper = balanceService.getCurrencyBalances(1L);
+
+        assertEquals(List.of("FX4", "FX2", "FX3", "FX1"),
+                wrapper.accounts().stream().map(a -> a.accountNumber()).toList());
+    }
+
     @Test
     void testGetTransactionalBalances_empty_shouldThrow() {
-        when(accountRepository.findByClientIdAndAccountTypeTransactional(1L, true)).thenReturn(List.of());
+        when(accountRepository.findPortfolioRows(1L, true)).thenReturn(List.of());
         assertThrows(NoAccountsFoundException.class, () -> balanceService.getTransactionalBalances(1L));
     }
 
     @Test
     void testGetCurrencyBalances_empty_shouldThrow() {
-        when(accountRepository.findByClientIdAndAccountTypeTransactional(1L, false)).thenReturn(List.of());
+        when(accountRepository.findPortfolioRows(1L, false)).thenReturn(List.of());
         assertThrows(NoAccountsFoundException.class, () -> balanceService.getCurrencyBalances(1L));
     }
+
+    @Test
+    void testGetPortfolio_splitsRowsIntoGroupsInQueryOrder() {
+        when(accountRepository.findPortfolioRows(1L, null)).thenReturn(List.of(
+                row("TX2", "CHQ", "Cheque Account", true, "ZAR", 5000.0),
+                row("TX1", "CHQ", "Cheque Account", true, "ZAR", 1000.0),
+                row("FX1", "CFCA", "Currency Account", false, "USD", 100.0)));
+
+        PortfolioResponseWrapper wrapper = balanceService.getPortfolio(1L);
+
+        assertEquals("John", wrapper.client().name());
+        assertEquals(List.of("TX2", "TX1"), wrapper.transactionalAccounts().stream().map(a -> a.accountNumber()).toList());
+        assertEquals(1, wrapper.currencyAccounts().size());
+        assertEquals(0, wrapper.currencyAccounts().get(0).zarBalance().compareTo(BigDecimal.valueOf(1850.0)));
+        verify(accountRepository, times(1)).findPortfolioRows(1L, null);
+    }
+
+    @Test
+    void testGetPortfolio_clientWithoutAccounts_returnsEmptyGroups() {
+        when(accountRepository.findPortfolioRows(1L, null)).thenReturn(List.of(
+                new PortfolioRow(1L, "Mr", "John", "Doe", null, null, null, null, null, null)));
+
+        PortfolioResponseWrapper wrapper = balanceService.getPortfolio(1L);
+
+        assertEquals("Doe", wrapper.client().surname());
+        assertTrue(wrapper.transactionalAccounts().isEmpty());
+        assertTrue(wrapper.currencyAccounts().isEmpty());
+    }
+
+    @Test
+    void testGetPortfolio_unknownClient_shouldThrow() {
+        when(accountRepository.findPortfolioRows(99L, null)).thenReturn(List.of());
+        assertThrows(NoAccountsFoundException.class, () -> balanceService.getPortfolio(99L));
+    }
+
+    @Test
+    void testGetCurrencyBalancePage_returnsCursorOnlyWhenMoreRowsFollow() {
+        ClientDto client = new ClientDto(1L, "Mr", "John", "Doe");
+        when(accountRepository.findBalancePage(1L, false, null, 2)).thenReturn(new BalancePage(client, List.of(
+                balanceRow("FX1", 100.0), balanceRow("FX2", 200.0))));
+
+        CurrencyBalanceResponseWrapper first = balanceService.getCurrencyBalances(1L, null, 1);
+
+        assertEquals(client, first.client());
+        assertEquals(1, first.accounts().size());
+        assertEquals("FX1", first.accounts().get(0).accountNumber());
+        assertEquals(new BalanceCursor(null, "FX1"), BalanceCursor.decode(first.nextCursor()));
+
+        BalanceCursor after = BalanceCursor.decode(first.nextCursor());
+        when(accountRepository.findBalancePage(1L, false, after, 2))
+                .thenReturn(new BalancePage(client, List.of(balanceRow("FX2", 200.0))));
+
+        CurrencyBalanceResponseWrapper second = balanceService.getCurrencyBalances(1L, first.nextCursor(), 1);
+
+        assertEquals("FX2", second.accounts().get(0).accountNumber());
+        assertNull(second.nextCursor());
+        verifyNoInteractions(clientRepository);
+    }
+
+    @Test
+    void testGetCurrencyBalancePage_pastLastAccount_looksUpClient() {
+        BalanceCursor after = new BalanceCursor(null, "FX2");
+        when(accountRepository.findBalancePage(1L, false, after, 2)).thenReturn(new BalancePage(null, List.of()));
+        when(clientRepository.findById(1L)).thenReturn(Optional.of(new Client(1L, "Mr", "John", "Doe")));
+
+        CurrencyBalanceResponseWrapper page = balanceService.getCurrencyBalances(1L, after.encode(), 1);
+
+        assertEquals("Doe", page.client().surname());
+        assertTrue(page.accounts().isEmpty());
+        assertNull(page.nextCursor());
+    }
+
+    @Test
+    void testGetTransactionalBalancePage_invalidCursor_shouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> balanceService.getTransactionalBalances(1L, "not-a-cursor", 10));
+    }
+
+    @Test
+    void testGetTransactionalBalancePage_currencyCursor_shouldThrow() {
+        String currencyCursor = new BalanceCursor(null, "FX1").encode();
+        assertThrows(IllegalArgumentException.class, () -> balanceService.getTransactionalBalances(1L, currencyCursor, 10));
+        verifyNoInteractions(accountRepository);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testStreamBalances_writesOneJsonLinePerRow() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<BalanceRow> action = invocation.getArgument(3);
+            action.accept(balanceRow("FX1", 100.0));
+            action.accept(balanceRow("FX2", 200.0));
+            return null;
+        }).when(accountRepository).streamBalances(eq(1L), eq(false), eq(500), any(Consumer.class));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        balanceService.streamBalances(1L, false, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"accountNumber\":\"FX1\""));
+        assertTrue(lines[1].contains("\"zarBalance\":3700"));
+    }
+
+    private static BalanceRow balanceRow(String accountNumber, double balance) {
+        return new BalanceRow(accountNumber, "CFCA", "Currency Account", "USD", BigDecimal.valueOf(balance));
+    }
+
+    @Test
+    void testGetBulkBalances_loadsAllClientsInOneQuery() {
+        when(accountRepository.findPortfolioRowsByClientIds(any())).thenReturn(List.of(
+                row("TX123", "CHQ", "Cheque Account", true, "ZAR", 2000.0),
+                row("FX123", "CFCA", "Currency Account", false, "USD", 100.0),
+                new PortfolioRow(2L, "Ms", "Jane", "Roe", null, null, null, null, null, null)));
+
+        BulkBalanceResponse response = balanceService.getBulkBalances(List.of(3L, 1L, 2L, 1L));
+
+        assertEquals(2, response.found());
+        assertEquals(2, response.notFound());
+        assertEquals(List.of(3L, 1L, 2L, 1L), response.results().stream().map(r -> r.clientId()).toList());
+        assertEquals("Client not found", response.results().get(0).result().statusReason());
+        assertEquals(0, response.results().get(1).currencyAccounts().get(0).zarBalance().compareTo(BigDecimal.valueOf(1850.0)));
+        assertEquals("TX123", response.results().get(3).transactionalAccounts().get(0).accountNumber());
+        assertFalse(response.results().get(2).result().success());
+        assertEquals("No accounts to display", response.results().get(2).result().statusReason());
+        verify(accountRepository, times(1)).findPortfolioRowsByClientIds(argThat(ids -> ids.size() == 3));
+        verify(accountRepository, never()).findPortfolioRows(any(), any());
+    }
+
+    private static PortfolioRow row(String accountNumber, String typeCode, String description,
+                                    boolean transactional, String currencyCode, double balance) {
+        return new PortfolioRow(1L, "Mr", "John", "Doe", accountNumber, typeCode, description,
+                transactional, currencyCode, BigDecimal.valueOf(balance));
+    }
 }
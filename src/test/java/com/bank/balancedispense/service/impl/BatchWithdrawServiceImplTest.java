@@ -0,0 +1,167 @@
+package com.bank.balancedispense.service.impl;
+
+import com.bank.balancedispense.dto.BatchWithdrawResponse;
+import com.bank.balancedispense.dto.ResultDto;
+import com.bank.balancedispense.dto.WithdrawRequest;
+import com.bank.balancedispense.dto.WithdrawResponseWrapper;
+import com.bank.balancedispense.entities.*;
+import com.bank.balancedispense.repository.*;
+import com.bank.balancedispense.repository.ClientAccountRepositoryCustom.Debit;
+import com.bank.balancedispense.services.ClientPositionService;
+import com.bank.balancedispense.services.WithdrawService;
+import com.bank.balancedispense.services.impl.BatchWithdrawServiceImpl;
+import com.bank.balancedispense.services.impl.DatabaseAtmInventoryService;
+import com.bank.balancedispense.services.impl.IdempotencyRecordStore;
+import com.bank.balancedispense.services.impl.WithdrawServiceImpl;
+import com.bank.balancedispense.util.ClientBalanceVersions;
+import com.bank.balancedispense.util.CurrencyConversionUtil;
+import com.bank.balancedispense.util.DispensabilityIndex;
+import com.bank.balancedispense.util.KnapsackDispenseEngine;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+public class BatchWithdrawServiceImplTest {
+
+    @Mock private ClientAccountRepository accountRepo;
+    @Mock private ATMAllocationRepository atmNoteRepo;
+    @Mock private ATMRepository atmRepo;
+    @Mock private WithdrawService withdrawService;
+
+    private BatchWithdrawServiceImpl batchService;
+
+    @BeforeEach
+    void init() {
+        MockitoAnnotations.openMocks(this);
+
+        KnapsackDispenseEngine dispenseEngine = new KnapsackDispenseEngine();
+        DispensabilityIndex dispensabilityIndex = new DispensabilityIndex(20000);
+        DatabaseAtmInventoryService atmInventory = new DatabaseAtmInventoryService(atmNoteRepo, dispenseEngine);
+        WithdrawServiceImpl withdrawCore = new WithdrawServiceImpl(accountRepo, atmInventory, atmRepo,
+                new CurrencyConversionUtil(mock(CurrencyConversionRateRepository.class),
+                        mock(CurrencyConversionRateHistoryRepository.class)), dispenseEngine,
+                dispensabilityIndex, mock(IdempotencyRecordStore.class), mock(ClientBalanceVersions.class),
+                mock(ClientPositionService.class));
+        batchService = new BatchWithdrawServiceImpl(atmInventory, accountRepo, withdrawCore, withdrawService,
+                dispenseEngine, dispensabilityIndex, mock(ClientBalanceVersions.class), mock(ClientPositionService.class),
+                Validation.buildDefaultValidatorFactory().getValidator(),
+                mock(PlatformTransactionManager.class));
+
+        ATM atm = new ATM(1L, "ATM", true);
+        ATMAllocation note100 = new ATMAllocation();
+        note100.setAtm(atm);
+        note100.setDenomination(new Denomination(2L, BigDecimal.valueOf(100)));
+        note100.setQuantity(3);
+        when(atmNoteRepo.findWithAtmAndDenominationByAtmId(1L)).thenReturn(List.of(note100));
+
+        ClientAccount acc = new ClientAccount();
+        acc.setAccountNumber("SAV123");
+        acc.setDisplayBalance(BigDecimal.valueOf(1000.0));
+        acc.setAccountType(new AccountType("SAV", "Savings Account", false));
+        acc.setCurrency(new Currency("ZAR", 2, "Rand"));
+        acc.setClient(new Client(1L, "Mr", "John", "Doe"));
+        when(accountRepo.findWithDetailsByClientIdAndAccountNumber(1L, "SAV123")).thenReturn(Optional.of(acc));
+        when(accountRepo.debitAll(anyList())).thenAnswer(inv -> {
+            List<Debit> debits = inv.getArgument(0);
+            return Map.of("SAV123", BigDecimal.valueOf(1000.0).subtract(debits.get(0).amount()));
+        });
+    }
+
+    @Test
+    void withdrawAll_shouldLoadOnce_andWriteAcceptedItemsInOneBatch() {
+        BatchWithdrawResponse response = batchService.withdrawAll(List.of(
+                new WithdrawRequest(1L, "SAV123", 200.0, 1L),
+                new WithdrawRequest(1L, "SAV123", 200.0, 1L),
+                new WithdrawRequest(1L, "SAV123", 100.0, 1L)));
+
+        assertEquals(2, response.succeeded());
+        assertEquals(1, response.failed());
+        assertEquals(BigDecimal.valueOf(800.0), response.results().get(0).account().balance());
+        assertEquals(400, response.results().get(1).result().statusCode());
+        assertEquals(BigDecimal.valueOf(700.0), response.results().get(2).account().balance());
+
+        verify(atmNoteRepo, times(1)).findWithAtmAndDenominationByAtmId(1L);
+        verify(accountRepo, times(1)).findWithDetailsByClientIdAndAccountNumber(1L, "SAV123");
+        verify(accountRepo).debitAll(List.of(new Debit("SAV123", BigDecimal.valueOf(300.0), BigDecimal.ZERO)));
+        verify(atmNoteRepo).decrementCounts(1L, Map.of(2L, 3));
+        verifyNoInteractions(withdrawService);
+    }
+
+    @Test
+    void withdrawAll_shouldReportWrittenBalances_whenAccountChangedConcurrently() {
+        // Another withdrawal of 50 committed after the group loaded the account
+        doReturn(Map.of("SAV123", BigDecimal.valueOf(650.0))).when(accountRepo).debitAll(anyList());
+
+        BatchWithdrawResponse response = batchService.withdrawAll(List.of(
+                new WithdrawRequest(1L, "SAV123", 200.0, 1L),
+                new WithdrawRequest(1L, "SAV123", 100.0, 1L)));
+
+        assertEquals(BigDecimal.valueOf(750.0), response.results().get(0).account().balance());
+        assertEquals(BigDecimal.valueOf(650.0), response.results().get(1).account().balance());
+    }
+
+    @Test
+    void withdrawAll_shouldAnswerInvalidAndUnknownItems_withoutFailingOthers() {
+        when(accountRepo.findWithDetailsByClientIdAndAccountNumber(1L, "NONE")).thenReturn(Optional.empty());
+
+        BatchWithdrawResponse response = batchService.withdrawAll(List.of(
+                new WithdrawRequest(1L, "SAV123", -5.0, 1L),
+                new WithdrawRequest(1L, "NONE", 100.0, 1L),
+                new WithdrawRequest(1L, "SAV123", 100.0, 1L)));
+
+        assertEquals(1, response.succeeded());
+        assertEquals(400, response.results().get(0).result().statusCode());
+        assertEquals(404, response.results().get(1).result().statusCode());
+        assertTrue(response.results().get(2).result().success());
+    }
+
+    @Test
+    void withdrawAll_shouldReplayGroupOneByOne_whenBatchWriteConflicts() {
+        doThrow(new OptimisticLockingFailureException("conflict")).when(accountRepo).debitAll(anyList());
+        WithdrawResponseWrapper single = new WithdrawResponseWrapper(null, null, List.of(),
+                new ResultDto(true, 200, "Withdrawal completed successfully"));
+        when(withdrawService.withdraw(any(WithdrawRequest.class)))
+                .thenReturn(single)
+                .thenThrow(new OptimisticLockingFailureException("conflict"));
+
+        BatchWithdrawResponse response = batchService.withdrawAll(List.of(
+                new WithdrawRequest(1L, "SAV123", 100.0, 1L),
+                new WithdrawRequest(1L, "SAV123", 100.0, 1L)));
+
+        assertSame(single, response.results().get(0));
+        assertEquals(409, response.results().get(1).result().statusCode());
+        verify(withdrawService, times(2)).withdraw(any(WithdrawRequest.class));
+    }
+
+    @Test
+    void withdrawAll_shouldReplayGroupOneByOne_whenBatchFailsUnexpectedly() {
+        doThrow(new IllegalStateException("boom")).when(atmNoteRepo).decrementCounts(anyLong(), anyMap());
+        WithdrawResponseWrapper single = new WithdrawResponseWrapper(null, null, List.of(),
+                new ResultDto(true, 200, "Withdrawal completed successfully"));
+        when(withdrawService.withdraw(any(WithdrawRequest.class))).thenReturn(single);
+
+        BatchWithdrawResponse response = batchService.withdrawAll(List.of(
+                new WithdrawRequest(1L, "SAV123", 100.0, 1L),
+                new WithdrawRequest(1L, "SAV123", 100.0, 1L)));
+
+        assertEquals(2, response.succeeded());
+        assertSame(single, response.results().get(0));
+        assertSame(single, response.results().get(1));
+    }
+}
@@ -0,0 +1,121 @@
+package com.bank.balancedispense.service.impl;
+
+import com.bank.balancedispense.dto.PositionRebuildReport;
+import com.bank.balancedispense.entities.AccountType;
+import com.bank.balancedispense.repository.ClientPositionRepository;
+import com.bank.balancedispense.dto.TopBalancePageResponse;
+import com.bank.balancedispense.repository.ClientPositionRepositoryCustom.Delta;
+import com.bank.balancedispense.repository.ClientPositionRepositoryCustom.Position;
+import com.bank.balancedispense.repository.ClientPositionRepositoryCustom.TopBalance;
+import com.bank.balancedispense.services.ClientPositionService.BalanceChange;
+import com.bank.balancedispense.services.impl.ClientPositionServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class ClientPositionServiceImplTest {
+
+    private static final AccountType CHEQUE = new AccountType("CHQ", "Cheque Account", true);
+    private static final AccountType HOME_LOAN = new AccountType("HLOAN", "Home Loan", false);
+    private static final AccountType CURRENCY = new AccountType("CCY", "Currency Account", false);
+
+    @Mock private ClientPositionRepository positionRepo;
+
+    private ClientPositionServiceImpl positionService;
+
+    @BeforeEach
+    void init() {
+        MockitoAnnotations.openMocks(this);
+        positionService = new ClientPositionServiceImpl(positionRepo, mock(PlatformTransactionManager.class), 10, 2, false);
+    }
+
+    @Test
+    void applyBalanceChanges_shouldMergeDeltasPerClientAndSkipOtherTypes() {
+        positionService.applyBalanceChanges(List.of(
+                new BalanceChange(1L, CHEQUE, new BigDecimal("-100")),
+                new BalanceChange(1L, HOME_LOAN, new BigDecimal("-50")),
+                new BalanceChange(2L, CURRENCY, new BigDecimal("-10"))));
+
+        verify(positionRepo).applyDeltas(List.of(
+                new Delta(1L, new BigDecimal("-50"), new BigDecimal("-100"), new BigDecimal("-150"), true)));
+    }
+
+    @Test
+    void rebuildAll_shouldRepairEachRangeInParallel() {
+        when(positionRepo.clientIdRange()).thenReturn(Optional.of(new long[]{1, 25}));
+        when(positionRepo.lockPositions(anyLong(), anyLong())).thenReturn(List.of());
+        when(positionRepo.aggregatePositions(anyLong(), anyLong())).thenReturn(List.of());
+
+        Position stale = position(3L, "10");
+        Position gone = position(4L, "5");
+        when(positionRepo.lockPositions(1, 10)).thenReturn(List.of(stale, gone));
+        when(positionRepo.aggregatePositions(1, 10)).thenReturn(List.of(position(3L, "20"), position(7L, "1")));
+        when(positionRepo.aggregatePositions(21, 25)).thenReturn(List.of(position(25L, "2")));
+
+        PositionRebuildReport report = positionService.rebuildAll();
+
+        assertEquals(3, report.partitions());
+        assertEquals(3, report.verified());
+        assertEquals(2, report.inserted());
+        assertEquals(1, report.corrected());
+        assertEquals(1, report.removed());
+        verify(positionRepo).savePositions(List.of(position(3L, "20"), position(7L, "1")));
+        verify(positionRepo).deletePositions(List.of(4L));
+        verify(positionRepo).lockPositions(11, 20);
+    }
+
+    @Test
+    void rebuildAll_shouldCommitMissingRowsFirst_andLockTheirAccountsBeforeAggregating() {
+        when(positionRepo.clientIdRange()).thenReturn(Optional.of(new long[]{1, 10}));
+        when(positionRepo.insertMissingPositions(1, 10)).thenReturn(List.of(7L));
+        when(positionRepo.lockPositions(1, 10)).thenReturn(List.of(position(3L, "20"), position(7L, "0")));
+        when(positionRepo.aggregatePositions(1, 10)).thenReturn(List.of(position(3L, "20"), position(7L, "1")));
+
+        PositionRebuildReport report = positionService.rebuildAll();
+
+        assertEquals(1, report.inserted());
+        assertEquals(0, report.corrected());
+        assertEquals(0, report.removed());
+        InOrder order = inOrder(positionRepo);
+        order.verify(positionRepo).insertMissingPositions(1, 10);
+        order.verify(positionRepo).lockPositions(1, 10);
+        order.verify(positionRepo).lockAccounts(List.of(7L));
+        order.verify(positionRepo).aggregatePositions(1, 10);
+        order.verify(positionRepo).savePositions(List.of(position(7L, "1")));
+    }
+
+    @Test
+    void getTopTransactionalBalances_shouldReturnNextAfterClientIdOnlyWhileMoreFollow() {
+        when(positionRepo.findTopBalances(null, 3)).thenReturn(List.of(top(1L), top(4L), top(9L)));
+        when(positionRepo.findTopBalances(4L, 3)).thenReturn(List.of(top(9L)));
+
+        TopBalancePageResponse first = positionService.getTopTransactionalBalances(null, 2);
+        TopBalancePageResponse last = positionService.getTopTransactionalBalances(4L, 2);
+
+        assertEquals(2, first.clients().size());
+        assertEquals(4L, first.nextAfterClientId());
+        assertEquals(9L, last.clients().get(0).clientId());
+        assertNull(last.nextAfterClientId());
+    }
+
+    private static TopBalance top(Long clientId) {
+        return new TopBalance(clientId, "Doe", "TX" + clientId, BigDecimal.TEN);
+    }
+
+    private static Position position(Long clientId, String transactional) {
+        BigDecimal amount = new BigDecimal(transactional);
+        return new Position(clientId, BigDecimal.ZERO, amount, amount, "TX" + clientId, amount);
+    }
+}
@@ -0,0 +1,106 @@
+package com.bank.balancedispense.service.impl;
+
+import com.bank.balancedispense.dto.WithdrawRequest;
+import com.bank.balancedispense.dto.WithdrawResponseWrapper;
+import com.bank.balancedispense.exceptions.IdempotencyKeyReuseException;
+import com.bank.balancedispense.exceptions.InsufficientFundsException;
+import com.bank.balancedispense.services.WithdrawService;
+import com.bank.balancedispense.services.impl.IdempotencyRecordStore;
+import com.bank.balancedispense.services.impl.IdempotentWithdrawService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class IdempotentWithdrawServiceTest {
+
+    private final WithdrawRequest request = new WithdrawRequest(1L, "TX12345", 200.0, 1L);
+    private final WithdrawResponseWrapper response = new WithdrawResponseWrapper(null, null, null, null);
+
+    private WithdrawService withdrawService;
+    private IdempotencyRecordStore recordStore;
+    private IdempotentWithdrawService idempotentService;
+
+    @BeforeEach
+    void init() {
+        withdrawService = mock(WithdrawService.class);
+        recordStore = mock(IdempotencyRecordStore.class);
+        when(recordStore.find(any(), any())).thenReturn(Optional.empty());
+        idempotentService = new IdempotentWithdrawService(withdrawService, recordStore, 100, Duration.ofHours(1));
+    }
+
+    @Test
+    void withdraw_shouldReplayCachedResponse_withoutWithdrawingAgain() {
+        when(withdrawService.withdraw(request, "key-1")).thenReturn(response);
+
+        assertSame(response, idempotentService.withdraw("key-1", request));
+        assertSame(response, idempotentService.withdraw("key-1", request));
+
+        verify(withdrawService, times(1)).withdraw(request, "key-1");
+        verify(recordStore, times(1)).find("key-1", request);
+    }
+
+    @Test
+    void withdraw_shouldRejectKeyReusedForDifferentRequest() {
+        when(withdrawService.withdraw(request, "key-1")).thenReturn(response);
+        idempotentService.withdraw("key-1", request);
+
+        WithdrawRequest other = new WithdrawRequest(1L, "TX12345", 500.0, 1L);
+        assertThrows(IdempotencyKeyReuseException.class, () -> idempotentService.withdraw("key-1", other));
+        verify(withdrawService, never()).withdraw(other, "key-1");
+    }
+
+    @Test
+    void withdraw_shouldLetDuplicateWaitForInFlightRequest() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(withdrawService.withdraw(request, "key-1")).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return response;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<WithdrawResponseWrapper> first = executor.submit(() -> idempotentService.withdraw("key-1", request));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<WithdrawResponseWrapper> duplicate = executor.submit(() -> idempotentService.withdraw("key-1", request));
+
+            release.countDown();
+            assertSame(response, first.get(5, TimeUnit.SECONDS));
+            assertSame(response, duplicate.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(withdrawService, times(1)).withdraw(request, "key-1");
+    }
+
+    @Test
+    void withdraw_shouldNotCacheFailures() {
+        when(withdrawService.withdraw(request, "key-1"))
+                .thenThrow(new InsufficientFundsException("Insufficient funds"))
+                .thenReturn(response);
+
+        assertThrows(InsufficientFundsException.class, () -> idempotentService.withdraw("key-1", request));
+        assertSame(response, idempotentService.withdraw("key-1", request));
+    }
+
+    @Test
+    void withdraw_shouldReturnStoredResponse_whenKeyCommittedElsewhere() {
+        when(withdrawService.withdraw(request, "key-1")).thenThrow(new DataIntegrityViolationException("duplicate key"));
+        when(recordStore.find("key-1", request)).thenReturn(Optional.empty()).thenReturn(Optional.of(response));
+
+        assertSame(response, idempotentService.withdraw("key-1", request));
+    }
+}
@@ -0,0 +1,165 @@
+package com.bank.balancedispense.service.impl;
+
+import com.bank.balancedispense.entities.ATM;
+import com.bank.balancedispense.entities.ATMAllocation;
+import com.bank.balancedispense.entities.Denomination;
+import com.bank.balancedispense.entities.InventoryCheckpoint;
+import com.bank.balancedispense.exceptions.NoteCalculationException;
+import com.bank.balancedispense.repository.ATMAllocationRepository;
+import com.bank.balancedispense.repository.InventoryCheckpointRepository;
+import com.bank.balancedispense.services.impl.InMemoryAtmInventoryService;
+import com.bank.balancedispense.util.InventoryJournal;
+import com.bank.balancedispense.util.KnapsackDispenseEngine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class InMemoryAtmInventoryServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private ATMAllocationRepository atmAllocationRepo;
+    private InventoryCheckpointRepository checkpointRepo;
+    private InMemoryAtmInventoryService inventory;
+
+    @BeforeEach
+    void init() {
+        atmAllocationRepo = mock(ATMAllocationRepository.class);
+        checkpointRepo = mock(InventoryCheckpointRepository.class);
+        when(checkpointRepo.findById(1L)).thenReturn(Optional.empty());
+
+        ATM atm = new ATM(1L, "Branch", true);
+        when(atmAllocationRepo.findWithAtmAndDenominationByAtmId(1L)).thenReturn(List.of(
+                allocation(atm, 1L, 200, 2),
+                allocation(atm, 2L, 100, 5)));
+
+        inventory = newInventory();
+        inventory.recover();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void dispense_shouldReserveNotes_andWriteThemBehind() {
+        assertEquals(Map.of(200, 2, 100, 1), inventory.dispense(1L, 500, List.of()));
+        assertEquals(List.of(0, 4), quantities(inventory.loadAllocations(1L)));
+
+        inventory.flush();
+
+        verify(atmAllocationRepo).decrementCounts(1L, Map.of(1L, 2, 2L, 1));
+        assertEquals(1, savedCheckpoint());
+        verify(atmAllocationRepo, times(1)).findWithAtmAndDenominationByAtmId(1L);
+    }
+
+    @Test
+    void dispense_shouldFailWithoutChange_whenNotPayable() {
+        assertThrows(NoteCalculationException.class, () -> inventory.dispense(1L, 1100, List.of()));
+        assertEquals(List.of(2, 5), quantities(inventory.loadAllocations(1L)));
+    }
+
+    @Test
+    void dispense_shouldReleaseNotes_whenTransactionRollsBack() {
+        TransactionSynchronizationManager.initSynchronization();
+        inventory.dispense(1L, 200, List.of());
+
+        // Reserved for the in-flight withdrawal, but not yet committed
+        assertThrows(NoteCalculationException.class, () -> inventory.dispense(1L, 900, List.of()));
+        assertEquals(List.of(2, 5), quantities(inventory.loadAllocations(1L)));
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        synchronizations.forEach(s -> s.beforeCommit(false));
+        synchronizations.forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertEquals(Map.of(200, 2, 100, 5), inventory.dispense(1L, 900, List.of()));
+        inventory.flush();
+
+        // Only the second dispense reaches the database; the aborted one is still covered by the checkpoint
+        verify(atmAllocationRepo).decrementCounts(1L, Map.of(1L, 2, 2L, 5));
+        assertEquals(2, savedCheckpoint());
+    }
+
+    @Test
+    void recover_shouldReplayUnflushedJournalRecords() {
+        inventory.dispense(1L, 300, List.of());
+        inventory.dispense(1L, 100, List.of());
+        // Crash: nothing was flushed, the journal is left as is
+
+        InMemoryAtmInventoryService restarted = newInventory();
+        restarted.recover();
+
+        verify(atmAllocationRepo).decrementCounts(1L, Map.of(1L, 1, 2L, 2));
+        assertEquals(2, savedCheckpoint());
+        try (InventoryJournal journal = new InventoryJournal(dir.resolve("inventory.journal"))) {
+            assertEquals(0, journal.size());
+        }
+    }
+
+    @Test
+    void flush_shouldHoldBackRecordsCommittedAfterAnInFlightOne_soRecoveryAppliesThemOnce() {
+        TransactionSynchronizationManager.initSynchronization();
+        inventory.dispense(1L, 200, List.of());
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        synchronizations.forEach(s -> s.beforeCommit(false));
+        TransactionSynchronizationManager.clearSynchronization();
+
+        // Sequence 2 commits while sequence 1 is still in flight
+        inventory.dispense(1L, 100, List.of());
+        inventory.flush();
+        verify(atmAllocationRepo, never()).decrementCounts(any(), any());
+
+        synchronizations.forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        // Crash before the next flush
+
+        InMemoryAtmInventoryService restarted = newInventory();
+        restarted.recover();
+
+        verify(atmAllocationRepo, times(1)).decrementCounts(any(), any());
+        verify(atmAllocationRepo).decrementCounts(1L, Map.of(1L, 1, 2L, 1));
+        assertEquals(2, savedCheckpoint());
+    }
+
+    private InMemoryAtmInventoryService newInventory() {
+        return new InMemoryAtmInventoryService(atmAllocationRepo, checkpointRepo, new KnapsackDispenseEngine(),
+                mock(PlatformTransactionManager.class), dir.resolve("inventory.journal").toString());
+    }
+
+    private long savedCheckpoint() {
+        ArgumentCaptor<InventoryCheckpoint> captor = ArgumentCaptor.forClass(InventoryCheckpoint.class);
+        verify(checkpointRepo, atLeastOnce()).save(captor.capture());
+        return captor.getValue().getLastSequence();
+    }
+
+    private static List<Integer> quantities(List<ATMAllocation> allocations) {
+        return allocations.stream().map(ATMAllocation::getQuantity).toList();
+    }
+
+    private static ATMAllocation allocation(ATM atm, long denominationId, int value, int quantity) {
+        ATMAllocation allocation = new ATMAllocation();
+        allocation.setAtm(atm);
+        allocation.setDenomination(new Denomination(denominationId, BigDecimal.valueOf(value)));
+        allocation.setQuantity(quantity);
+        return allocation;
+    }
+}
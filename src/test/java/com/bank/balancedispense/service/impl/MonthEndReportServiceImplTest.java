@@ -0,0 +1,165 @@
+package com.bank.balancedispense.service.impl;
+
+import com.bank.balancedispense.dto.MonthEndReportStatus;
+import com.bank.balancedispense.dto.PartitionTiming;
+import com.bank.balancedispense.entities.CurrencyConversionRate;
+import com.bank.balancedispense.exceptions.ReportAlreadyRunningException;
+import com.bank.balancedispense.repository.ClientAccountRepository;
+import com.bank.balancedispense.repository.ClientAccountRepositoryCustom.BalanceTotal;
+import com.bank.balancedispense.repository.ClientPositionRepository;
+import com.bank.balancedispense.repository.CurrencyConversionRateHistoryRepository;
+import com.bank.balancedispense.repository.CurrencyConversionRateRepository;
+import com.bank.balancedispense.services.impl.MonthEndReportServiceImpl;
+import com.bank.balancedispense.util.CurrencyConversionUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class MonthEndReportServiceImplTest {
+
+    private static final Instant AS_OF = Instant.parse("2026-09-30T23:59:59Z");
+
+    @Mock private ClientAccountRepository accountRepo;
+    @Mock private ClientPositionRepository positionRepo;
+    @Mock private CurrencyConversionRateRepository rateRepo;
+
+    @TempDir
+    Path outputDir;
+
+    private MonthEndReportServiceImpl reportService;
+
+    @BeforeEach
+    void init() {
+        MockitoAnnotations.openMocks(this);
+
+        CurrencyConversionRate usd = new CurrencyConversionRate();
+        usd.setCurrencyCode("USD");
+        usd.setConversionIndicator("*");
+        usd.setRate(new BigDecimal("18.50"));
+        when(rateRepo.findAll()).thenReturn(List.of(usd));
+        CurrencyConversionUtil currencyUtil = new CurrencyConversionUtil(rateRepo, mock(CurrencyConversionRateHistoryRepository.class));
+        currencyUtil.refresh();
+
+        reportService = new MonthEndReportServiceImpl(accountRepo, positionRepo, currencyUtil,
+                mock(PlatformTransactionManager.class), outputDir.toString(), 10, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        reportService.shutdown();
+    }
+
+    @Test
+    void start_shouldConvertEachRangeAndMergeInClientOrder() throws Exception {
+        when(positionRepo.clientIdRange()).thenReturn(Optional.of(new long[]{1, 25}));
+        when(accountRepo.findBalanceTotals(1, 10)).thenReturn(List.of(
+                new BalanceTotal(3L, "CHQ", true, "ZAR", new BigDecimal("1000.00")),
+                new BalanceTotal(3L, "HLOAN", false, "ZAR", new BigDecimal("-500.00")),
+                new BalanceTotal(3L, "CCY", false, "USD", new BigDecimal("100.00"))));
+        when(accountRepo.findBalanceTotals(11, 20)).thenReturn(List.of());
+        when(accountRepo.findBalanceTotals(21, 25)).thenReturn(List.of(
+                new BalanceTotal(25L, "CCY", false, "usd", new BigDecimal("0.01"))));
+
+        MonthEndReportStatus started = reportService.start(AS_OF);
+        assertEquals(3, started.partitions());
+
+        MonthEndReportStatus status = awaitCompletion();
+        assertEquals(MonthEndReportStatus.State.COMPLETED, status.state(), status.error());
+        assertEquals(3, status.completedPartitions());
+        assertEquals(2, status.clients());
+        assertEquals(List.of(1L, 11L, 21L), status.partitionTimings().stream().map(PartitionTiming::fromClientId).toList());
+        assertEquals(0, new BigDecimal("-500.00").compareTo(status.loanBalance()));
+        assertEquals(0, new BigDecimal("1000.00").compareTo(status.transactionalBalance()));
+        // 100 x 18.50 + 0.01 x 18.50 rounded per client
+        assertEquals(0, new BigDecimal("1850.19").compareTo(status.otherBalance()));
+        assertEquals(0, new BigDecimal("500.00").compareTo(status.netPosition()));
+        assertEquals(0, new BigDecimal("2350.19").compareTo(status.totalBalance()));
+
+        Path report = reportService.latestReport().orElseThrow();
+        assertEquals(outputDir.resolve("month-end-20260930T235959Z.csv"), report);
+        assertEquals(List.of(
+                "CLIENT_ID,LOAN_BALANCE_ZAR,TRANSACTIONAL_BALANCE_ZAR,OTHER_BALANCE_ZAR,NET_POSITION_ZAR,TOTAL_BALANCE_ZAR",
+                "3,-500.00,1000.00,1850.00,500.00,2350.00",
+                "25,0.00,0.00,0.19,0.00,0.19"), Files.readAllLines(report));
+        try (var files = Files.list(outputDir)) {
+            assertEquals(List.of(report), files.toList(), "part files must be removed");
+        }
+    }
+
+    @Test
+    void start_shouldWidenRangesOfAHugeIdSpace_andSkipEmptyOnes() throws Exception {
+        when(positionRepo.clientIdRange()).thenReturn(Optional.of(new long[]{1, 3_000_000_000L}));
+        when(accountRepo.findBalanceTotals(1, 2_929_688)).thenReturn(List.of(
+                new BalanceTotal(7L, "CHQ", true, "ZAR", new BigDecimal("10.00"))));
+
+        MonthEndReportStatus started = reportService.start(AS_OF);
+        assertEquals(1024, started.partitions());
+
+        MonthEndReportStatus status = awaitCompletion();
+        assertEquals(MonthEndReportStatus.State.COMPLETED, status.state(), status.error());
+        assertEquals(1024, status.completedPartitions());
+        assertEquals(3_000_000_000L, status.partitionTimings().get(1023).toClientId());
+        verify(accountRepo, times(1024)).findBalanceTotals(anyLong(), anyLong());
+        assertEquals(List.of(
+                "CLIENT_ID,LOAN_BALANCE_ZAR,TRANSACTIONAL_BALANCE_ZAR,OTHER_BALANCE_ZAR,NET_POSITION_ZAR,TOTAL_BALANCE_ZAR",
+                "7,0.00,10.00,0.00,10.00,10.00"), Files.readAllLines(reportService.latestReport().orElseThrow()));
+    }
+
+    @Test
+    void start_shouldRejectSecondRunWhileRunning() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(positionRepo.clientIdRange()).thenReturn(Optional.of(new long[]{1, 5}));
+        when(accountRepo.findBalanceTotals(1, 5)).thenAnswer(inv -> {
+            release.await(5, TimeUnit.SECONDS);
+            return List.of();
+        });
+
+        reportService.start(AS_OF);
+        assertThrows(ReportAlreadyRunningException.class, () -> reportService.start(AS_OF));
+
+        release.countDown();
+        assertEquals(MonthEndReportStatus.State.COMPLETED, awaitCompletion().state());
+    }
+
+    @Test
+    void start_shouldFailRunOnUnknownCurrency() throws Exception {
+        when(positionRepo.clientIdRange()).thenReturn(Optional.of(new long[]{1, 1}));
+        when(accountRepo.findBalanceTotals(1, 1)).thenReturn(List.of(
+                new BalanceTotal(1L, "CCY", false, "GBP", BigDecimal.ONE)));
+
+        reportService.start(AS_OF);
+
+        MonthEndReportStatus status = awaitCompletion();
+        assertEquals(MonthEndReportStatus.State.FAILED, status.state());
+        assertEquals("Unsupported currency: GBP", status.error());
+        assertTrue(reportService.latestReport().isEmpty());
+    }
+
+    private MonthEndReportStatus awaitCompletion() throws InterruptedException {
+        for (int attempt = 0; attempt < 200; attempt++) {
+            MonthEndReportStatus status = reportService.status().orElseThrow();
+            if (status.state() != MonthEndReportStatus.State.RUNNING) {
+                return status;
+            }
+            Thread.sleep(25);
+        }
+        throw new AssertionError("Month-end report did not finish");
+    }
+}
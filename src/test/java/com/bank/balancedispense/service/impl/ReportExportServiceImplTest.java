@@ -0,0 +1,99 @@
+package com.bank.balancedispense.service.impl;
+
+import com.bank.balancedispense.repository.ClientPositionRepository;
+import com.bank.balancedispense.repository.ClientPositionRepositoryCustom.PositionReportRow;
+import com.bank.balancedispense.repository.ClientPositionRepositoryCustom.TopBalance;
+import com.bank.balancedispense.services.ReportExportService.Format;
+import com.bank.balancedispense.services.ReportExportService.Report;
+import com.bank.balancedispense.services.impl.ReportExportServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+
+public class ReportExportServiceImplTest {
+
+    @Mock private ClientPositionRepository positionRepo;
+
+    private ReportExportServiceImpl exportService;
+
+    @BeforeEach
+    void init() {
+        MockitoAnnotations.openMocks(this);
+        exportService = new ReportExportServiceImpl(positionRepo, new ObjectMapper(), 250);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void export_shouldWriteCsvWithHeaderAndQuotedFields() throws Exception {
+        doAnswer(inv -> {
+            Consumer<PositionReportRow> action = inv.getArgument(1);
+            action.accept(new PositionReportRow(1L, "Mr John Doe", new BigDecimal("-1500.00"),
+                    new BigDecimal("2000.00"), new BigDecimal("500.00")));
+            action.accept(new PositionReportRow(2L, "Ms Jane \"JJ\" Smith, Jr", BigDecimal.ZERO,
+                    new BigDecimal("1E+3"), new BigDecimal("1E+3")));
+            return null;
+        }).when(positionRepo).streamPositionReport(eq(250), any(Consumer.class));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportService.export(Report.FINANCIAL_POSITION, Format.CSV, out);
+
+        assertEquals("CLIENT_ID,CLIENT,LOAN_BALANCE,TRANSACTIONAL_BALANCE,NET_POSITION\r\n"
+                        + "1,Mr John Doe,-1500.00,2000.00,500.00\r\n"
+                        + "2,\"Ms Jane \"\"JJ\"\" Smith, Jr\",0,1000,1000\r\n",
+                out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void export_shouldWriteOneJsonObjectPerLine() throws Exception {
+        doAnswer(inv -> {
+            Consumer<TopBalance> action = inv.getArgument(1);
+            action.accept(new TopBalance(1L, "Doe", "TX12345", new BigDecimal("2000.00")));
+            action.accept(new TopBalance(3L, "Smith", "TX3", new BigDecimal("10.00")));
+            return null;
+        }).when(positionRepo).streamTopBalances(eq(250), any(Consumer.class));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportService.export(Report.TOP_TRANSACTIONAL_BALANCES, Format.NDJSON, out);
+
+        assertEquals("{\"CLIENT_ID\":1,\"SURNAME\":\"Doe\",\"CLIENT_ACCOUNT_NUMBER\":\"TX12345\",\"DISPLAY_BALANCE\":2000.00}\n"
+                        + "{\"CLIENT_ID\":3,\"SURNAME\":\"Smith\",\"CLIENT_ACCOUNT_NUMBER\":\"TX3\",\"DISPLAY_BALANCE\":10.00}\n",
+                out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void export_shouldRethrowWriteFailure() {
+        doAnswer(inv -> {
+            Consumer<TopBalance> action = inv.getArgument(1);
+            action.accept(new TopBalance(1L, "Doe", "TX12345", BigDecimal.ONE));
+            return null;
+        }).when(positionRepo).streamTopBalances(eq(250), any(Consumer.class));
+
+        OutputStream closed = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+
+        IOException e = assertThrows(IOException.class,
+                () -> exportService.export(Report.TOP_TRANSACTIONAL_BALANCES, Format.NDJSON, closed));
+        assertEquals("Broken pipe", e.getMessage());
+    }
+}
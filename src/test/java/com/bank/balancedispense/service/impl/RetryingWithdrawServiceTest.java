@@ -0,0 +1,65 @@
+package com.bank.balancedispense.service.impl;
+
+import com.bank.balancedispense.dto.WithdrawRequest;
+import com.bank.balancedispense.dto.WithdrawResponseWrapper;
+import com.bank.balancedispense.exceptions.InsufficientFundsException;
+import com.bank.balancedispense.services.impl.RetryingWithdrawService;
+import com.bank.balancedispense.services.impl.WithdrawServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class RetryingWithdrawServiceTest {
+
+    private final WithdrawRequest request = new WithdrawRequest(1L, "TX12345", 200.0, 1L);
+
+    private WithdrawServiceImpl delegate;
+    private SimpleMeterRegistry meterRegistry;
+    private RetryingWithdrawService retryingService;
+
+    @BeforeEach
+    void init() {
+        delegate = mock(WithdrawServiceImpl.class);
+        meterRegistry = new SimpleMeterRegistry();
+        retryingService = new RetryingWithdrawService(delegate, meterRegistry, 3, 0, 0);
+    }
+
+    @Test
+    void withdraw_shouldRetryConflict_andReturnFreshResult() {
+        WithdrawResponseWrapper response = new WithdrawResponseWrapper(null, null, null, null);
+        when(delegate.withdraw(request))
+                .thenThrow(new OptimisticLockingFailureException("conflict"))
+                .thenReturn(response);
+
+        assertSame(response, retryingService.withdraw(request));
+
+        verify(delegate, times(2)).withdraw(request);
+        assertEquals(1.0, meterRegistry.counter("atm.withdraw.retries").count());
+        assertEquals(0.0, meterRegistry.counter("atm.withdraw.retries.exhausted").count());
+    }
+
+    @Test
+    void withdraw_shouldGiveUpAfterMaxAttempts() {
+        when(delegate.withdraw(request)).thenThrow(new OptimisticLockingFailureException("conflict"));
+
+        assertThrows(OptimisticLockingFailureException.class, () -> retryingService.withdraw(request));
+
+        verify(delegate, times(3)).withdraw(request);
+        assertEquals(2.0, meterRegistry.counter("atm.withdraw.retries").count());
+        assertEquals(1.0, meterRegistry.counter("atm.withdraw.retries.exhausted").count());
+    }
+
+    @Test
+    void withdraw_shouldNotRetryBusinessFailures() {
+        when(delegate.withdraw(request)).thenThrow(new InsufficientFundsException("Insufficient funds"));
+
+        assertThrows(InsufficientFundsException.class, () -> retryingService.withdraw(request));
+
+        verify(delegate, times(1)).withdraw(request);
+        assertEquals(0.0, meterRegistry.counter("atm.withdraw.retries").count());
+    }
+}
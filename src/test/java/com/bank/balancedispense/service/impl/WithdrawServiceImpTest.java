@@ -4,15 +4,23 @@ import com.bank.balancedispense.dto.*;
 import com.bank.balancedispense.entities.*;
 import com.bank.balancedispense.exceptions.*;
 import com.bank.balancedispense.repository.*;
+import com.bank.balancedispense.services.ClientPositionService;
+import com.bank.balancedispense.services.impl.DatabaseAtmInventoryService;
+import com.bank.balancedispense.services.impl.IdempotencyRecordStore;
 import com.bank.balancedispense.services.impl.WithdrawServiceImpl;
+import com.bank.balancedispense.util.ClientBalanceVersions;
 import com.bank.balancedispense.util.CurrencyConversionUtil;
+import com.bank.balancedispense.util.DispensabilityIndex;
+import com.bank.balancedispense.util.KnapsackDispenseEngine;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.OptimisticLockingFailureException;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -23,24 +31,29 @@ public class WithdrawServiceImpTest {
     @Mock private ClientAccountRepository accountRepo;
     @Mock private ATMAllocationRepository atmNoteRepo;
     @Mock private ATMRepository atmRepo;
-    @Mock private ClientRepository clientRepo;
 
     private WithdrawServiceImpl withdrawService;
+    private DispensabilityIndex dispensabilityIndex;
 
     @BeforeEach
     void init() {
         MockitoAnnotations.openMocks(this);
 
         CurrencyConversionRateRepository mockRateRepo = mock(CurrencyConversionRateRepository.class);
-        CurrencyConversionUtil currencyUtil = new CurrencyConversionUtil(mockRateRepo);
-        withdrawService = new WithdrawServiceImpl(accountRepo, atmNoteRepo, atmRepo, clientRepo, currencyUtil);
+        CurrencyConversionUtil currencyUtil = new CurrencyConversionUtil(mockRateRepo, mock(CurrencyConversionRateHistoryRepository.class));
+        dispensabilityIndex = new DispensabilityIndex(20000);
+        KnapsackDispenseEngine dispenseEngine = new KnapsackDispenseEngine();
+        withdrawService = new WithdrawServiceImpl(accountRepo, new DatabaseAtmInventoryService(atmNoteRepo, dispenseEngine),
+                atmRepo, currencyUtil, dispenseEngine, dispensabilityIndex, mock(IdempotencyRecordStore.class),
+                mock(ClientBalanceVersions.class), mock(ClientPositionService.class));
 
         CurrencyConversionRate rate = new CurrencyConversionRate();
         rate.setCurrencyCode("ZAR");
         rate.setConversionIndicator("/");
         rate.setRate(BigDecimal.ONE);
 
-        when(mockRateRepo.findById("ZAR")).thenReturn(Optional.of(rate));
+        when(mockRateRepo.findAll()).thenReturn(List.of(rate));
+        when(accountRepo.debit(any(), any(), any())).thenReturn(Optional.of(BigDecimal.ZERO));
     }
 
     @Test
@@ -50,10 +63,28 @@ public class WithdrawServiceImpTest {
         assertThrows(ATMNotFoundException.class, () -> withdrawService.withdraw(request));
     }
 
+    @Test
+    void withdraw_shouldThrowATMNotFoundException_ifATMInactive() {
+        ATMAllocation alloc = new ATMAllocation();
+        alloc.setDenomination(new Denomination(1L, BigDecimal.valueOf(200)));
+        alloc.setQuantity(5);
+        alloc.setAtm(new ATM(1L, "ATM", false));
+        when(atmNoteRepo.findWithAtmAndDenominationByAtmId(1L)).thenReturn(List.of(alloc));
+
+        WithdrawRequest request = new WithdrawRequest(1L, "TX123", 200.0, 1L);
+        assertThrows(ATMNotFoundException.class, () -> withdrawService.withdraw(request));
+        verifyNoInteractions(atmRepo, accountRepo);
+    }
+
     @Test
     void withdraw_shouldThrowAccountNotFound_ifNoAccount() {
-        when(atmRepo.findById(1L)).thenReturn(Optional.of(new ATM(1L, "ATM", true)));
-        when(accountRepo.findByClient_IdAndAccountNumber(1L, "TX123")).thenReturn(Optional.empty());
+        // Stock the ATM so the dispensability check lets the withdrawal reach the account lookup
+        ATMAllocation alloc = new ATMAllocation();
+        alloc.setDenomination(new Denomination(1L, BigDecimal.valueOf(200)));
+        alloc.setQuantity(5);
+        alloc.setAtm(new ATM(1L, "ATM", true));
+        when(atmNoteRepo.findWithAtmAndDenominationByAtmId(1L)).thenReturn(List.of(alloc));
+        when(accountRepo.findWithDetailsByClientIdAndAccountNumber(1L, "TX123")).thenReturn(Optional.empty());
         WithdrawRequest request = new WithdrawRequest(1L, "TX123", 200.0, 1L);
         assertThrows(AccountNotFoundException.class, () -> withdrawService.withdraw(request));
     }
@@ -61,7 +92,6 @@ public class WithdrawServiceImpTest {
     @Test
     void withdraw_shouldThrowInsufficientFundsException_whenFundsTooLow() {
         ATM atm = new ATM(1L, "ATM", true);
-        when(atmRepo.findById(1L)).thenReturn(Optional.of(atm));
 
         ClientAccount acc = new ClientAccount();
         acc.setAccountNumber("TX123");
@@ -69,14 +99,15 @@ public class WithdrawServiceImpTest {
         acc.setAccountType(new AccountType("CHQ", "Cheque Account", true));
         acc.setCurrency(new Currency("ZAR", 2, "Rand"));
 
-        when(accountRepo.findByClient_IdAndAccountNumber(1L, "TX123")).thenReturn(Optional.of(acc));
+        when(accountRepo.findWithDetailsByClientIdAndAccountNumber(1L, "TX123")).thenReturn(Optional.of(acc));
 
         ATMAllocation note = new ATMAllocation();
         Denomination denom = new Denomination();
         denom.setValue(BigDecimal.valueOf(100));
         note.setDenomination(denom);
         note.setQuantity(20);
-        when(atmNoteRepo.findByAtm_Id(1L)).thenReturn(List.of(note));
+        note.setAtm(atm);
+        when(atmNoteRepo.findWithAtmAndDenominationByAtmId(1L)).thenReturn(List.of(note));
 
         WithdrawRequest request = new WithdrawRequest(1L, "TX123", 1000.0, 1L);
         assertThrows(InsufficientFundsException.class, () -> withdrawService.withdraw(request));
@@ -88,7 +119,6 @@ public class WithdrawServiceImpTest {
         WithdrawRequest request = new WithdrawRequest(clientId, "TX12345", 100.0, 1L);
 
         ATM atm = new ATM(1L, "ATM", true);
-        when(atmRepo.findById(1L)).thenReturn(Optional.of(atm));
 
         ClientAccount acc = new ClientAccount();
         acc.setAccountNumber("TX12345");
@@ -97,16 +127,16 @@ public class WithdrawServiceImpTest {
         acc.setAccountType(new AccountType("CHQ", "Cheque Account", true));
         acc.setClient(new Client(1L, "Mr", "John", "Doe"));
 
-        when(accountRepo.findByClient_IdAndAccountNumber(clientId, "TX12345")).thenReturn(Optional.of(acc));
-        when(clientRepo.findById(clientId)).thenReturn(Optional.of(acc.getClient()));
+        when(accountRepo.findWithDetailsByClientIdAndAccountNumber(clientId, "TX12345")).thenReturn(Optional.of(acc));
 
         ATMAllocation note50 = new ATMAllocation();
         Denomination denom50 = new Denomination();
         denom50.setValue(BigDecimal.valueOf(50));
         note50.setDenomination(denom50);
         note50.setQuantity(0);
+        note50.setAtm(atm);
 
-        when(atmNoteRepo.findByAtm_Id(1L)).thenReturn(List.of(note50));
+        when(atmNoteRepo.findWithAtmAndDenominationByAtmId(1L)).thenReturn(List.of(note50));
 
         NoteCalculationException ex = assertThrows(NoteCalculationException.class, () -> withdrawService.withdraw(request));
         assertTrue(ex.getMessage().contains("Amount cannot be dispensed"));
@@ -119,7 +149,6 @@ public class WithdrawServiceImpTest {
         WithdrawRequest request = new WithdrawRequest(clientId, "TX12345", 200.0, 1L);
 
         ATM atm = new ATM(1L, "Branch", true);
-        when(atmRepo.findById(1L)).thenReturn(Optional.of(atm));
 
         ClientAccount account = new ClientAccount();
         account.setAccountNumber("TX12345");
@@ -130,8 +159,10 @@ public class WithdrawServiceImpTest {
         Client client = new Client(1L, "Mr", "John", "Doe");
         account.setClient(client);
 
-        when(accountRepo.findByClient_IdAndAccountNumber(clientId, "TX12345")).thenReturn(Optional.of(account));
-        when(clientRepo.findById(clientId)).thenReturn(Optional.of(client));
+        when(accountRepo.findWithDetailsByClientIdAndAccountNumber(clientId, "TX12345")).thenReturn(Optional.of(account));
+        // A concurrent withdrawal of 50 committed after the account was loaded
+        when(accountRepo.debit("TX12345", BigDecimal.valueOf(200.0), BigDecimal.valueOf(-10000.0)))
+                .thenReturn(Optional.of(BigDecimal.valueOf(750.0)));
 
         Denomination denomination = new Denomination();
         denomination.setId(1L);
@@ -141,8 +172,9 @@ public class WithdrawServiceImpTest {
         alloc.setId(1L);
         alloc.setQuantity(5);
         alloc.setDenomination(denomination);
+        alloc.setAtm(atm);
 
-        when(atmNoteRepo.findByAtm_Id(1L)).thenReturn(List.of(alloc));
+        when(atmNoteRepo.findWithAtmAndDenominationByAtmId(1L)).thenReturn(List.of(alloc));
 
         WithdrawResponseWrapper response = withdrawService.withdraw(request);
 
@@ -152,7 +184,12 @@ public class WithdrawServiceImpTest {
         assertEquals(1, response.denomination().get(0).count());
         assertTrue(response.result().success());
 
-        verify(accountRepo).save(any(ClientAccount.class));
+        assertEquals(0, BigDecimal.valueOf(750.0).compareTo(response.account().balance()));
+
+        verify(accountRepo).debit("TX12345", BigDecimal.valueOf(200.0), BigDecimal.valueOf(-10000.0));
+        verify(accountRepo, never()).save(any(ClientAccount.class));
+        verify(atmNoteRepo).decrementCounts(1L, Map.of(1L, 1));
+        assertEquals(5, alloc.getQuantity());
     }
 
     @Test
@@ -161,7 +198,6 @@ public class WithdrawServiceImpTest {
         WithdrawRequest request = new WithdrawRequest(clientId, "TX12345", 300.0, 1L);
 
         ATM atm = new ATM(1L, "ATM", true);
-        when(atmRepo.findById(1L)).thenReturn(Optional.of(atm));
 
         ClientAccount acc = new ClientAccount();
         acc.setAccountNumber("TX12345");
@@ -170,8 +206,7 @@ public class WithdrawServiceImpTest {
         acc.setAccountType(new AccountType("CHQ", "Cheque Account", true));
         acc.setClient(new Client(1L, "Mr", "John", "Doe"));
 
-        when(accountRepo.findByClient_IdAndAccountNumber(clientId, "TX12345")).thenReturn(Optional.of(acc));
-        when(clientRepo.findById(clientId)).thenReturn(Optional.of(acc.getClient()));
+        when(accountRepo.findWithDetailsByClientIdAndAccountNumber(clientId, "TX12345")).thenReturn(Optional.of(acc));
 
         Denomination note200 = new Denomination(1L, BigDecimal.valueOf(200));
         Denomination note50 = new Denomination(2L, BigDecimal.valueOf(50));
@@ -179,15 +214,133 @@ public class WithdrawServiceImpTest {
         ATMAllocation alloc200 = new ATMAllocation();
         alloc200.setDenomination(note200);
         alloc200.setQuantity(1);
+        alloc200.setAtm(atm);
 
         ATMAllocation alloc50 = new ATMAllocation();
         alloc50.setDenomination(note50);
         alloc50.setQuantity(1);
+        alloc50.setAtm(atm);
 
-        when(atmNoteRepo.findByAtm_Id(1L)).thenReturn(List.of(alloc200, alloc50));
+        when(atmNoteRepo.findWithAtmAndDenominationByAtmId(1L)).thenReturn(List.of(alloc200, alloc50));
 
         NoteCalculationException ex = assertThrows(NoteCalculationException.class, () -> withdrawService.withdraw(request));
         assertEquals(250, ex.getFallbackAmount());
+        assertEquals(List.of(new DispenseAlternative(250, DispenseAlternative.Direction.LOWER)), ex.getAlternatives());
+    }
+
+    @Test
+    void withdraw_shouldRejectFromIndex_beforeAccountLookup() {
+        Denomination note200 = new Denomination(1L, BigDecimal.valueOf(200));
+        ATMAllocation alloc200 = new ATMAllocation();
+        alloc200.setDenomination(note200);
+        alloc200.setQuantity(2);
+        alloc200.setAtm(new ATM(1L, "ATM", true));
+        when(atmNoteRepo.findWithAtmAndDenominationByAtmId(1L)).thenReturn(List.of(alloc200));
+
+        WithdrawRequest request = new WithdrawRequest(1L, "TX12345", 300.0, 1L);
+        NoteCalculationException ex = assertThrows(NoteCalculationException.class, () -> withdrawService.withdraw(request));
+
+        assertEquals(200, ex.getFallbackAmount());
+        verifyNoInteractions(accountRepo);
     }
 
+    @Test
+    void withdraw_shouldRejectFromIndex_withoutLoadingAllocations_onceAtmIsIndexed() {
+        Denomination note200 = new Denomination(1L, BigDecimal.valueOf(200));
+        ATMAllocation alloc200 = new ATMAllocation();
+        alloc200.setDenomination(note200);
+        alloc200.setQuantity(2);
+        alloc200.setAtm(new ATM(1L, "ATM", true));
+        when(atmNoteRepo.findWithAtmAndDenominationByAtmId(1L)).thenReturn(List.of(alloc200));
+
+        WithdrawRequest request = new WithdrawRequest(1L, "TX12345", 300.0, 1L);
+        assertThrows(NoteCalculationException.class, () -> withdrawService.withdraw(request));
+        NoteCalculationException ex = assertThrows(NoteCalculationException.class, () -> withdrawService.withdraw(request));
+
+        assertEquals(200, ex.getFallbackAmount());
+        verify(atmNoteRepo, times(1)).findWithAtmAndDenominationByAtmId(1L);
+        verifyNoInteractions(atmRepo, accountRepo);
+    }
+
+    @Test
+    void withdraw_shouldUpdateIndex_afterDispense() {
+        Long clientId = 1L;
+
+        ClientAccount account = new ClientAccount();
+        account.setAccountNumber("TX12345");
+        account.setDisplayBalance(BigDecimal.valueOf(1000.0));
+        account.setCurrency(new Currency("ZAR", 2, "Rand"));
+        account.setAccountType(new AccountType("CHQ", "Cheque Account", true));
+        Client client = new Client(1L, "Mr", "John", "Doe");
+        account.setClient(client);
+
+        when(accountRepo.findWithDetailsByClientIdAndAccountNumber(clientId, "TX12345")).thenReturn(Optional.of(account));
+
+        ATMAllocation alloc = new ATMAllocation();
+        alloc.setId(1L);
+        alloc.setQuantity(1);
+        alloc.setDenomination(new Denomination(1L, BigDecimal.valueOf(200)));
+        alloc.setAtm(new ATM(1L, "Branch", true));
+        when(atmNoteRepo.findWithAtmAndDenominationByAtmId(1L)).thenReturn(List.of(alloc));
+
+        withdrawService.withdraw(new WithdrawRequest(clientId, "TX12345", 200.0, 1L));
+
+        assertEquals(DispensabilityIndex.Verdict.NOT_DISPENSABLE, dispensabilityIndex.check(1L, 200));
+        assertEquals(1, dispensabilityIndex.version(1L));
+    }
+
+    @Test
+    void withdraw_shouldFailWithoutIndexUpdate_whenCassetteChangedConcurrently() {
+        Long clientId = 1L;
+
+        ClientAccount account = new ClientAccount();
+        account.setAccountNumber("TX12345");
+        account.setDisplayBalance(BigDecimal.valueOf(1000.0));
+        account.setCurrency(new Currency("ZAR", 2, "Rand"));
+        account.setAccountType(new AccountType("CHQ", "Cheque Account", true));
+        account.setClient(new Client(1L, "Mr", "John", "Doe"));
+        when(accountRepo.findWithDetailsByClientIdAndAccountNumber(clientId, "TX12345")).thenReturn(Optional.of(account));
+
+        ATMAllocation alloc = new ATMAllocation();
+        alloc.setId(1L);
+        alloc.setQuantity(1);
+        alloc.setDenomination(new Denomination(1L, BigDecimal.valueOf(200)));
+        alloc.setAtm(new ATM(1L, "Branch", true));
+        when(atmNoteRepo.findWithAtmAndDenominationByAtmId(1L)).thenReturn(List.of(alloc));
+        doThrow(new OptimisticLockingFailureException("ATM 1 no longer holds 1 notes of denomination 1"))
+                .when(atmNoteRepo).decrementCounts(1L, Map.of(1L, 1));
+
+        WithdrawRequest request = new WithdrawRequest(clientId, "TX12345", 200.0, 1L);
+        assertThrows(OptimisticLockingFailureException.class, () -> withdrawService.withdraw(request));
+
+        assertEquals(0, dispensabilityIndex.version(1L));
+    }
+
+    @Test
+    void withdraw_shouldThrowInsufficientFunds_whenConditionalDebitMatchesNoRow() {
+        Long clientId = 1L;
+
+        ClientAccount account = new ClientAccount();
+        account.setAccountNumber("TX12345");
+        account.setDisplayBalance(BigDecimal.valueOf(1000.0));
+        account.setCurrency(new Currency("ZAR", 2, "Rand"));
+        account.setAccountType(new AccountType("CHQ", "Cheque Account", true));
+        account.setClient(new Client(1L, "Mr", "John", "Doe"));
+        when(accountRepo.findWithDetailsByClientIdAndAccountNumber(clientId, "TX12345")).thenReturn(Optional.of(account));
+        // Balance was drawn down by a concurrent withdrawal after it was loaded
+        when(accountRepo.debit("TX12345", BigDecimal.valueOf(200.0), BigDecimal.valueOf(-10000.0))).thenReturn(Optional.empty());
+
+        ATMAllocation alloc = new ATMAllocation();
+        alloc.setId(1L);
+        alloc.setQuantity(1);
+        alloc.setDenomination(new Denomination(1L, BigDecimal.valueOf(200)));
+        alloc.setAtm(new ATM(1L, "Branch", true));
+        when(atmNoteRepo.findWithAtmAndDenominationByAtmId(1L)).thenReturn(List.of(alloc));
+
+        WithdrawRequest request = new WithdrawRequest(clientId, "TX12345", 200.0, 1L);
+        assertThrows(InsufficientFundsException.class, () -> withdrawService.withdraw(request));
+
+        verify(atmNoteRepo, never()).decrementCounts(any(), any());
+        assertEquals(0, dispensabilityIndex.version(1L));
+    }
 }
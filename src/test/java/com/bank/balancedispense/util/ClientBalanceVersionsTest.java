@@ -0,0 +1,63 @@
+package com.bank.balancedispense.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ClientBalanceVersionsTest {
+
+    private CurrencyConversionUtil currencyUtil;
+    private ClientBalanceVersions versions;
+
+    @BeforeEach
+    void init() {
+        currencyUtil = mock(CurrencyConversionUtil.class);
+        versions = new ClientBalanceVersions(currencyUtil, 4096);
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void etag_shouldBeStableUntilClientChanges() {
+        String etag = versions.etag(1L);
+        assertTrue(etag.startsWith("W/\""));
+        assertEquals(etag, versions.etag(1L));
+
+        versions.recordChange(1L);
+
+        assertNotEquals(etag, versions.etag(1L));
+    }
+
+    @Test
+    void etag_shouldChange_whenRatesChange() {
+        String etag = versions.etag(1L);
+
+        when(currencyUtil.generation()).thenReturn(1L);
+
+        assertNotEquals(etag, versions.etag(1L));
+    }
+
+    @Test
+    void recordChange_shouldWaitForTransactionCompletion() {
+        String etag = versions.etag(1L);
+        TransactionSynchronizationManager.initSynchronization();
+
+        versions.recordChange(1L);
+        assertEquals(etag, versions.etag(1L));
+
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        assertNotEquals(etag, versions.etag(1L));
+    }
+}
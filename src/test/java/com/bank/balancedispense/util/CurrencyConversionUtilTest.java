@@ -0,0 +1,119 @@
+package com.bank.balancedispense.util;
+
+import com.bank.balancedispense.entities.CurrencyConversionRate;
+import com.bank.balancedispense.entities.CurrencyConversionRateHistory;
+import com.bank.balancedispense.repository.CurrencyConversionRateHistoryRepository;
+import com.bank.balancedispense.repository.CurrencyConversionRateRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class CurrencyConversionUtilTest {
+
+    private CurrencyConversionRateRepository rateRepo;
+    private CurrencyConversionRateHistoryRepository historyRepo;
+    private CurrencyConversionUtil currencyUtil;
+
+    @BeforeEach
+    void init() {
+        rateRepo = mock(CurrencyConversionRateRepository.class);
+        when(rateRepo.findAll()).thenReturn(List.of(
+                new CurrencyConversionRate("USD", "*", new BigDecimal("18.50"), null),
+                new CurrencyConversionRate("GBP", "/", new BigDecimal("0.04"), null),
+                new CurrencyConversionRate("XXX", "%", BigDecimal.ONE, null)));
+        historyRepo = mock(CurrencyConversionRateHistoryRepository.class);
+        currencyUtil = new CurrencyConversionUtil(rateRepo, historyRepo);
+        currencyUtil.refresh();
+    }
+
+    @Test
+    void getConversionRate_shouldServeRepeatedLookupsFromSnapshot() {
+        for (int i = 0; i < 50; i++) {
+            assertEquals(new BigDecimal("18.50"), currencyUtil.getConversionRate("usd"));
+            assertEquals(new BigDecimal("25.00000000"), currencyUtil.getConversionRate("GBP"));
+            assertEquals(BigDecimal.ONE, currencyUtil.getConversionRate("ZAR"));
+        }
+        verify(rateRepo, times(1)).findAll();
+        verify(rateRepo, never()).findById(any());
+    }
+
+    @Test
+    void refresh_shouldSwapInChangedRates() {
+        long generation = currencyUtil.generation();
+        when(rateRepo.findAll()).thenReturn(List.of(new CurrencyConversionRate("USD", "*", new BigDecimal("19.00"), null)));
+
+        currencyUtil.refresh();
+
+        assertEquals(new BigDecimal("19.00"), currencyUtil.getConversionRate("USD"));
+        assertNotEquals(generation, currencyUtil.generation());
+    }
+
+    @Test
+    void refresh_shouldKeepGeneration_whenRatesAreUnchanged() {
+        long generation = currencyUtil.generation();
+
+        currencyUtil.refresh();
+
+        assertEquals(generation, currencyUtil.generation());
+    }
+
+    @Test
+    void getConversionRate_shouldReloadOnce_forUnknownCurrency() {
+        assertThrows(IllegalArgumentException.class, () -> currencyUtil.getConversionRate("JPY"));
+        verify(rateRepo, times(2)).findAll();
+
+        when(rateRepo.findAll()).thenReturn(List.of(new CurrencyConversionRate("JPY", "/", new BigDecimal("8.00"), null)));
+        // Another currency's first miss reloads again and brings in the new rate
+        assertThrows(IllegalArgumentException.class, () -> currencyUtil.getConversionRate("CHF"));
+        assertEquals(new BigDecimal("0.12500000"), currencyUtil.getConversionRate("JPY"));
+        verify(rateRepo, times(3)).findAll();
+    }
+
+    @Test
+    void getConversionRate_shouldNotReloadAgain_forCurrencyThatAlreadyMissed() {
+        Function<String, RateVersion> snapshot = currencyUtil.snapshotAsOf(Instant.now());
+        for (int i = 0; i < 50; i++) {
+            assertThrows(IllegalArgumentException.class, () -> currencyUtil.getConversionRate("JPY"));
+            assertThrows(IllegalArgumentException.class, () -> snapshot.apply("JPY"));
+        }
+        verify(rateRepo, times(2)).findAll();
+
+        when(rateRepo.findAll()).thenReturn(List.of(new CurrencyConversionRate("JPY", "/", new BigDecimal("8.00"), null)));
+        currencyUtil.refresh();
+        assertEquals(new BigDecimal("0.12500000"), currencyUtil.getConversionRate("JPY"));
+    }
+
+    @Test
+    void getConversionRate_shouldRejectInvalidIndicator_withoutReloading() {
+        assertThrows(IllegalStateException.class, () -> currencyUtil.getConversionRate("XXX"));
+        verify(rateRepo, times(1)).findAll();
+    }
+
+    @Test
+    void rateAsOf_shouldPickVersionInForceAtInstant() {
+        Instant t1 = Instant.parse("2024-01-01T00:00:00Z");
+        Instant t2 = Instant.parse("2024-02-01T00:00:00Z");
+        when(historyRepo.findAll()).thenReturn(List.of(
+                new CurrencyConversionRateHistory(7L, "USD", "*", new BigDecimal("19.00"), t2),
+                new CurrencyConversionRateHistory(3L, "USD", "*", new BigDecimal("18.00"), t1)));
+        currencyUtil.refresh();
+
+        assertThrows(IllegalArgumentException.class, () -> currencyUtil.rateAsOf("USD", t1.minusSeconds(1)));
+        assertEquals(3L, currencyUtil.rateAsOf("USD", t1).version());
+        assertEquals(new BigDecimal("18.00"), currencyUtil.getConversionRate("USD", t2.minusNanos(1)));
+        assertEquals(7L, currencyUtil.rateAsOf("USD", t2).version());
+        assertEquals(new BigDecimal("19.00"), currencyUtil.getConversionRate("USD"));
+
+        // Currencies without history keep their current rate as version 0
+        assertEquals(0L, currencyUtil.rateAsOf("GBP", t1).version());
+        verify(historyRepo, times(2)).findAll();
+    }
+}
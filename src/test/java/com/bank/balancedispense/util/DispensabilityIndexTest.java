@@ -0,0 +1,168 @@
+package com.bank.balancedispense.util;
+
+import com.bank.balancedispense.dto.DispenseAlternative;
+import com.bank.balancedispense.entities.ATMAllocation;
+import com.bank.balancedispense.entities.Denomination;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit and property tests for the per-ATM dispensability index.
+ */
+public class DispensabilityIndexTest {
+
+    private static final int[] DENOMINATION_POOL = {10, 20, 50, 100, 200};
+
+    /**
+     * Test that an ATM is unknown until it has been registered.
+     */
+    @Test
+    public void testCheck_unregisteredAtm_returnsUnknown() {
+        DispensabilityIndex index = new DispensabilityIndex(20000);
+
+        assertEquals(DispensabilityIndex.Verdict.UNKNOWN, index.check(1L, 100));
+        assertEquals(-1, index.version(1L));
+    }
+
+    /**
+     * Test verdicts and alternatives for a registered ATM.
+     */
+    @Test
+    public void testCheck_registeredAtm() {
+        DispensabilityIndex index = new DispensabilityIndex(20000);
+        index.register(1L, index.beginRead(1L), List.of(createNote(50, 5), createNote(20, 5)));
+
+        assertEquals(DispensabilityIndex.Verdict.DISPENSABLE, index.check(1L, 60));
+        assertEquals(DispensabilityIndex.Verdict.NOT_DISPENSABLE, index.check(1L, 30));
+        assertEquals(DispensabilityIndex.Verdict.NOT_DISPENSABLE, index.check(1L, 60.5));
+        assertEquals(List.of(
+                new DispenseAlternative(20, DispenseAlternative.Direction.LOWER),
+                new DispenseAlternative(40, DispenseAlternative.Direction.HIGHER)
+        ), index.alternatives(1L, 30));
+    }
+
+    /**
+     * Test that amounts above the indexed range are left to the full calculation.
+     */
+    @Test
+    public void testCheck_aboveIndexedRange_returnsUnknown() {
+        DispensabilityIndex index = new DispensabilityIndex(1000);
+        index.register(1L, index.beginRead(1L), List.of(createNote(200, 50)));
+
+        assertEquals(DispensabilityIndex.Verdict.DISPENSABLE, index.check(1L, 1000));
+        assertEquals(DispensabilityIndex.Verdict.UNKNOWN, index.check(1L, 1200));
+    }
+
+    /**
+     * Test that a registration is discarded when a dispense was applied after the read began.
+     */
+    @Test
+    public void testRegister_staleRead_isDiscarded() {
+        DispensabilityIndex index = new DispensabilityIndex(20000);
+        long ticket = index.beginRead(1L);
+        index.recordDispense(1L, Map.of(200, 1));
+
+        index.register(1L, ticket, List.of(createNote(200, 1)));
+
+        assertEquals(DispensabilityIndex.Verdict.UNKNOWN, index.check(1L, 200));
+    }
+
+    /**
+     * Test that invalidation drops the entry.
+     */
+    @Test
+    public void testInvalidate_dropsEntry() {
+        DispensabilityIndex index = new DispensabilityIndex(20000);
+        index.register(1L, index.beginRead(1L), List.of(createNote(100, 1)));
+
+        index.invalidate(1L);
+
+        assertEquals(DispensabilityIndex.Verdict.UNKNOWN, index.check(1L, 100));
+    }
+
+    /**
+     * Property: after any sequence of dispenses the incrementally maintained index agrees
+     * with brute-force reachability of the remaining notes.
+     */
+    @Test
+    public void testIncrementalUpdates_matchBruteForce() {
+        Random random = new Random(20240503L);
+
+        for (int trial = 0; trial < 200; trial++) {
+            Map<Integer, Integer> stock = new TreeMap<>(Comparator.reverseOrder());
+            for (int value : DENOMINATION_POOL) {
+                if (random.nextInt(3) > 0) {
+                    stock.put(value, random.nextInt(6));
+                }
+            }
+
+            DispensabilityIndex index = new DispensabilityIndex(3000);
+            index.register(1L, index.beginRead(1L), toNotes(stock));
+            assertMatches(index, stock);
+
+            for (int step = 0; step < 4; step++) {
+                Map<Integer, Integer> dispensed = new HashMap<>();
+                stock.forEach((value, qty) -> {
+                    if (qty > 0 && random.nextBoolean()) {
+                        dispensed.put(value, 1 + random.nextInt(qty));
+                    }
+                });
+                dispensed.forEach((value, qty) -> stock.merge(value, -qty, Integer::sum));
+
+                index.recordDispense(1L, dispensed);
+                assertEquals(step + 1, index.version(1L));
+                assertMatches(index, stock);
+            }
+        }
+    }
+
+    private void assertMatches(DispensabilityIndex index, Map<Integer, Integer> stock) {
+        boolean[] reachable = new boolean[3001];
+        enumerate(new ArrayList<>(stock.entrySet()), 0, 0, reachable);
+
+        for (int amount = 10; amount <= 3000; amount += 10) {
+            DispensabilityIndex.Verdict expected = reachable[amount]
+                    ? DispensabilityIndex.Verdict.DISPENSABLE
+                    : DispensabilityIndex.Verdict.NOT_DISPENSABLE;
+            assertEquals(expected, index.check(1L, amount), "amount " + amount + " from " + stock);
+        }
+    }
+
+    private void enumerate(List<Map.Entry<Integer, Integer>> stock, int index, int amount, boolean[] reachable) {
+        if (amount >= reachable.length) {
+            return;
+        }
+        if (index == stock.size()) {
+            reachable[amount] = amount > 0;
+            return;
+        }
+        Map.Entry<Integer, Integer> entry = stock.get(index);
+        for (int qty = 0; qty <= entry.getValue(); qty++) {
+            enumerate(stock, index + 1, amount + qty * entry.getKey(), reachable);
+        }
+    }
+
+    private List<ATMAllocation> toNotes(Map<Integer, Integer> stock) {
+        List<ATMAllocation> notes = new ArrayList<>();
+        stock.forEach((value, qty) -> notes.add(createNote(value, qty)));
+        return notes;
+    }
+
+    /**
+     * Utility method to construct ATMAllocation test data with Denomination entity.
+     */
+    private ATMAllocation createNote(int denominationValue, int quantity) {
+        Denomination denomination = new Denomination();
+        denomination.setValue(BigDecimal.valueOf(denominationValue));
+
+        ATMAllocation note = new ATMAllocation();
+        note.setDenomination(denomination);
+        note.setQuantity(quantity);
+
+        return note;
+    }
+}
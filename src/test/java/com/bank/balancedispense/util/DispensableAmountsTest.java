@@ -0,0 +1,150 @@
+package com.bank.balancedispense.util;
+
+import com.bank.balancedispense.dto.DispenseAlternative;
+import com.bank.balancedispense.entities.ATMAllocation;
+import com.bank.balancedispense.entities.Denomination;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit and property tests for the reachable-amount bitset.
+ */
+public class DispensableAmountsTest {
+
+    private static final int[] DENOMINATION_POOL = {10, 20, 50, 100, 200};
+
+    /**
+     * Test that both nearest alternatives are suggested, lower first.
+     */
+    @Test
+    public void testAlternatives_returnsNearestLowerAndHigher() {
+        DispensableAmounts amounts = DispensableAmounts.of(List.of(createNote(200, 2), createNote(50, 1)));
+
+        assertEquals(List.of(
+                new DispenseAlternative(250, DispenseAlternative.Direction.LOWER),
+                new DispenseAlternative(400, DispenseAlternative.Direction.HIGHER)
+        ), amounts.alternatives(300));
+    }
+
+    /**
+     * Test that amounts greedy would reject are recognised as dispensable.
+     */
+    @Test
+    public void testIsDispensable_exactReachability() {
+        DispensableAmounts amounts = DispensableAmounts.of(List.of(createNote(50, 5), createNote(20, 5)));
+
+        assertTrue(amounts.isDispensable(60));
+        assertTrue(amounts.isDispensable(110));
+        assertFalse(amounts.isDispensable(30));
+        assertFalse(amounts.isDispensable(60.5));
+        assertFalse(amounts.isDispensable(1000));
+    }
+
+    /**
+     * Test that an ATM without notes has no alternatives.
+     */
+    @Test
+    public void testAlternatives_noNotes_returnsEmpty() {
+        DispensableAmounts amounts = DispensableAmounts.of(List.of(createNote(50, 0)));
+
+        assertTrue(amounts.alternatives(100).isEmpty());
+        assertFalse(amounts.isDispensable(50));
+    }
+
+    /**
+     * Test lookups across 64-bit word boundaries on a large cassette.
+     */
+    @Test
+    public void testNearest_acrossWordBoundaries() {
+        DispensableAmounts amounts = DispensableAmounts.of(new int[]{200}, new int[]{500});
+
+        assertEquals(OptionalInt.of(99_800), amounts.nearestBelow(99_900));
+        assertEquals(OptionalInt.of(100_000), amounts.nearestAbove(99_900));
+        assertEquals(OptionalInt.empty(), amounts.nearestAbove(100_000));
+        assertEquals(OptionalInt.of(100_000), amounts.nearestBelow(250_000));
+    }
+
+    /**
+     * Property: for random cassette mixes every membership and nearest-amount lookup
+     * agrees with an exhaustive enumeration of note combinations.
+     */
+    @Test
+    public void testLookups_matchBruteForce() {
+        Random random = new Random(20240502L);
+
+        for (int trial = 0; trial < 400; trial++) {
+            List<ATMAllocation> notes = new ArrayList<>();
+            for (int value : DENOMINATION_POOL) {
+                if (random.nextInt(3) > 0) {
+                    notes.add(createNote(value, random.nextInt(6)));
+                }
+            }
+            boolean[] reachable = bruteForce(notes);
+            DispensableAmounts amounts = DispensableAmounts.of(notes);
+
+            for (int amount = 1; amount < reachable.length; amount++) {
+                assertEquals(reachable[amount], amounts.isDispensable(amount), "amount " + amount);
+
+                int below = -1;
+                for (int t = amount - 1; t > 0; t--) {
+                    if (reachable[t]) {
+                        below = t;
+                        break;
+                    }
+                }
+                int above = -1;
+                for (int t = amount + 1; t < reachable.length; t++) {
+                    if (reachable[t]) {
+                        above = t;
+                        break;
+                    }
+                }
+                assertEquals(below < 0 ? OptionalInt.empty() : OptionalInt.of(below), amounts.nearestBelow(amount));
+                assertEquals(above < 0 ? OptionalInt.empty() : OptionalInt.of(above), amounts.nearestAbove(amount));
+            }
+        }
+    }
+
+    private boolean[] bruteForce(List<ATMAllocation> notes) {
+        int total = 0;
+        for (ATMAllocation note : notes) {
+            total += note.getDenomination().getValue().intValue() * note.getQuantity();
+        }
+        boolean[] reachable = new boolean[total + 100];
+        enumerate(notes, 0, 0, reachable);
+        return reachable;
+    }
+
+    private void enumerate(List<ATMAllocation> notes, int index, int amount, boolean[] reachable) {
+        if (index == notes.size()) {
+            reachable[amount] = amount > 0;
+            return;
+        }
+        ATMAllocation note = notes.get(index);
+        int value = note.getDenomination().getValue().intValue();
+        for (int qty = 0; qty <= note.getQuantity(); qty++) {
+            enumerate(notes, index + 1, amount + qty * value, reachable);
+        }
+    }
+
+    /**
+     * Utility method to construct ATMAllocation test data with Denomination entity.
+     */
+    private ATMAllocation createNote(int denominationValue, int quantity) {
+        Denomination denomination = new Denomination();
+        denomination.setValue(BigDecimal.valueOf(denominationValue));
+
+        ATMAllocation note = new ATMAllocation();
+        note.setDenomination(denomination);
+        note.setQuantity(quantity);
+
+        return note;
+    }
+}
@@ -0,0 +1,78 @@
+package com.bank.balancedispense.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the inventory journal's append and replay behaviour.
+ */
+public class InventoryJournalTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Test that replay returns the dispenses after the checkpoint, without aborted ones.
+     */
+    @Test
+    public void testReplay_skipsCheckpointedAndAbortedRecords() {
+        Path path = dir.resolve("inventory.journal");
+        try (InventoryJournal journal = new InventoryJournal(path)) {
+            assertEquals(1, journal.appendDispense(1L, Map.of(1L, 2)));
+            assertEquals(2, journal.appendDispense(1L, Map.of(2L, 1)));
+            assertEquals(3, journal.appendDispense(2L, Map.of(1L, 1, 3L, 4)));
+            journal.appendAbort(2);
+        }
+
+        try (InventoryJournal reopened = new InventoryJournal(path)) {
+            InventoryJournal.Replay replay = reopened.replay(1);
+
+            assertEquals(List.of(new InventoryJournal.Entry(3, 2L, Map.of(1L, 1, 3L, 4))), replay.committed());
+            assertEquals(3, replay.lastSequence());
+            assertEquals(4, reopened.appendDispense(1L, Map.of(1L, 1)));
+        }
+    }
+
+    /**
+     * Test that a record torn by a crash mid-write is ignored.
+     */
+    @Test
+    public void testReplay_ignoresTornLastRecord() throws IOException {
+        Path path = dir.resolve("inventory.journal");
+        try (InventoryJournal journal = new InventoryJournal(path)) {
+            journal.appendDispense(1L, Map.of(1L, 2));
+        }
+        Files.writeString(path, "D 2 1 1:1", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (InventoryJournal reopened = new InventoryJournal(path)) {
+            InventoryJournal.Replay replay = reopened.replay(0);
+
+            assertEquals(1, replay.committed().size());
+            assertEquals(1, replay.lastSequence());
+        }
+    }
+
+    /**
+     * Test that truncation empties the journal but keeps the sequence numbering.
+     */
+    @Test
+    public void testTruncate_keepsSequence() {
+        try (InventoryJournal journal = new InventoryJournal(dir.resolve("inventory.journal"))) {
+            journal.appendDispense(1L, Map.of(1L, 2));
+            journal.truncate();
+
+            assertEquals(0, journal.size());
+            assertEquals(2, journal.appendDispense(1L, Map.of(1L, 1)));
+        }
+    }
+}
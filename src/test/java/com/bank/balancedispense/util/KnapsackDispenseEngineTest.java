@@ -0,0 +1,190 @@
+package com.bank.balancedispense.util;
+
+import com.bank.balancedispense.entities.ATMAllocation;
+import com.bank.balancedispense.entities.Denomination;
+import com.bank.balancedispense.exceptions.NoteCalculationException;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit and property tests for the bounded-knapsack dispense engine.
+ * Random cassette mixes are checked against an exhaustive brute-force search.
+ */
+public class KnapsackDispenseEngineTest {
+
+    private static final int[] DENOMINATION_POOL = {10, 20, 50, 100, 200};
+
+    private final KnapsackDispenseEngine engine = new KnapsackDispenseEngine();
+
+    /**
+     * Greedy would take a R50 and get stuck on R10; the exact engine pays 3 x R20.
+     */
+    @Test
+    public void testCalculate_payoutGreedyRejects() {
+        List<ATMAllocation> notes = List.of(createNote(50, 5), createNote(20, 5));
+
+        assertEquals(Map.of(20, 3), engine.calculate(60, notes));
+        assertEquals(Map.of(50, 1, 20, 3), engine.calculate(110, notes));
+    }
+
+    /**
+     * Test that the combination with the fewest notes is chosen.
+     */
+    @Test
+    public void testCalculate_prefersFewestNotes() {
+        List<ATMAllocation> notes = List.of(createNote(200, 5), createNote(100, 5), createNote(50, 5));
+
+        Map<Integer, Integer> result = engine.calculate(500, notes);
+
+        assertEquals(2, result.get(200));
+        assertEquals(1, result.get(100));
+        assertNull(result.get(50));
+    }
+
+    /**
+     * Test that note quantities are respected.
+     */
+    @Test
+    public void testCalculate_respectsQuantities() {
+        List<ATMAllocation> notes = List.of(createNote(200, 1), createNote(50, 4));
+
+        assertEquals(Map.of(200, 1, 50, 2), engine.calculate(300, notes));
+        assertThrows(NoteCalculationException.class, () -> engine.calculate(450, notes));
+    }
+
+    /**
+     * Test that fractional and non-dispensable amounts are rejected.
+     */
+    @Test
+    public void testCalculate_invalidAmounts_shouldThrow() {
+        List<ATMAllocation> notes = List.of(createNote(100, 5));
+
+        assertThrows(NoteCalculationException.class, () -> engine.calculate(100.5, notes));
+        assertThrows(NoteCalculationException.class, () -> engine.calculate(150, notes));
+        assertThrows(NoteCalculationException.class, () -> engine.calculate(100, List.of()));
+    }
+
+    /**
+     * Test that amounts above the stocked total are rejected without sizing the DP for them.
+     */
+    @Test
+    public void testCalculate_amountAboveStock_shouldThrow() {
+        List<ATMAllocation> notes = List.of(createNote(100, 5), createNote(50, 2));
+
+        assertThrows(NoteCalculationException.class, () -> engine.calculate(700, notes));
+        assertThrows(NoteCalculationException.class, () -> engine.calculate(1e8, notes));
+        assertThrows(NoteCalculationException.class, () -> engine.calculate(3e9, notes));
+        assertEquals(Map.of(100, 5, 50, 2), engine.calculate(600, notes));
+    }
+
+    /**
+     * Property: for random cassette mixes the engine agrees with brute force on
+     * feasibility and note count, and never exceeds a cassette.
+     */
+    @Test
+    public void testCalculate_matchesBruteForce() {
+        Random random = new Random(20240501L);
+
+        for (int trial = 0; trial < 400; trial++) {
+            List<ATMAllocation> notes = randomNotes(random);
+            int[] minNotes = bruteForceMinNotes(notes);
+
+            for (int amount = 10; amount < minNotes.length; amount += 10) {
+                int expected = minNotes[amount];
+                final int requested = amount;
+
+                if (expected == Integer.MAX_VALUE) {
+                    assertThrows(NoteCalculationException.class, () -> engine.calculate(requested, notes),
+                            "amount " + amount + " should not be dispensable from " + describe(notes));
+                } else {
+                    Map<Integer, Integer> result = engine.calculate(amount, notes);
+                    assertEquals(amount, sum(result), "dispensed total for " + describe(notes));
+                    assertEquals(expected, count(result), "note count for " + amount + " from " + describe(notes));
+                    result.forEach((value, qty) -> assertTrue(qty <= available(notes, value)));
+                }
+            }
+        }
+    }
+
+    private List<ATMAllocation> randomNotes(Random random) {
+        List<ATMAllocation> notes = new ArrayList<>();
+        for (int value : DENOMINATION_POOL) {
+            if (random.nextInt(3) > 0) {
+                notes.add(createNote(value, random.nextInt(5)));
+            }
+        }
+        return notes;
+    }
+
+    /**
+     * Enumerates every combination of available notes and records the fewest notes per total.
+     * The returned array covers every amount up to the ATM's full stock (plus headroom).
+     */
+    private int[] bruteForceMinNotes(List<ATMAllocation> notes) {
+        int total = 0;
+        for (ATMAllocation note : notes) {
+            total += note.getDenomination().getValue().intValue() * note.getQuantity();
+        }
+        int[] minNotes = new int[total + 100];
+        Arrays.fill(minNotes, Integer.MAX_VALUE);
+        enumerate(notes, 0, 0, 0, minNotes);
+        return minNotes;
+    }
+
+    private void enumerate(List<ATMAllocation> notes, int index, int amount, int used, int[] minNotes) {
+        if (index == notes.size()) {
+            minNotes[amount] = Math.min(minNotes[amount], used);
+            return;
+        }
+        ATMAllocation note = notes.get(index);
+        int value = note.getDenomination().getValue().intValue();
+        for (int qty = 0; qty <= note.getQuantity(); qty++) {
+            enumerate(notes, index + 1, amount + qty * value, used + qty, minNotes);
+        }
+    }
+
+    private int sum(Map<Integer, Integer> result) {
+        return result.entrySet().stream().mapToInt(e -> e.getKey() * e.getValue()).sum();
+    }
+
+    private int count(Map<Integer, Integer> result) {
+        return result.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    private int available(List<ATMAllocation> notes, int value) {
+        return notes.stream()
+                .filter(n -> n.getDenomination().getValue().intValue() == value)
+                .mapToInt(ATMAllocation::getQuantity)
+                .sum();
+    }
+
+    private String describe(List<ATMAllocation> notes) {
+        StringBuilder sb = new StringBuilder();
+        for (ATMAllocation note : notes) {
+            sb.append(note.getQuantity()).append('x').append(note.getDenomination().getValue()).append(' ');
+        }
+        return sb.toString().trim();
+    }
+
+    /**
+     * Utility method to construct ATMAllocation test data with Denomination entity.
+     */
+    private ATMAllocation createNote(int denominationValue, int quantity) {
+        Denomination denomination = new Denomination();
+        denomination.setValue(BigDecimal.valueOf(denominationValue));
+
+        ATMAllocation note = new ATMAllocation();
+        note.setDenomination(denomination);
+        note.setQuantity(quantity);
+
+        return note;
+    }
+}
@@ -87,6 +87,56 @@ public class NoteCalculatorTest {
         assertTrue(fallback.isEmpty());
     }
 
+    /**
+     * Test the primitive API writes note counts into the caller-supplied array.
+     * Should return 1 x 200, 1 x 100 and 0 x 50 for amount 300.
+     */
+    @Test
+    public void testCalculatePrimitive_exactAmount() {
+        int[] result = new int[3];
+
+        int status = NoteCalculator.calculate(300, new int[]{200, 100, 50}, new int[]{5, 5, 5}, result);
+
+        assertEquals(NoteCalculator.DISPENSED, status);
+        assertArrayEquals(new int[]{1, 1, 0}, result);
+    }
+
+    /**
+     * Test the primitive API reports failure through its status code instead of throwing.
+     */
+    @Test
+    public void testCalculatePrimitive_notDispensable_returnsStatus() {
+        int status = NoteCalculator.calculate(100, new int[]{100}, new int[]{0}, new int[1]);
+
+        assertEquals(NoteCalculator.NOT_DISPENSABLE, status);
+    }
+
+    /**
+     * Test the primitive API rejects unsorted denominations and undersized result arrays.
+     */
+    @Test
+    public void testCalculatePrimitive_invalidInput_returnsStatus() {
+        assertEquals(NoteCalculator.INVALID_INPUT,
+                NoteCalculator.calculate(300, new int[]{50, 100}, new int[]{5, 5}, new int[2]));
+        assertEquals(NoteCalculator.INVALID_INPUT,
+                NoteCalculator.calculate(300, new int[]{100, 50}, new int[]{5, 5}, new int[1]));
+    }
+
+    /**
+     * Test that the Map-based adapter sorts unordered allocations before calculating.
+     */
+    @Test
+    public void testCalculate_unsortedAllocations() {
+        List<ATMAllocation> notes = List.of(
+                createNote(50, 5),
+                createNote(200, 1),
+                createNote(100, 5)
+        );
+        Map<Integer, Integer> result = NoteCalculator.calculate(450, notes);
+
+        assertEquals(Map.of(200, 1, 100, 2, 50, 1), result);
+    }
+
     /**
      * Utility method to construct ATMAllocation test data with Denomination entity.
      */